@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hisql.ConnectionManager;
+import org.hisql.DbVersion;
+import org.hisql.HiSqlClient;
+import org.hisql.HiSqlClientImpl;
+import org.hisql.exception.SqlRuntimeException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <pre>
+ * query/insert end to end against the in-memory H2 in MySql mode. Every thread
+ * keeps its own connection, so the connection manager costs nothing.
+ *
+ * Run with the allocation rate:
+ *     java -jar target/benchmarks.jar H2EndToEndBenchmark -prof gc
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class H2EndToEndBenchmark {
+	private static final String URL = "jdbc:h2:mem:hisql_bench;MODE=MySQL;DB_CLOSE_DELAY=-1";
+	private static final int ROW_CNT = 10000;
+	private static final int BATCH_SIZE = 100;
+	
+	private Connection keeper;
+	private HiSqlClient client;
+	private final AtomicLong nextId = new AtomicLong(ROW_CNT);
+	private final List<Connection> connections = new ArrayList<Connection>();
+	
+	@Setup(Level.Trial)
+	public void setup() throws SQLException {
+		keeper = DriverManager.getConnection(URL);
+		Statement stmt = keeper.createStatement();
+		try {
+			stmt.execute("DROP TABLE IF EXISTS narrow_entity");
+			stmt.execute("DROP TABLE IF EXISTS wide_entity");
+			stmt.execute(NarrowEntity.getCreateTableSql());
+			stmt.execute(WideEntity.getCreateTableSql());
+		} finally {
+			stmt.close();
+		}
+		client = new HiSqlClientImpl(DbVersion.Mysql, new ThreadConnectionManager());
+		List<NarrowEntity> narrowList = new ArrayList<NarrowEntity>();
+		List<WideEntity> wideList = new ArrayList<WideEntity>();
+		for (int i = 1; i <= ROW_CNT; i++) {
+			narrowList.add(NarrowEntity.create(i));
+			wideList.add(WideEntity.create(i));
+			if (narrowList.size() == 1000) {
+				client.insertMultiRow(narrowList);
+				client.insertMultiRow(wideList);
+				narrowList.clear();
+				wideList.clear();
+			}
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		synchronized (connections) {
+			for (Connection con : connections) {
+				con.close();
+			}
+			connections.clear();
+		}
+		keeper.close();
+	}
+	
+	private static long randomId() {
+		return ThreadLocalRandom.current().nextLong(1, ROW_CNT + 1);
+	}
+	
+	@Benchmark
+	public NarrowEntity getNarrow() {
+		return client.get(NarrowEntity.class, randomId());
+	}
+	
+	@Benchmark
+	public WideEntity getWide() {
+		return client.get(WideEntity.class, randomId());
+	}
+	
+	@Benchmark
+	public List<NarrowEntity> queryNarrow100() {
+		long id = randomId();
+		return client.query("SELECT * FROM narrow_entity WHERE id BETWEEN ? AND ?", 
+				new Object[]{id, id + 99}, NarrowEntity.class);
+	}
+	
+	@Benchmark
+	public List<WideEntity> queryWide100() {
+		long id = randomId();
+		return client.query("SELECT * FROM wide_entity WHERE id BETWEEN ? AND ?", 
+				new Object[]{id, id + 99}, WideEntity.class);
+	}
+	
+	@Benchmark
+	public int insertNarrow() {
+		return client.insert(NarrowEntity.create(nextId.incrementAndGet()));
+	}
+	
+	@Benchmark
+	public int insertWide() {
+		return client.insert(WideEntity.create(nextId.incrementAndGet()));
+	}
+	
+	@Benchmark
+	public int[] insertBatchNarrow() {
+		List<NarrowEntity> list = new ArrayList<NarrowEntity>(BATCH_SIZE);
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			list.add(NarrowEntity.create(nextId.incrementAndGet()));
+		}
+		return client.insertBatch(list);
+	}
+	
+	/**
+	 * One connection per thread, kept open until the trial ends
+	 */
+	private final class ThreadConnectionManager implements ConnectionManager {
+		private final ThreadLocal<Connection> threadConnection = new ThreadLocal<Connection>();
+		
+		@Override
+		public Connection getConnection() {
+			Connection con = threadConnection.get();
+			if (con == null) {
+				try {
+					con = DriverManager.getConnection(URL);
+				} catch (SQLException e) {
+					throw new SqlRuntimeException(e);
+				}
+				threadConnection.set(con);
+				synchronized (connections) {
+					connections.add(con);
+				}
+			}
+			return con;
+		}
+		
+		@Override
+		public void releaseConnection(Connection con) {
+		}
+	}
+}
@@ -0,0 +1,469 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hisql.DbVersion;
+import org.hisql.HiSqlClientImpl;
+import org.hisql.LatencyHistogram;
+import org.hisql.PooledConnectionManager;
+
+/**
+ * <pre>
+ * The load harness driving one shared {@link HiSqlClientImpl} by many threads
+ * with the mixed get/query/insert/update/delete workload against the embedded H2,
+ * reporting the throughput and the p50/p99/p999 latency of each operation.
+ *
+ * Every worker inserts, updates and deletes the rows of its own key range only,
+ * so it knows the expected content of them, and checks every result:
+ *     get    - the seeded row or the own row equals the expected one, or null if deleted
+ *     query  - the seeded rows of the range are returned completely and in order
+ *     insert/update/delete - exactly 1 row is affected
+ * After each run, all own rows are read back again. Any mismatch is a correctness
+ * failure (e.g. the SQL or the entity of another class returned by a cache under
+ * contention), and the harness exits with 1.
+ *
+ * The update/delete of a worker without own rows is done as insert.
+ *
+ * Usage:
+ *     java -cp target/benchmarks.jar org.hisql.benchmark.LoadHarness [options]
+ *         --threads 64,128,256,512     the thread counts, one run per count
+ *         --duration 30                the measured seconds of each run
+ *         --warmup 5                   the unmeasured seconds before each run
+ *         --mix get=50,query=20,insert=10,update=15,delete=5
+ *         --pool 32                    the max connections of the pool
+ *         --rows 10000                 the count of seeded rows
+ *         --entity-cache               enable the entity cache of the seeded table
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+public final class LoadHarness {
+	private static final String URL = "jdbc:h2:mem:hisql_load;MODE=MySQL;DB_CLOSE_DELAY=-1";
+	private static final int QUERY_ROWS = 20;
+	private static final int MAX_FAILURE_MESSAGES = 20;
+	/** the key range of each worker, above the seeded rows */
+	private static final long WORKER_KEY_RANGE = 100000000L;
+	
+	enum Operation { GET, QUERY, INSERT, UPDATE, DELETE }
+	
+	private int[] threadCounts = {64, 128, 256, 512};
+	private int durationSeconds = 30;
+	private int warmupSeconds = 5;
+	private final Map<Operation, Integer> mix = new EnumMap<Operation, Integer>(Operation.class);
+	private int poolSize = 32;
+	private int rowCnt = 10000;
+	private boolean entityCache = false;
+	
+	private HiSqlClientImpl client;
+	private final Map<Operation, OperationStats> stats =
+			new EnumMap<Operation, OperationStats>(Operation.class);
+	private final ConcurrentLinkedQueue<String> failureMessages = new ConcurrentLinkedQueue<String>();
+	private final AtomicInteger workerSeq = new AtomicInteger();
+	private volatile boolean recording = false;
+	private volatile boolean running = false;
+	
+	private LoadHarness() {
+		mix.put(Operation.GET, 50);
+		mix.put(Operation.QUERY, 20);
+		mix.put(Operation.INSERT, 10);
+		mix.put(Operation.UPDATE, 15);
+		mix.put(Operation.DELETE, 5);
+		for (Operation op : Operation.values()) {
+			stats.put(op, new OperationStats());
+		}
+	}
+	
+	public static void main(String[] args) throws Exception {
+		LoadHarness harness = new LoadHarness();
+		harness.parseArgs(args);
+		System.exit(harness.run() ? 0 : 1);
+	}
+	
+	private void parseArgs(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String name = args[i];
+			if (name.equals("--entity-cache")) {
+				entityCache = true;
+				continue;
+			}
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("missing the value of " + name);
+			}
+			String value = args[++i];
+			if (name.equals("--threads")) {
+				String[] counts = value.split(",");
+				threadCounts = new int[counts.length];
+				for (int j = 0; j < counts.length; j++) {
+					threadCounts[j] = Integer.parseInt(counts[j].trim());
+				}
+			} else if (name.equals("--duration")) {
+				durationSeconds = Integer.parseInt(value);
+			} else if (name.equals("--warmup")) {
+				warmupSeconds = Integer.parseInt(value);
+			} else if (name.equals("--mix")) {
+				for (Operation op : Operation.values()) {
+					mix.put(op, 0);
+				}
+				for (String item : value.split(",")) {
+					String[] pair = item.split("=");
+					mix.put(Operation.valueOf(pair[0].trim().toUpperCase(Locale.ENGLISH)),
+							Integer.parseInt(pair[1].trim()));
+				}
+			} else if (name.equals("--pool")) {
+				poolSize = Integer.parseInt(value);
+			} else if (name.equals("--rows")) {
+				rowCnt = Integer.parseInt(value);
+			} else {
+				throw new IllegalArgumentException("unknown option: " + name);
+			}
+		}
+		int total = 0;
+		for (int weight : mix.values()) {
+			total += weight;
+		}
+		if (total <= 0 || rowCnt < QUERY_ROWS) {
+			throw new IllegalArgumentException("the mix must not be empty, and rows >= " + QUERY_ROWS);
+		}
+	}
+	
+	/**
+	 * @return	true if no correctness failure and no error
+	 */
+	private boolean run() throws Exception {
+		Connection keeper = DriverManager.getConnection(URL, "sa", "");
+		PooledConnectionManager pool = new PooledConnectionManager(URL, "sa", "");
+		pool.setMaxPoolSize(poolSize);
+		pool.setBorrowTimeout(60000);
+		boolean passed = true;
+		try {
+			client = new HiSqlClientImpl(DbVersion.Mysql, pool);
+			seed(keeper);
+			if (entityCache) {
+				client.setEntityCache(NarrowEntity.class, rowCnt, 0);
+			}
+			System.out.println(String.format("rows=%d pool=%d mix=%s entityCache=%s",
+					rowCnt, poolSize, mix, entityCache));
+			for (int threadCnt : threadCounts) {
+				passed &= runOnce(threadCnt);
+			}
+		} finally {
+			pool.close();
+			keeper.close();
+		}
+		System.out.println(passed ? "PASSED" : "FAILED");
+		return passed;
+	}
+	
+	private void seed(Connection con) throws SQLException {
+		Statement stmt = con.createStatement();
+		try {
+			stmt.execute("DROP TABLE IF EXISTS narrow_entity");
+			stmt.execute(NarrowEntity.getCreateTableSql());
+		} finally {
+			stmt.close();
+		}
+		List<NarrowEntity> list = new ArrayList<NarrowEntity>();
+		for (int i = 1; i <= rowCnt; i++) {
+			list.add(NarrowEntity.create(i));
+			if (list.size() == 1000 || i == rowCnt) {
+				client.insertMultiRow(list);
+				list.clear();
+			}
+		}
+	}
+	
+	private boolean runOnce(int threadCnt) throws InterruptedException {
+		for (OperationStats s : stats.values()) {
+			s.reset();
+		}
+		failureMessages.clear();
+		final List<Worker> workers = new ArrayList<Worker>(threadCnt);
+		final CountDownLatch started = new CountDownLatch(threadCnt);
+		final CountDownLatch finished = new CountDownLatch(threadCnt);
+		running = true;
+		recording = false;
+		for (int i = 0; i < threadCnt; i++) {
+			final Worker worker = new Worker(workerSeq.incrementAndGet());
+			workers.add(worker);
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					started.countDown();
+					try {
+						while (running) {
+							worker.runOne();
+						}
+					} finally {
+						finished.countDown();
+					}
+				}
+			}, "load-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		started.await();
+		Thread.sleep(warmupSeconds * 1000L);
+		for (OperationStats s : stats.values()) {
+			s.reset();
+		}
+		recording = true;
+		final long startTime = System.nanoTime();
+		Thread.sleep(durationSeconds * 1000L);
+		recording = false;
+		final long elapsedNanos = System.nanoTime() - startTime;
+		running = false;
+		finished.await();
+		
+		long verifyFailures = 0;
+		for (Worker worker : workers) {
+			verifyFailures += worker.verifyAll();
+		}
+		return report(threadCnt, elapsedNanos, verifyFailures);
+	}
+	
+	private boolean report(int threadCnt, long elapsedNanos, long verifyFailures) {
+		final double seconds = elapsedNanos / 1e9;
+		long totalCnt = 0, totalErrors = 0, totalFailures = verifyFailures;
+		for (OperationStats s : stats.values()) {
+			totalCnt += s.histogram.getCount();
+			totalErrors += s.errors.get();
+			totalFailures += s.failures.get();
+		}
+		System.out.println();
+		System.out.println(String.format("threads=%d duration=%.1fs throughput=%.0f ops/s errors=%d failures=%d",
+				threadCnt, seconds, totalCnt / seconds, totalErrors, totalFailures));
+		System.out.println(String.format("%-8s %10s %12s %10s %10s %10s %8s %8s",
+				"op", "count", "ops/s", "p50(ms)", "p99(ms)", "p999(ms)", "errors", "failures"));
+		for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+			OperationStats s = entry.getValue();
+			long cnt = s.histogram.getCount();
+			if (cnt == 0 && s.errors.get() == 0) continue;
+			System.out.println(String.format("%-8s %10d %12.0f %10.3f %10.3f %10.3f %8d %8d",
+					entry.getKey(), cnt, cnt / seconds,
+					s.histogram.getPercentile(50) / 1e6, s.histogram.getPercentile(99) / 1e6,
+					s.histogram.getPercentile(99.9) / 1e6, s.errors.get(), s.failures.get()));
+		}
+		if (verifyFailures > 0) {
+			System.out.println("failures of the final verification: " + verifyFailures);
+		}
+		for (String message : failureMessages) {
+			System.out.println("  " + message);
+		}
+		return totalErrors == 0 && totalFailures == 0;
+	}
+	
+	private void fail(Operation op, String message) {
+		stats.get(op).failures.incrementAndGet();
+		if (failureMessages.size() < MAX_FAILURE_MESSAGES) {
+			failureMessages.add(op + ": " + message);
+		}
+	}
+	
+	private Operation nextOperation(Random random) {
+		int total = 0;
+		for (int weight : mix.values()) {
+			total += weight;
+		}
+		int n = random.nextInt(total);
+		for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+			n -= entry.getValue();
+			if (n < 0) {
+				return entry.getKey();
+			}
+		}
+		return Operation.GET;
+	}
+	
+	private static boolean sameEntity(NarrowEntity expected, NarrowEntity actual) {
+		return actual != null && expected.id.equals(actual.id) && expected.name.equals(actual.name)
+				&& expected.age.equals(actual.age)
+				&& expected.createdAt.getTime() == actual.createdAt.getTime();
+	}
+	
+	private static String describe(NarrowEntity entity) {
+		return (entity == null) ? "null" : String.format("{id=%d, name=%s, age=%d, createdAt=%d}",
+				entity.id, entity.name, entity.age, entity.createdAt.getTime());
+	}
+	
+	/**
+	 * The counters and the latency histogram of one operation
+	 */
+	private static final class OperationStats {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		final AtomicLong errors = new AtomicLong();
+		final AtomicLong failures = new AtomicLong();
+		
+		void reset() {
+			histogram.reset();
+			errors.set(0);
+			failures.set(0);
+		}
+	}
+	
+	/**
+	 * One thread of the workload, owning the rows of its key range
+	 */
+	private final class Worker {
+		private final long keyBase;
+		/** the own rows not deleted */
+		private final List<Long> liveKeys = new ArrayList<Long>();
+		private final Map<Long, NarrowEntity> expected = new HashMap<Long, NarrowEntity>();
+		private final List<Long> deletedKeys = new ArrayList<Long>();
+		private long nextKey;
+		private int updateSeq = 0;
+		
+		Worker(int seq) {
+			this.keyBase = seq * WORKER_KEY_RANGE;
+			this.nextKey = keyBase;
+		}
+		
+		void runOne() {
+			final ThreadLocalRandom random = ThreadLocalRandom.current();
+			Operation op = nextOperation(random);
+			if ((op == Operation.UPDATE || op == Operation.DELETE) && liveKeys.isEmpty()) {
+				op = Operation.INSERT;
+			}
+			final long startTime = System.nanoTime();
+			try {
+				switch (op) {
+				case GET: doGet(random); break;
+				case QUERY: doQuery(random); break;
+				case INSERT: doInsert(); break;
+				case UPDATE: doUpdate(random); break;
+				case DELETE: doDelete(random); break;
+				}
+			} catch (RuntimeException e) {
+				if (recording) {
+					stats.get(op).errors.incrementAndGet();
+					if (failureMessages.size() < MAX_FAILURE_MESSAGES) {
+						failureMessages.add(op + " error: " + e);
+					}
+				}
+				return;
+			}
+			if (recording) {
+				stats.get(op).histogram.record(System.nanoTime() - startTime);
+			}
+		}
+		
+		private void doGet(ThreadLocalRandom random) {
+			final boolean own = !liveKeys.isEmpty() && random.nextBoolean();
+			final long key = own ? liveKeys.get(random.nextInt(liveKeys.size()))
+					: random.nextLong(1, rowCnt + 1);
+			NarrowEntity actual = client.get(NarrowEntity.class, key);
+			NarrowEntity exp = own ? expected.get(key) : NarrowEntity.create(key);
+			if (!sameEntity(exp, actual)) {
+				fail(Operation.GET, "expected " + describe(exp) + " but " + describe(actual));
+			}
+		}
+		
+		private void doQuery(ThreadLocalRandom random) {
+			final long first = random.nextLong(1, rowCnt - QUERY_ROWS + 2);
+			List<NarrowEntity> rows = client.query(
+					"SELECT * FROM narrow_entity WHERE id BETWEEN ? AND ? ORDER BY id",
+					new Object[]{first, first + QUERY_ROWS - 1}, NarrowEntity.class);
+			if (rows.size() != QUERY_ROWS) {
+				fail(Operation.QUERY, "expected " + QUERY_ROWS + " rows from " + first
+						+ " but " + rows.size());
+				return;
+			}
+			for (int i = 0; i < QUERY_ROWS; i++) {
+				NarrowEntity exp = NarrowEntity.create(first + i);
+				if (!sameEntity(exp, rows.get(i))) {
+					fail(Operation.QUERY, "expected " + describe(exp) + " but " + describe(rows.get(i)));
+					return;
+				}
+			}
+		}
+		
+		private void doInsert() {
+			NarrowEntity entity = NarrowEntity.create(nextKey++);
+			int cnt = client.insert(entity);
+			if (cnt != 1) {
+				fail(Operation.INSERT, "inserted " + cnt + " rows of " + entity.id);
+			}
+			liveKeys.add(entity.id);
+			expected.put(entity.id, entity);
+		}
+		
+		private void doUpdate(ThreadLocalRandom random) {
+			final long key = liveKeys.get(random.nextInt(liveKeys.size()));
+			NarrowEntity entity = NarrowEntity.create(key);
+			entity.name = "updated-" + (++updateSeq);
+			entity.age = updateSeq % 100;
+			int cnt = client.update(entity);
+			if (cnt != 1) {
+				fail(Operation.UPDATE, "updated " + cnt + " rows of " + key);
+			}
+			expected.put(key, entity);
+		}
+		
+		private void doDelete(ThreadLocalRandom random) {
+			final int index = random.nextInt(liveKeys.size());
+			final long key = liveKeys.get(index);
+			liveKeys.set(index, liveKeys.get(liveKeys.size() - 1));
+			liveKeys.remove(liveKeys.size() - 1);
+			expected.remove(key);
+			deletedKeys.add(key);
+			int cnt = client.delete(NarrowEntity.class, key);
+			if (cnt != 1) {
+				fail(Operation.DELETE, "deleted " + cnt + " rows of " + key);
+			}
+		}
+		
+		/**
+		 * Read back all own rows after the run
+		 *
+		 * @return	the count of mismatched rows
+		 */
+		long verifyAll() {
+			long failures = 0;
+			if (!liveKeys.isEmpty()) {
+				List<NarrowEntity> rows = client.get(NarrowEntity.class, liveKeys);
+				Map<Long, NarrowEntity> actualMap = new HashMap<Long, NarrowEntity>();
+				for (NarrowEntity row : rows) {
+					actualMap.put(row.id, row);
+				}
+				for (Long key : liveKeys) {
+					if (!sameEntity(expected.get(key), actualMap.get(key))) {
+						failures++;
+						addMessage("expected " + describe(expected.get(key))
+								+ " but " + describe(actualMap.get(key)));
+					}
+				}
+			}
+			if (!deletedKeys.isEmpty()) {
+				List<NarrowEntity> rows = client.get(NarrowEntity.class, deletedKeys);
+				for (NarrowEntity row : rows) {
+					failures++;
+					addMessage("deleted but found " + describe(row));
+				}
+			}
+			return failures;
+		}
+		
+		private void addMessage(String message) {
+			if (failureMessages.size() < MAX_FAILURE_MESSAGES) {
+				failureMessages.add("VERIFY: " + message);
+			}
+		}
+	}
+}
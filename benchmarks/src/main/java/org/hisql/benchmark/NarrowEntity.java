@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql.benchmark;
+
+import java.util.Date;
+
+import org.hisql.AbstractDbEntity;
+import org.hisql.annotation.DbField;
+import org.hisql.annotation.DbTable;
+
+/**
+ * The entity of 4 columns, the typical row of a lookup
+ *
+ * @author	ZHANG.XL
+ */
+@DbTable(tableName="narrow_entity", keyName="id")
+public class NarrowEntity extends AbstractDbEntity {
+	public Long id;
+	public String name;
+	public Integer age;
+	@DbField(name="created_at")
+	public Date createdAt;
+	
+	static NarrowEntity create(long id) {
+		NarrowEntity entity = new NarrowEntity();
+		entity.id = id;
+		entity.name = "name'" + id;
+		entity.age = (int) (id % 100);
+		entity.createdAt = new Date(1400000000000L + id * 1000L);
+		return entity;
+	}
+	
+	static Object[] createRow(long id) {
+		NarrowEntity entity = create(id);
+		return new Object[] {entity.id, entity.name, entity.age, 
+				new java.sql.Timestamp(entity.createdAt.getTime())};
+	}
+	
+	static String[] getColumns() {
+		return new String[] {"id", "name", "age", "created_at"};
+	}
+	
+	static String getCreateTableSql() {
+		return "CREATE TABLE narrow_entity (id BIGINT PRIMARY KEY, name VARCHAR(64), "
+				+ "age INT, created_at TIMESTAMP)";
+	}
+}
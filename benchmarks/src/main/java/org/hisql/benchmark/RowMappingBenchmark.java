@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hisql.DbUtil;
+import org.hisql.DbVersion;
+import org.hisql.HiSqlClient;
+import org.hisql.HiSqlClientImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <pre>
+ * The mapping of rows to entities, over the stub JDBC returning in-memory rows,
+ * so the cost is the row mapper and the number casts rather than the db.
+ *
+ * Run with the allocation rate:
+ *     java -jar target/benchmarks.jar RowMappingBenchmark -prof gc
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowMappingBenchmark {
+	@Param({"1", "100"})
+	public int rowCnt;
+	
+	private HiSqlClient narrowClient;
+	private HiSqlClient wideClient;
+	private final Object longValue = Long.valueOf(123456789L);
+	private final Object decimalValue = new BigDecimal("12345.6789");
+	
+	@Setup
+	public void setup() throws SQLException {
+		Object[][] narrowRows = new Object[rowCnt][];
+		Object[][] wideRows = new Object[rowCnt][];
+		for (int i = 0; i < rowCnt; i++) {
+			narrowRows[i] = NarrowEntity.createRow(i + 1);
+			wideRows[i] = WideEntity.createRow(i + 1);
+		}
+		narrowClient = new HiSqlClientImpl(DbVersion.Mysql, 
+				new StubJdbc(NarrowEntity.getColumns(), narrowRows).getConnectionManager());
+		wideClient = new HiSqlClientImpl(DbVersion.Mysql, 
+				new StubJdbc(WideEntity.getColumns(), wideRows).getConnectionManager());
+	}
+	
+	@Benchmark
+	public List<NarrowEntity> mapNarrow() {
+		return narrowClient.query("SELECT * FROM narrow_entity", null, NarrowEntity.class);
+	}
+	
+	@Benchmark
+	public List<WideEntity> mapWide() {
+		return wideClient.query("SELECT * FROM wide_entity", null, WideEntity.class);
+	}
+	
+	@Benchmark
+	public Integer castLongToInteger() {
+		return DbUtil.castNumber(Integer.class, longValue);
+	}
+	
+	@Benchmark
+	public Long castDecimalToLong() {
+		return DbUtil.castNumber(Long.class, decimalValue);
+	}
+	
+	@Benchmark
+	public Double castDecimalToDouble() {
+		return DbUtil.castNumber(Double.class, decimalValue);
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql.benchmark;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.hisql.DbVersion;
+import org.hisql.HiSqlClient;
+import org.hisql.HiSqlClientImpl;
+import org.hisql.KeysetPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <pre>
+ * The SQL and arguments built by every operation of {@link HiSqlClient}, over
+ * the stub JDBC executing nothing, so the cost is the SQL generation (cached
+ * or not), the argument extraction and the binding calls.
+ *
+ * Run with the allocation rate:
+ *     java -jar target/benchmarks.jar SqlGenerationBenchmark -prof gc
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SqlGenerationBenchmark {
+	private static final int LIST_SIZE = 100;
+	
+	@Param({"Mysql", "Oracle"})
+	public String dbVersion;
+	
+	private HiSqlClient client;
+	private NarrowEntity narrow;
+	private WideEntity wide;
+	private List<NarrowEntity> narrowList;
+	private List<Long> keyList;
+	private Map<String, Object> whereArgMap;
+	private Map<String, Object> fieldValueMap;
+	private final String[] updateFieldNames = {"name", "age"};
+	
+	@Setup
+	public void setup() throws SQLException {
+		client = new HiSqlClientImpl(DbVersion.valueOf(dbVersion), 
+				new StubJdbc(NarrowEntity.getColumns(), new Object[0][]).getConnectionManager());
+		narrow = NarrowEntity.create(1);
+		wide = WideEntity.create(1);
+		narrowList = new ArrayList<NarrowEntity>(LIST_SIZE);
+		keyList = new ArrayList<Long>(LIST_SIZE);
+		for (int i = 1; i <= LIST_SIZE; i++) {
+			narrowList.add(NarrowEntity.create(i));
+			keyList.add((long) i);
+		}
+		whereArgMap = new LinkedHashMap<String, Object>();
+		whereArgMap.put("name", "name'1");
+		whereArgMap.put("age", 1);
+		fieldValueMap = new LinkedHashMap<String, Object>();
+		fieldValueMap.put("name", "changed");
+		fieldValueMap.put("age", 2);
+	}
+	
+	@Benchmark
+	public NarrowEntity get() {
+		return client.get(NarrowEntity.class, 1L);
+	}
+	
+	@Benchmark
+	public List<NarrowEntity> getByKeys() {
+		return client.get(NarrowEntity.class, keyList);
+	}
+	
+	@Benchmark
+	public List<NarrowEntity> getByWhere() {
+		return client.get(NarrowEntity.class, whereArgMap, 1, 20);
+	}
+	
+	@Benchmark
+	public KeysetPage<NarrowEntity> getPageAfter() {
+		return client.getPageAfter(NarrowEntity.class, whereArgMap, 100L, 20);
+	}
+	
+	@Benchmark
+	public int insertNarrow() {
+		return client.insert(narrow);
+	}
+	
+	@Benchmark
+	public int insertWide() {
+		return client.insert(wide);
+	}
+	
+	@Benchmark
+	public int updateNarrow() {
+		return client.update(narrow);
+	}
+	
+	@Benchmark
+	public int updateWide() {
+		return client.update(wide);
+	}
+	
+	@Benchmark
+	public int updateFields() {
+		return client.update(narrow, updateFieldNames);
+	}
+	
+	@Benchmark
+	public int updateByMap() {
+		return client.update(NarrowEntity.class, 1L, fieldValueMap);
+	}
+	
+	@Benchmark
+	public int delete() {
+		return client.delete(NarrowEntity.class, 1L);
+	}
+	
+	@Benchmark
+	public int deleteByKeys() {
+		return client.delete(NarrowEntity.class, keyList);
+	}
+	
+	@Benchmark
+	public int[] insertBatch() {
+		return client.insertBatch(narrowList);
+	}
+	
+	@Benchmark
+	public int insertMultiRow() {
+		return client.insertMultiRow(narrowList);
+	}
+	
+	@Benchmark
+	public int[] updateBatch() {
+		return client.updateBatch(narrowList);
+	}
+	
+	@Benchmark
+	public int[] deleteBatch() {
+		return client.deleteBatch(NarrowEntity.class, keyList);
+	}
+	
+	@Benchmark
+	public String getQuestionMarks() {
+		return client.getQuestionMarks(60);
+	}
+	
+	@Benchmark
+	public String genInsertSqlWithValuesNarrow() {
+		return client.genInsertSqlWithValues(narrow);
+	}
+	
+	@Benchmark
+	public String genInsertSqlWithValuesWide() {
+		return client.genInsertSqlWithValues(wide);
+	}
+	
+	@Benchmark
+	public String genInsertSqlWithValuesList() {
+		return client.genInsertSqlWithValues(narrowList, ";\n");
+	}
+}
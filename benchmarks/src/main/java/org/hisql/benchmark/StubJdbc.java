@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+import org.hisql.ConnectionManager;
+
+/**
+ * <pre>
+ * The JDBC objects without the db, so the benchmarks measure the library only:
+ * every query returns the same in-memory rows, every update affects 1 row,
+ * and the last prepared SQL is recorded.
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+final class StubJdbc {
+	private static final ClassLoader LOADER = StubJdbc.class.getClassLoader();
+	
+	private final String[] columns;
+	private final Object[][] rows;
+	private final Connection connection;
+	private String lastSql;
+	
+	/**
+	 * @param	columns - the column labels of the returned rows
+	 * @param	rows - the returned rows, empty for the queries finding nothing
+	 */
+	StubJdbc(String[] columns, Object[][] rows) {
+		this.columns = columns;
+		this.rows = rows;
+		this.connection = (Connection) newProxy(Connection.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String name = method.getName();
+				if (name.equals("prepareStatement")) {
+					lastSql = (String) args[0];
+					return newStatement();
+				}
+				if (name.equals("getMetaData")) {
+					return newProxy(DatabaseMetaData.class, new ConstantHandler("getURL", "jdbc:stub:"));
+				}
+				if (name.equals("getAutoCommit")) {
+					return Boolean.TRUE;
+				}
+				return defaultValue(proxy, method, args);
+			}
+		});
+	}
+	
+	/**
+	 * The connection manager returning the same stub connection
+	 */
+	ConnectionManager getConnectionManager() {
+		return new ConnectionManager() {
+			@Override
+			public Connection getConnection() {
+				return connection;
+			}
+			
+			@Override
+			public void releaseConnection(Connection con) {
+			}
+		};
+	}
+	
+	String getLastSql() {
+		return lastSql;
+	}
+	
+	private PreparedStatement newStatement() {
+		return (PreparedStatement) newProxy(PreparedStatement.class, new InvocationHandler() {
+			private int batchCnt = 0;
+			
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String name = method.getName();
+				if (name.equals("executeQuery")) {
+					return newResultSet();
+				}
+				if (name.equals("executeUpdate")) {
+					return 1;
+				}
+				if (name.equals("addBatch")) {
+					batchCnt++;
+					return null;
+				}
+				if (name.equals("executeBatch")) {
+					int[] counts = new int[batchCnt];
+					Arrays.fill(counts, 1);
+					batchCnt = 0;
+					return counts;
+				}
+				if (name.equals("getConnection")) {
+					return connection;
+				}
+				return defaultValue(proxy, method, args);
+			}
+		});
+	}
+	
+	private ResultSet newResultSet() {
+		final ResultSetMetaData metaData = (ResultSetMetaData) newProxy(ResultSetMetaData.class,
+				new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String name = method.getName();
+				if (name.equals("getColumnCount")) {
+					return columns.length;
+				}
+				if (name.equals("getColumnLabel") || name.equals("getColumnName")) {
+					return columns[(Integer) args[0] - 1];
+				}
+				return defaultValue(proxy, method, args);
+			}
+		});
+		return (ResultSet) newProxy(ResultSet.class, new InvocationHandler() {
+			private int rowIndex = -1;
+			private boolean wasNull = false;
+			
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String name = method.getName();
+				if (name.equals("next")) {
+					return ++rowIndex < rows.length;
+				}
+				if (name.startsWith("get") && args != null && args.length == 1 
+						&& args[0] instanceof Integer) {
+					Object value = rows[rowIndex][(Integer) args[0] - 1];
+					wasNull = (value == null);
+					return convert(value, method);
+				}
+				if (name.equals("wasNull")) {
+					return wasNull;
+				}
+				if (name.equals("getMetaData")) {
+					return metaData;
+				}
+				return defaultValue(proxy, method, args);
+			}
+		});
+	}
+	
+	/**
+	 * The value as the typed getter returns, e.g. getLong(int) of the Integer value
+	 */
+	private static Object convert(Object value, Method method) {
+		Class<?> type = method.getReturnType();
+		if (value == null || type.isInstance(value)) {
+			return (value != null || !type.isPrimitive()) ? value : defaultValue(null, method, null);
+		}
+		if (type == String.class) return value.toString();
+		if (value instanceof Number) {
+			Number num = (Number) value;
+			if (type == long.class) return num.longValue();
+			if (type == int.class) return num.intValue();
+			if (type == double.class) return num.doubleValue();
+			if (type == float.class) return num.floatValue();
+			if (type == short.class) return num.shortValue();
+			if (type == byte.class) return num.byteValue();
+			if (type == boolean.class) return num.intValue() != 0;
+			if (type == BigDecimal.class) return new BigDecimal(num.toString());
+		}
+		if (value instanceof java.util.Date && type == Timestamp.class) {
+			return new Timestamp(((java.util.Date) value).getTime());
+		}
+		return value;
+	}
+	
+	private static Object newProxy(Class<?> type, InvocationHandler handler) {
+		return Proxy.newProxyInstance(LOADER, new Class<?>[] {type}, handler);
+	}
+	
+	/**
+	 * The identity for the methods of Object, or the default value of the return type
+	 */
+	private static Object defaultValue(Object proxy, Method method, Object[] args) {
+		String name = method.getName();
+		if (name.equals("equals") && args != null && args.length == 1) return proxy == args[0];
+		if (name.equals("hashCode") && args == null) return System.identityHashCode(proxy);
+		if (name.equals("toString") && args == null) return "Stub" + proxy.getClass().getInterfaces()[0].getSimpleName();
+		Class<?> type = method.getReturnType();
+		if (!type.isPrimitive() || type == void.class) return null;
+		if (type == boolean.class) return Boolean.FALSE;
+		if (type == int.class) return 0;
+		if (type == long.class) return 0L;
+		if (type == double.class) return 0D;
+		if (type == float.class) return 0F;
+		if (type == short.class) return (short) 0;
+		if (type == byte.class) return (byte) 0;
+		return (char) 0;
+	}
+	
+	private static final class ConstantHandler implements InvocationHandler {
+		private final String methodName;
+		private final Object value;
+		
+		ConstantHandler(String methodName, Object value) {
+			this.methodName = methodName;
+			this.value = value;
+		}
+		
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			return method.getName().equals(methodName) ? value : defaultValue(proxy, method, args);
+		}
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql.benchmark;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.hisql.AbstractDbEntity;
+import org.hisql.annotation.DbTable;
+
+/**
+ * The entity of 60 columns of mixed types, the typical row of a report
+ *
+ * @author	ZHANG.XL
+ */
+@DbTable(tableName="wide_entity", keyName="id")
+public class WideEntity extends AbstractDbEntity {
+	public Long id;
+	public String c01;
+	public Integer c02;
+	public Long c03;
+	public Double c04;
+	public BigDecimal c05;
+	public Date c06;
+	public String c07;
+	public Integer c08;
+	public Long c09;
+	public Double c10;
+	public BigDecimal c11;
+	public Date c12;
+	public String c13;
+	public Integer c14;
+	public Long c15;
+	public Double c16;
+	public BigDecimal c17;
+	public Date c18;
+	public String c19;
+	public Integer c20;
+	public Long c21;
+	public Double c22;
+	public BigDecimal c23;
+	public Date c24;
+	public String c25;
+	public Integer c26;
+	public Long c27;
+	public Double c28;
+	public BigDecimal c29;
+	public Date c30;
+	public String c31;
+	public Integer c32;
+	public Long c33;
+	public Double c34;
+	public BigDecimal c35;
+	public Date c36;
+	public String c37;
+	public Integer c38;
+	public Long c39;
+	public Double c40;
+	public BigDecimal c41;
+	public Date c42;
+	public String c43;
+	public Integer c44;
+	public Long c45;
+	public Double c46;
+	public BigDecimal c47;
+	public Date c48;
+	public String c49;
+	public Integer c50;
+	public Long c51;
+	public Double c52;
+	public BigDecimal c53;
+	public Date c54;
+	public String c55;
+	public Integer c56;
+	public Long c57;
+	public Double c58;
+	public BigDecimal c59;
+	
+	static WideEntity create(long id) {
+		WideEntity entity = new WideEntity();
+		entity.id = id;
+		entity.c01 = "value'" + id;
+		entity.c02 = (int) id;
+		entity.c03 = id * 31;
+		entity.c04 = id / 7.0;
+		entity.c05 = BigDecimal.valueOf(id, 2);
+		entity.c06 = new Date(1400000000000L + id * 1000L);
+		entity.c07 = "value'" + id;
+		entity.c08 = (int) id;
+		entity.c09 = id * 31;
+		entity.c10 = id / 7.0;
+		entity.c11 = BigDecimal.valueOf(id, 2);
+		entity.c12 = new Date(1400000000000L + id * 1000L);
+		entity.c13 = "value'" + id;
+		entity.c14 = (int) id;
+		entity.c15 = id * 31;
+		entity.c16 = id / 7.0;
+		entity.c17 = BigDecimal.valueOf(id, 2);
+		entity.c18 = new Date(1400000000000L + id * 1000L);
+		entity.c19 = "value'" + id;
+		entity.c20 = (int) id;
+		entity.c21 = id * 31;
+		entity.c22 = id / 7.0;
+		entity.c23 = BigDecimal.valueOf(id, 2);
+		entity.c24 = new Date(1400000000000L + id * 1000L);
+		entity.c25 = "value'" + id;
+		entity.c26 = (int) id;
+		entity.c27 = id * 31;
+		entity.c28 = id / 7.0;
+		entity.c29 = BigDecimal.valueOf(id, 2);
+		entity.c30 = new Date(1400000000000L + id * 1000L);
+		entity.c31 = "value'" + id;
+		entity.c32 = (int) id;
+		entity.c33 = id * 31;
+		entity.c34 = id / 7.0;
+		entity.c35 = BigDecimal.valueOf(id, 2);
+		entity.c36 = new Date(1400000000000L + id * 1000L);
+		entity.c37 = "value'" + id;
+		entity.c38 = (int) id;
+		entity.c39 = id * 31;
+		entity.c40 = id / 7.0;
+		entity.c41 = BigDecimal.valueOf(id, 2);
+		entity.c42 = new Date(1400000000000L + id * 1000L);
+		entity.c43 = "value'" + id;
+		entity.c44 = (int) id;
+		entity.c45 = id * 31;
+		entity.c46 = id / 7.0;
+		entity.c47 = BigDecimal.valueOf(id, 2);
+		entity.c48 = new Date(1400000000000L + id * 1000L);
+		entity.c49 = "value'" + id;
+		entity.c50 = (int) id;
+		entity.c51 = id * 31;
+		entity.c52 = id / 7.0;
+		entity.c53 = BigDecimal.valueOf(id, 2);
+		entity.c54 = new Date(1400000000000L + id * 1000L);
+		entity.c55 = "value'" + id;
+		entity.c56 = (int) id;
+		entity.c57 = id * 31;
+		entity.c58 = id / 7.0;
+		entity.c59 = BigDecimal.valueOf(id, 2);
+		return entity;
+	}
+	
+	static Object[] createRow(long id) {
+		WideEntity entity = create(id);
+		Object[] row = new Object[60];
+		row[0] = entity.id;
+		row[1] = entity.c01;
+		row[2] = entity.c02;
+		row[3] = entity.c03;
+		row[4] = entity.c04;
+		row[5] = entity.c05;
+		row[6] = new java.sql.Timestamp(entity.c06.getTime());
+		row[7] = entity.c07;
+		row[8] = entity.c08;
+		row[9] = entity.c09;
+		row[10] = entity.c10;
+		row[11] = entity.c11;
+		row[12] = new java.sql.Timestamp(entity.c12.getTime());
+		row[13] = entity.c13;
+		row[14] = entity.c14;
+		row[15] = entity.c15;
+		row[16] = entity.c16;
+		row[17] = entity.c17;
+		row[18] = new java.sql.Timestamp(entity.c18.getTime());
+		row[19] = entity.c19;
+		row[20] = entity.c20;
+		row[21] = entity.c21;
+		row[22] = entity.c22;
+		row[23] = entity.c23;
+		row[24] = new java.sql.Timestamp(entity.c24.getTime());
+		row[25] = entity.c25;
+		row[26] = entity.c26;
+		row[27] = entity.c27;
+		row[28] = entity.c28;
+		row[29] = entity.c29;
+		row[30] = new java.sql.Timestamp(entity.c30.getTime());
+		row[31] = entity.c31;
+		row[32] = entity.c32;
+		row[33] = entity.c33;
+		row[34] = entity.c34;
+		row[35] = entity.c35;
+		row[36] = new java.sql.Timestamp(entity.c36.getTime());
+		row[37] = entity.c37;
+		row[38] = entity.c38;
+		row[39] = entity.c39;
+		row[40] = entity.c40;
+		row[41] = entity.c41;
+		row[42] = new java.sql.Timestamp(entity.c42.getTime());
+		row[43] = entity.c43;
+		row[44] = entity.c44;
+		row[45] = entity.c45;
+		row[46] = entity.c46;
+		row[47] = entity.c47;
+		row[48] = new java.sql.Timestamp(entity.c48.getTime());
+		row[49] = entity.c49;
+		row[50] = entity.c50;
+		row[51] = entity.c51;
+		row[52] = entity.c52;
+		row[53] = entity.c53;
+		row[54] = new java.sql.Timestamp(entity.c54.getTime());
+		row[55] = entity.c55;
+		row[56] = entity.c56;
+		row[57] = entity.c57;
+		row[58] = entity.c58;
+		row[59] = entity.c59;
+		return row;
+	}
+	
+	static String[] getColumns() {
+		String[] columns = new String[60];
+		columns[0] = "id";
+		for (int i = 1; i < columns.length; i++) {
+			columns[i] = String.format("c%02d", i);
+		}
+		return columns;
+	}
+	
+	static String getCreateTableSql() {
+		StringBuilder sql = new StringBuilder("CREATE TABLE wide_entity (id BIGINT PRIMARY KEY");
+		String[] types = {"VARCHAR(64)", "INT", "BIGINT", "DOUBLE", "DECIMAL(18,4)", "TIMESTAMP"};
+		for (int i = 1; i < 60; i++) {
+			sql.append(String.format(", c%02d ", i)).append(types[(i - 1) % types.length]);
+		}
+		return sql.append(")").toString();
+	}
+}
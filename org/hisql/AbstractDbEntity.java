@@ -3,8 +3,6 @@
  */
 package org.hisql;
 
-import java.lang.reflect.Field;
-
 import org.hisql.annotation.DbField;
 import org.hisql.annotation.DbTable;
 import org.hisql.exception.EmptyKeyValueException;
@@ -23,6 +21,8 @@ import org.hisql.exception.EmptyTableNameException;
  * @author	ZHANG.XL
  */
 public abstract class AbstractDbEntity implements DbEntity {
+	/** the column values when loaded or last saved, see {@link DbTable#trackChanges()} */
+	transient Object[] snapshot;
 	
 	/**
 	 * Get the table name of the DbEntity class
@@ -34,18 +34,7 @@ public abstract class AbstractDbEntity implements DbEntity {
 	 */
 	public static <T extends DbEntity> String getTableName(Class<T> entityClz) 
 			throws EmptyTableNameException {
-		DbTable tblAnnoation = entityClz.getAnnotation(DbTable.class);
-		if (tblAnnoation == null) {
-			throw new RuntimeException(entityClz.getSimpleName() 
-					+  " class needs adding annotation @DbTable");
-		}
-		String tblName = tblAnnoation.tableName();
-		if (tblName == null || tblName.trim().length() == 0) {
-			throw new EmptyTableNameException(
-				"Not found table name: the annotation @DbTable needs setting \"tableName\"" 
-				+ " for " + entityClz.getSimpleName());
-		}
-		return tblName.trim();
+		return EntityMetadata.of(entityClz).getTableName();
 	}
 	
 	/**
@@ -68,17 +57,7 @@ public abstract class AbstractDbEntity implements DbEntity {
 	 * @author  ZHANG.XL
 	 */
 	public static <T extends DbEntity> String getKeyName(Class<T> entityClz) {
-		DbTable tblAnnoation = entityClz.getAnnotation(DbTable.class);
-		if (tblAnnoation == null) {
-			throw new RuntimeException(entityClz.getSimpleName() 
-					+  " class needs adding annotation @DbTable");
-		}
-		String keyName = tblAnnoation.keyName();
-		if (keyName == null || keyName.trim().length() == 0) {
-			throw new RuntimeException("The annotation @DbTable needs setting \"keyName\""
-				+ "for " + entityClz.getSimpleName());
-		}
-		return keyName.trim();
+		return EntityMetadata.of(entityClz).getKeyName();
 	}
 	
 	/**
@@ -102,8 +81,7 @@ public abstract class AbstractDbEntity implements DbEntity {
 	public static <T extends Number> T getKeyValue(final DbEntity entity) 
 			throws EmptyKeyValueException {
 		try {
-			Field keyField = entity.getClass().getField(getKeyName(entity.getClass()));
-			Object keyValue = keyField.get(entity);
+			Object keyValue = EntityMetadata.of(entity.getClass()).getKeyAccessor().get(entity);
 			
 			if (keyValue instanceof Integer) {
 				return (T) new Integer(((Integer) keyValue).intValue());
@@ -148,9 +126,7 @@ public abstract class AbstractDbEntity implements DbEntity {
 					+ "cannot be empty");
 		}
 		try {
-			Class<? extends DbEntity> entityClz = entity.getClass();
-			Field keyField = entityClz.getField(getKeyName(entityClz));
-			keyField.set(entity, keyValue);
+			EntityMetadata.of(entity.getClass()).getKeyAccessor().set(entity, keyValue);
 		} catch (Exception e) {
 			throw new RuntimeException(e); 
 		}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * <pre>
+ * The asynchronous facade of {@link HiSqlClient}.
+ *
+ * Every operation runs the blocking operation of the client in another thread,
+ * and completes the future with its result, or exceptionally with its exception
+ * (e.g. SqlRuntimeException). The count of operations running at the same time
+ * is limited, so the waiting operations do not occupy the connections.
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+public interface AsyncHiSqlClient extends Closeable {
+	/**
+	 * Get the blocking client running the operations
+	 *
+	 * @author  ZHANG.XL
+	 */
+	HiSqlClient getClient();
+	
+	/**
+	 * Run the callback in one transaction in one thread, see {@link HiSqlClient#inTransaction(Function)}
+	 *
+	 * @author  ZHANG.XL
+	 */
+	<R> CompletableFuture<R> inTransaction(Function<? super HiSqlClient, R> callback);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	<T> CompletableFuture<List<T>> query(final String sql, final Object[] args, Class<T> returnClz,
+			Integer startRow, Integer records);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	<T> CompletableFuture<List<T>> query(final String sql, final Object[] args, Class<T> returnClz);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	<T> CompletableFuture<T> queryForObject(final String sql, final Object[] args, Class<T> clazz);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	<T> CompletableFuture<List<T>> queryCached(final String sql, final Object[] args,
+			Class<T> returnClz, String... tables);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	<T> CompletableFuture<T> queryForObjectCached(final String sql, final Object[] args,
+			Class<T> clazz, String... tables);
+	
+	/**
+	 * Do streaming query with SQL, the row handler is called in the thread of the query
+	 *
+	 * @author  ZHANG.XL
+	 */
+	<T> CompletableFuture<Void> queryForEach(final String sql, final Object[] args,
+			Class<T> returnClz, Consumer<? super T> rowHandler);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	CompletableFuture<Integer> execute(final String sql, final Object[] args);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	CompletableFuture<Integer> execute(final String sql, final Object[] args, String... tables);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	<T extends DbEntity> CompletableFuture<T> get(Class<T> entityClz, Number keyValue);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	<T extends DbEntity> CompletableFuture<List<T>> get(Class<T> entityClz,
+			List<? extends Number> keyValues);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	<T extends DbEntity> CompletableFuture<List<T>> get(Class<T> entityClz,
+			final Map<String, Object> whereArgMap, Integer startRow, Integer records);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	<T extends DbEntity> CompletableFuture<KeysetPage<T>> getPageAfter(Class<T> entityClz,
+			final Map<String, Object> whereArgMap, Number lastKey, int pageSize);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	<T> CompletableFuture<KeysetPage<T>> queryPageAfter(final String sql, final Object[] args,
+			Class<T> returnClz, String orderColumn, Object lastValue, int pageSize);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	CompletableFuture<Integer> insert(final DbEntity entity);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	CompletableFuture<Integer> update(final DbEntity entity);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	CompletableFuture<Integer> update(final DbEntity entity, String[] updateFieldNames);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	CompletableFuture<Integer> updateChanged(final DbEntity entity);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	CompletableFuture<Integer> update(Class<? extends DbEntity> entityClz, final Number keyValue,
+			final Map<String, Object> fieldValueMap);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	CompletableFuture<Integer> delete(Class<? extends DbEntity> entityClz, Number keyValue);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	CompletableFuture<Integer> delete(Class<? extends DbEntity> entityClz,
+			List<? extends Number> keyValueList);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	CompletableFuture<int[]> insertBatch(final List<? extends DbEntity> entityList);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	CompletableFuture<Integer> insertMultiRow(final List<? extends DbEntity> entityList);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	CompletableFuture<Integer> upsert(final DbEntity entity);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	CompletableFuture<int[]> upsertBatch(final List<? extends DbEntity> entityList);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	CompletableFuture<int[]> updateBatch(final List<? extends DbEntity> entityList);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	CompletableFuture<int[]> deleteBatch(Class<? extends DbEntity> entityClz,
+			List<? extends Number> keyValueList);
+	
+	/**
+	 * Stop accepting operations, and shut down the executor created by this client.
+	 * The executor passed by the caller is not shut down.
+	 *
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.hisql.exception.SqlRuntimeException;
+
+/**
+ * <pre>
+ * The asynchronous client running the operations on virtual threads if the JVM
+ * supports them (Java 21+), otherwise on a fixed pool of daemon threads, or on
+ * the executor passed by the caller.
+ *
+ * The operations waiting for the permit of the concurrency limit only block
+ * their own threads, which is cheap for virtual threads. The limit is usually
+ * the max pool size of the connection manager, so the operations never wait
+ * for the connections inside the pool.
+ *
+ * Example:
+ *     PooledConnectionManager pool = new PooledConnectionManager(url, user, password);
+ *     HiSqlClient client = new HiSqlClientImpl(DbVersion.Mysql, pool);
+ *     AsyncHiSqlClient asyncClient = new AsyncHiSqlClientImpl(client, pool.getMaxPoolSize());
+ *     asyncClient.get(User.class, 1L).thenAccept(...);
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+public class AsyncHiSqlClientImpl implements AsyncHiSqlClient {
+	private static final AtomicInteger threadSeq = new AtomicInteger();
+	
+	private final HiSqlClient client;
+	private final Executor executor;
+	/** the executor created by this client, which is shut down by close() */
+	private final ExecutorService ownExecutor;
+	private final Semaphore permits;
+	private volatile boolean closed = false;
+	
+	/**
+	 * Run the operations on virtual threads, or on the fixed pool of daemon threads
+	 * if the virtual threads are not supported
+	 *
+	 * @param	maxConcurrency - the max count of operations running at the same time
+	 * @author  ZHANG.XL
+	 */
+	public AsyncHiSqlClientImpl(HiSqlClient client, int maxConcurrency) {
+		this(client, createExecutor(maxConcurrency), maxConcurrency, true);
+	}
+	
+	/**
+	 * Run the operations on the executor, which is not shut down by close()
+	 *
+	 * @param	maxConcurrency - the max count of operations running at the same time
+	 * @author  ZHANG.XL
+	 */
+	public AsyncHiSqlClientImpl(HiSqlClient client, Executor executor, int maxConcurrency) {
+		this(client, executor, maxConcurrency, false);
+	}
+	
+	private AsyncHiSqlClientImpl(HiSqlClient client, Executor executor, int maxConcurrency,
+			boolean ownExecutor) {
+		if (client == null || executor == null) {
+			throw new IllegalArgumentException("client and executor cannot be null");
+		}
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("max concurrency must be positive: " + maxConcurrency);
+		}
+		this.client = client;
+		this.executor = executor;
+		this.ownExecutor = ownExecutor ? (ExecutorService) executor : null;
+		this.permits = new Semaphore(maxConcurrency, true);
+	}
+	
+	/**
+	 * Create the virtual-thread-per-task executor by reflection, so this class
+	 * also runs on the JVM without virtual threads
+	 */
+	private static ExecutorService createExecutor(int maxConcurrency) {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("max concurrency must be positive: " + maxConcurrency);
+		}
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (Exception e) {
+			return Executors.newFixedThreadPool(maxConcurrency, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "hisql-async-" + threadSeq.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+	
+	public HiSqlClient getClient() {
+		return client;
+	}
+	
+	/**
+	 * Run the operation in the executor after getting the permit
+	 *
+	 * @author  ZHANG.XL
+	 */
+	private <R> CompletableFuture<R> submit(final Supplier<R> operation) {
+		final CompletableFuture<R> future = new CompletableFuture<R>();
+		if (closed) {
+			future.completeExceptionally(new SqlRuntimeException("the async client is closed"));
+			return future;
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (future.isDone()) return;  // cancelled by the caller
+					try {
+						permits.acquire();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						future.completeExceptionally(e);
+						return;
+					}
+					try {
+						if (!future.isDone()) {
+							future.complete(operation.get());
+						}
+					} catch (Throwable e) {
+						future.completeExceptionally(e);
+					} finally {
+						permits.release();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+	
+	public <R> CompletableFuture<R> inTransaction(final Function<? super HiSqlClient, R> callback) {
+		return submit(new Supplier<R>() {
+			@Override
+			public R get() {
+				return client.inTransaction(callback);
+			}
+		});
+	}
+	
+	public <T> CompletableFuture<List<T>> query(final String sql, final Object[] args,
+			final Class<T> returnClz, final Integer startRow, final Integer records) {
+		return submit(new Supplier<List<T>>() {
+			@Override
+			public List<T> get() {
+				return client.query(sql, args, returnClz, startRow, records);
+			}
+		});
+	}
+	
+	public <T> CompletableFuture<List<T>> query(final String sql, final Object[] args,
+			final Class<T> returnClz) {
+		return submit(new Supplier<List<T>>() {
+			@Override
+			public List<T> get() {
+				return client.query(sql, args, returnClz);
+			}
+		});
+	}
+	
+	public <T> CompletableFuture<T> queryForObject(final String sql, final Object[] args,
+			final Class<T> clazz) {
+		return submit(new Supplier<T>() {
+			@Override
+			public T get() {
+				return client.queryForObject(sql, args, clazz);
+			}
+		});
+	}
+	
+	public <T> CompletableFuture<List<T>> queryCached(final String sql, final Object[] args,
+			final Class<T> returnClz, final String... tables) {
+		return submit(new Supplier<List<T>>() {
+			@Override
+			public List<T> get() {
+				return client.queryCached(sql, args, returnClz, tables);
+			}
+		});
+	}
+	
+	public <T> CompletableFuture<T> queryForObjectCached(final String sql, final Object[] args,
+			final Class<T> clazz, final String... tables) {
+		return submit(new Supplier<T>() {
+			@Override
+			public T get() {
+				return client.queryForObjectCached(sql, args, clazz, tables);
+			}
+		});
+	}
+	
+	public <T> CompletableFuture<Void> queryForEach(final String sql, final Object[] args,
+			final Class<T> returnClz, final Consumer<? super T> rowHandler) {
+		return submit(new Supplier<Void>() {
+			@Override
+			public Void get() {
+				client.queryForEach(sql, args, returnClz, rowHandler);
+				return null;
+			}
+		});
+	}
+	
+	public CompletableFuture<Integer> execute(final String sql, final Object[] args) {
+		return submit(new Supplier<Integer>() {
+			@Override
+			public Integer get() {
+				return client.execute(sql, args);
+			}
+		});
+	}
+	
+	public CompletableFuture<Integer> execute(final String sql, final Object[] args,
+			final String... tables) {
+		return submit(new Supplier<Integer>() {
+			@Override
+			public Integer get() {
+				return client.execute(sql, args, tables);
+			}
+		});
+	}
+	
+	public <T extends DbEntity> CompletableFuture<T> get(final Class<T> entityClz,
+			final Number keyValue) {
+		return submit(new Supplier<T>() {
+			@Override
+			public T get() {
+				return client.get(entityClz, keyValue);
+			}
+		});
+	}
+	
+	public <T extends DbEntity> CompletableFuture<List<T>> get(final Class<T> entityClz,
+			final List<? extends Number> keyValues) {
+		return submit(new Supplier<List<T>>() {
+			@Override
+			public List<T> get() {
+				return client.get(entityClz, keyValues);
+			}
+		});
+	}
+	
+	public <T extends DbEntity> CompletableFuture<List<T>> get(final Class<T> entityClz,
+			final Map<String, Object> whereArgMap, final Integer startRow, final Integer records) {
+		return submit(new Supplier<List<T>>() {
+			@Override
+			public List<T> get() {
+				return client.get(entityClz, whereArgMap, startRow, records);
+			}
+		});
+	}
+	
+	public <T extends DbEntity> CompletableFuture<KeysetPage<T>> getPageAfter(
+			final Class<T> entityClz, final Map<String, Object> whereArgMap,
+			final Number lastKey, final int pageSize) {
+		return submit(new Supplier<KeysetPage<T>>() {
+			@Override
+			public KeysetPage<T> get() {
+				return client.getPageAfter(entityClz, whereArgMap, lastKey, pageSize);
+			}
+		});
+	}
+	
+	public <T> CompletableFuture<KeysetPage<T>> queryPageAfter(final String sql,
+			final Object[] args, final Class<T> returnClz, final String orderColumn,
+			final Object lastValue, final int pageSize) {
+		return submit(new Supplier<KeysetPage<T>>() {
+			@Override
+			public KeysetPage<T> get() {
+				return client.queryPageAfter(sql, args, returnClz, orderColumn, lastValue, pageSize);
+			}
+		});
+	}
+	
+	public CompletableFuture<Integer> insert(final DbEntity entity) {
+		return submit(new Supplier<Integer>() {
+			@Override
+			public Integer get() {
+				return client.insert(entity);
+			}
+		});
+	}
+	
+	public CompletableFuture<Integer> update(final DbEntity entity) {
+		return submit(new Supplier<Integer>() {
+			@Override
+			public Integer get() {
+				return client.update(entity);
+			}
+		});
+	}
+	
+	public CompletableFuture<Integer> updateChanged(final DbEntity entity) {
+		return submit(new Supplier<Integer>() {
+			@Override
+			public Integer get() {
+				return client.updateChanged(entity);
+			}
+		});
+	}
+	
+	public CompletableFuture<Integer> update(final DbEntity entity,
+			final String[] updateFieldNames) {
+		return submit(new Supplier<Integer>() {
+			@Override
+			public Integer get() {
+				return client.update(entity, updateFieldNames);
+			}
+		});
+	}
+	
+	public CompletableFuture<Integer> update(final Class<? extends DbEntity> entityClz,
+			final Number keyValue, final Map<String, Object> fieldValueMap) {
+		return submit(new Supplier<Integer>() {
+			@Override
+			public Integer get() {
+				return client.update(entityClz, keyValue, fieldValueMap);
+			}
+		});
+	}
+	
+	public CompletableFuture<Integer> delete(final Class<? extends DbEntity> entityClz,
+			final Number keyValue) {
+		return submit(new Supplier<Integer>() {
+			@Override
+			public Integer get() {
+				return client.delete(entityClz, keyValue);
+			}
+		});
+	}
+	
+	public CompletableFuture<Integer> delete(final Class<? extends DbEntity> entityClz,
+			final List<? extends Number> keyValueList) {
+		return submit(new Supplier<Integer>() {
+			@Override
+			public Integer get() {
+				return client.delete(entityClz, keyValueList);
+			}
+		});
+	}
+	
+	public CompletableFuture<int[]> insertBatch(final List<? extends DbEntity> entityList) {
+		return submit(new Supplier<int[]>() {
+			@Override
+			public int[] get() {
+				return client.insertBatch(entityList);
+			}
+		});
+	}
+	
+	public CompletableFuture<Integer> insertMultiRow(final List<? extends DbEntity> entityList) {
+		return submit(new Supplier<Integer>() {
+			@Override
+			public Integer get() {
+				return client.insertMultiRow(entityList);
+			}
+		});
+	}
+	
+	public CompletableFuture<Integer> upsert(final DbEntity entity) {
+		return submit(new Supplier<Integer>() {
+			@Override
+			public Integer get() {
+				return client.upsert(entity);
+			}
+		});
+	}
+	
+	public CompletableFuture<int[]> upsertBatch(final List<? extends DbEntity> entityList) {
+		return submit(new Supplier<int[]>() {
+			@Override
+			public int[] get() {
+				return client.upsertBatch(entityList);
+			}
+		});
+	}
+	
+	public CompletableFuture<int[]> updateBatch(final List<? extends DbEntity> entityList) {
+		return submit(new Supplier<int[]>() {
+			@Override
+			public int[] get() {
+				return client.updateBatch(entityList);
+			}
+		});
+	}
+	
+	public CompletableFuture<int[]> deleteBatch(final Class<? extends DbEntity> entityClz,
+			final List<? extends Number> keyValueList) {
+		return submit(new Supplier<int[]>() {
+			@Override
+			public int[] get() {
+				return client.deleteBatch(entityClz, keyValueList);
+			}
+		});
+	}
+	
+	public void close() {
+		closed = true;
+		if (ownExecutor != null) {
+			ownExecutor.shutdown();
+		}
+	}
+}
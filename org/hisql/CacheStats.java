@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+/**
+ * The statistics snapshot of one cache
+ *
+ * @author	ZHANG.XL
+ */
+public final class CacheStats {
+	private final long hitCount;
+	private final long missCount;
+	private final long evictionCount;
+	private final int size;
+	
+	public CacheStats(long hitCount, long missCount, long evictionCount, int size) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.size = size;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	public int getSize() {
+		return size;
+	}
+	
+	/** hit count / request count, 1.0 if no request */
+	public double getHitRate() {
+		long requestCount = hitCount + missCount;
+		return (requestCount == 0) ? 1.0 : (double) hitCount / requestCount;
+	}
+	
+	@Override
+	public String toString() {
+		return "CacheStats[hitCount=" + hitCount + ", missCount=" + missCount 
+				+ ", evictionCount=" + evictionCount + ", size=" + size + "]";
+	}
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * <pre>
+ * The reader of one column into one field, chosen once per mapping plan by
+ * the field type and the SQL type of the column.
+ *
+ * The numbers are read by the typed getters (getLong, getInt, getBigDecimal ...)
+ * rather than getObject + conversion, so the long values above 2^53 are exact,
+ * and the primitive fields are written through the accessor without boxing.
+ * The SQL NULL leaves the primitive field unchanged, and sets the others to null.
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+abstract class ColumnReader {
+	protected final FieldAccessor accessor;
+	protected final boolean primitive;
+
+	private ColumnReader(FieldAccessor accessor) {
+		this.accessor = accessor;
+		this.primitive = accessor.getField().getType().isPrimitive();
+	}
+
+	/**
+	 * Read the column of the current row into the field of the entity
+	 *
+	 * @author  ZHANG.XL
+	 */
+	abstract void read(ResultSet rs, int columnIndex, Object entity) throws SQLException;
+
+	/**
+	 * Create the reader for the field
+	 *
+	 * @param	sqlType - the column type of {@link java.sql.ResultSetMetaData#getColumnType(int)}
+	 * @author  ZHANG.XL
+	 */
+	static ColumnReader create(FieldAccessor accessor, int sqlType) {
+		final Class<?> type = accessor.getField().getType();
+		if (type == Long.class || type == Long.TYPE) {
+			return new LongReader(accessor);
+		} else if (type == Integer.class || type == Integer.TYPE) {
+			return new IntReader(accessor);
+		} else if (type == Double.class || type == Double.TYPE) {
+			return new DoubleReader(accessor);
+		} else if (type == Boolean.class || type == Boolean.TYPE) {
+			return new BooleanReader(accessor);
+		} else if (type == Float.class || type == Float.TYPE) {
+			return new FloatReader(accessor);
+		} else if (type == Short.class || type == Short.TYPE) {
+			return new ShortReader(accessor);
+		} else if (type == Byte.class || type == Byte.TYPE) {
+			return new ByteReader(accessor);
+		} else if (type == String.class) {
+			return new ValueReader(accessor, ValueReader.STRING);
+		} else if (type == BigDecimal.class) {
+			return new ValueReader(accessor, ValueReader.BIG_DECIMAL);
+		} else if (type == java.math.BigInteger.class) {
+			return new ValueReader(accessor, ValueReader.BIG_INTEGER);
+		} else if (type == java.util.Date.class) {
+			return new ValueReader(accessor,
+					isCharType(sqlType) ? ValueReader.DATE_FROM_STRING : ValueReader.DATE);
+		} else if (type == Timestamp.class) {
+			return new ValueReader(accessor, ValueReader.SQL_TIMESTAMP);
+		} else if (type == java.sql.Date.class) {
+			return new ValueReader(accessor, ValueReader.SQL_DATE);
+		} else if (type == java.sql.Time.class) {
+			return new ValueReader(accessor, ValueReader.SQL_TIME);
+		} else if (type == LocalDateTime.class) {
+			return new ValueReader(accessor, ValueReader.LOCAL_DATE_TIME);
+		} else if (type == LocalDate.class) {
+			return new ValueReader(accessor, ValueReader.LOCAL_DATE);
+		} else if (type == LocalTime.class) {
+			return new ValueReader(accessor, ValueReader.LOCAL_TIME);
+		} else if (type == Instant.class) {
+			return new ValueReader(accessor, ValueReader.INSTANT);
+		} else if (type == Character.class || type == Character.TYPE) {
+			return new ValueReader(accessor, ValueReader.CHARACTER);
+		}
+		return new ValueReader(accessor, ValueReader.OBJECT);
+	}
+
+	private static boolean isCharType(int sqlType) {
+		switch (sqlType) {
+		case Types.CHAR: case Types.VARCHAR: case Types.LONGVARCHAR:
+		case Types.NCHAR: case Types.NVARCHAR: case Types.LONGNVARCHAR:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Set null into the wrapper field, the primitive field is unchanged
+	 */
+	protected final void setNull(Object entity) {
+		if (!primitive) {
+			accessor.set(entity, null);
+		}
+	}
+
+	private static final class LongReader extends ColumnReader {
+		LongReader(FieldAccessor accessor) {
+			super(accessor);
+		}
+
+		@Override
+		void read(ResultSet rs, int columnIndex, Object entity) throws SQLException {
+			long value = rs.getLong(columnIndex);
+			if (value == 0 && rs.wasNull()) {
+				setNull(entity);
+			} else if (primitive) {
+				accessor.setLong(entity, value);
+			} else {
+				accessor.set(entity, Long.valueOf(value));
+			}
+		}
+	}
+
+	private static final class IntReader extends ColumnReader {
+		IntReader(FieldAccessor accessor) {
+			super(accessor);
+		}
+
+		@Override
+		void read(ResultSet rs, int columnIndex, Object entity) throws SQLException {
+			int value = rs.getInt(columnIndex);
+			if (value == 0 && rs.wasNull()) {
+				setNull(entity);
+			} else if (primitive) {
+				accessor.setInt(entity, value);
+			} else {
+				accessor.set(entity, Integer.valueOf(value));
+			}
+		}
+	}
+
+	private static final class ShortReader extends ColumnReader {
+		ShortReader(FieldAccessor accessor) {
+			super(accessor);
+		}
+
+		@Override
+		void read(ResultSet rs, int columnIndex, Object entity) throws SQLException {
+			short value = rs.getShort(columnIndex);
+			if (value == 0 && rs.wasNull()) {
+				setNull(entity);
+			} else if (primitive) {
+				accessor.setShort(entity, value);
+			} else {
+				accessor.set(entity, Short.valueOf(value));
+			}
+		}
+	}
+
+	private static final class ByteReader extends ColumnReader {
+		ByteReader(FieldAccessor accessor) {
+			super(accessor);
+		}
+
+		@Override
+		void read(ResultSet rs, int columnIndex, Object entity) throws SQLException {
+			byte value = rs.getByte(columnIndex);
+			if (value == 0 && rs.wasNull()) {
+				setNull(entity);
+			} else if (primitive) {
+				accessor.setByte(entity, value);
+			} else {
+				accessor.set(entity, Byte.valueOf(value));
+			}
+		}
+	}
+
+	private static final class DoubleReader extends ColumnReader {
+		DoubleReader(FieldAccessor accessor) {
+			super(accessor);
+		}
+
+		@Override
+		void read(ResultSet rs, int columnIndex, Object entity) throws SQLException {
+			double value = rs.getDouble(columnIndex);
+			if (value == 0 && rs.wasNull()) {
+				setNull(entity);
+			} else if (primitive) {
+				accessor.setDouble(entity, value);
+			} else {
+				accessor.set(entity, Double.valueOf(value));
+			}
+		}
+	}
+
+	private static final class FloatReader extends ColumnReader {
+		FloatReader(FieldAccessor accessor) {
+			super(accessor);
+		}
+
+		@Override
+		void read(ResultSet rs, int columnIndex, Object entity) throws SQLException {
+			float value = rs.getFloat(columnIndex);
+			if (value == 0 && rs.wasNull()) {
+				setNull(entity);
+			} else if (primitive) {
+				accessor.setFloat(entity, value);
+			} else {
+				accessor.set(entity, Float.valueOf(value));
+			}
+		}
+	}
+
+	/**
+	 * The number columns are true if not 0, as the drivers do by getBoolean
+	 */
+	private static final class BooleanReader extends ColumnReader {
+		BooleanReader(FieldAccessor accessor) {
+			super(accessor);
+		}
+
+		@Override
+		void read(ResultSet rs, int columnIndex, Object entity) throws SQLException {
+			boolean value = rs.getBoolean(columnIndex);
+			if (!value && rs.wasNull()) {
+				setNull(entity);
+			} else if (primitive) {
+				accessor.setBoolean(entity, value);
+			} else {
+				accessor.set(entity, Boolean.valueOf(value));
+			}
+		}
+	}
+
+	/**
+	 * The reader of the object values, by the kind of the field type
+	 */
+	private static final class ValueReader extends ColumnReader {
+		static final int OBJECT = 0;
+		static final int STRING = 1;
+		static final int BIG_DECIMAL = 2;
+		static final int BIG_INTEGER = 3;
+		static final int DATE = 4;
+		static final int DATE_FROM_STRING = 5;
+		static final int SQL_TIMESTAMP = 6;
+		static final int SQL_DATE = 7;
+		static final int SQL_TIME = 8;
+		static final int LOCAL_DATE_TIME = 9;
+		static final int LOCAL_DATE = 10;
+		static final int LOCAL_TIME = 11;
+		static final int INSTANT = 12;
+		static final int CHARACTER = 13;
+
+		private final int kind;
+
+		ValueReader(FieldAccessor accessor, int kind) {
+			super(accessor);
+			this.kind = kind;
+		}
+
+		@Override
+		void read(ResultSet rs, int columnIndex, Object entity) throws SQLException {
+			Object value = getValue(rs, columnIndex);
+			if (value == null) {
+				setNull(entity);
+			} else {
+				accessor.set(entity, value);
+			}
+		}
+
+		private Object getValue(ResultSet rs, int columnIndex) throws SQLException {
+			switch (kind) {
+			case STRING:
+				return rs.getString(columnIndex);
+			case BIG_DECIMAL:
+				return rs.getBigDecimal(columnIndex);
+			case BIG_INTEGER: {
+				BigDecimal value = rs.getBigDecimal(columnIndex);
+				return (value != null) ? value.toBigInteger() : null;
+			}
+			case DATE: {
+				Timestamp value = rs.getTimestamp(columnIndex);
+				return (value != null) ? new java.util.Date(value.getTime()) : null;
+			}
+			case DATE_FROM_STRING: {
+				String value = rs.getString(columnIndex);
+				return (value != null) ? DbUtil.parseDateTime(value) : null;
+			}
+			case SQL_TIMESTAMP:
+				return rs.getTimestamp(columnIndex);
+			case SQL_DATE:
+				return rs.getDate(columnIndex);
+			case SQL_TIME:
+				return rs.getTime(columnIndex);
+			case LOCAL_DATE_TIME: {
+				Timestamp value = rs.getTimestamp(columnIndex);
+				return (value != null) ? value.toLocalDateTime() : null;
+			}
+			case LOCAL_DATE: {
+				java.sql.Date value = rs.getDate(columnIndex);
+				return (value != null) ? value.toLocalDate() : null;
+			}
+			case LOCAL_TIME: {
+				java.sql.Time value = rs.getTime(columnIndex);
+				return (value != null) ? value.toLocalTime() : null;
+			}
+			case INSTANT: {
+				Timestamp value = rs.getTimestamp(columnIndex);
+				return (value != null) ? value.toInstant() : null;
+			}
+			case CHARACTER: {
+				String value = rs.getString(columnIndex);
+				return (value != null && value.length() > 0) ? Character.valueOf(value.charAt(0)) : null;
+			}
+			default:
+				return rs.getObject(columnIndex);
+			}
+		}
+	}
+}
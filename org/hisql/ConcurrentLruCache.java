@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <pre>
+ * The thread-safe cache bounded by size, evicting the least recently used entries.
+ * The entries can also expire after a time-to-live since they are put.
+ *
+ * The size is the count of entries by default, or the total weight of
+ * entries given by a {@link Weigher}.
+ *
+ * The reads are lock-free: the entry only records its last access time.
+ * When the size exceeds the max size, one writer evicts the oldest entries
+ * down to 90% of the max size, so the cost of sorting is amortized by the
+ * following writes. The recency is therefore approximate under contention.
+ * The expired entry is removed when it is read or evicted.
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+public class ConcurrentLruCache<K, V> {
+	private static final Comparator<Map.Entry<?, ? extends Node<?>>> ACCESS_ORDER =
+			new Comparator<Map.Entry<?, ? extends Node<?>>>() {
+		@Override
+		public int compare(Map.Entry<?, ? extends Node<?>> e1, Map.Entry<?, ? extends Node<?>> e2) {
+			long t1 = e1.getValue().accessTime;
+			long t2 = e2.getValue().accessTime;
+			return (t1 < t2) ? -1 : ((t1 == t2) ? 0 : 1);
+		}
+	};
+	
+	private final ConcurrentHashMap<K, Node<V>> map;
+	private final long maxSize;
+	private final long ttlNanos;
+	private final Weigher<? super K, ? super V> weigher;
+	private final AtomicLong weight = new AtomicLong();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	
+	public ConcurrentLruCache(int maxSize) {
+		this(maxSize, 0);
+	}
+	
+	/**
+	 * @param	maxSize - the max count of entries
+	 * @param	ttlMillis - the time-to-live of entries in milliseconds, 0 means never expire
+	 * @author  ZHANG.XL
+	 */
+	public ConcurrentLruCache(int maxSize, long ttlMillis) {
+		this(maxSize, ttlMillis, null);
+	}
+	
+	/**
+	 * @param	maxWeight - the max total weight of entries
+	 * @param	ttlMillis - the time-to-live of entries in milliseconds, 0 means never expire
+	 * @param	weigher - the weight of each entry, null means 1 per entry
+	 * @author  ZHANG.XL
+	 */
+	public ConcurrentLruCache(long maxWeight, long ttlMillis, Weigher<? super K, ? super V> weigher) {
+		if (maxWeight < 1) {
+			throw new IllegalArgumentException("max size must be positive: " + maxWeight);
+		}
+		if (ttlMillis < 0) {
+			throw new IllegalArgumentException("time-to-live cannot be negative: " + ttlMillis);
+		}
+		this.maxSize = maxWeight;
+		this.ttlNanos = ttlMillis * 1000000L;
+		this.weigher = weigher;
+		this.map = new ConcurrentHashMap<K, Node<V>>((int) Math.min(maxWeight, 1024) * 2);
+	}
+	
+	/**
+	 * @return	the cached value, or null if not found
+	 * @author  ZHANG.XL
+	 */
+	public V get(K key) {
+		Node<V> node = map.get(key);
+		if (node == null) {
+			missCount.incrementAndGet();
+			return null;
+		}
+		final long now = System.nanoTime();
+		if (isExpired(node, now)) {
+			remove(key, node);
+			missCount.incrementAndGet();
+			return null;
+		}
+		node.accessTime = now;
+		hitCount.incrementAndGet();
+		return node.value;
+	}
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	public void put(K key, V value) {
+		final Node<V> node = newNode(key, value);
+		Node<V> old = map.put(key, node);
+		weight.addAndGet((old != null) ? node.weight - old.weight : node.weight);
+		if (weight.get() > maxSize) {
+			evict();
+		}
+	}
+	
+	/**
+	 * @return	the value already cached, or null if the value is put
+	 * @author  ZHANG.XL
+	 */
+	public V putIfAbsent(K key, V value) {
+		final Node<V> node = newNode(key, value);
+		Node<V> existing = map.putIfAbsent(key, node);
+		while (existing != null) {
+			if (!isExpired(existing, node.accessTime)) {
+				return existing.value;
+			}
+			if (map.replace(key, existing, node)) {
+				weight.addAndGet(-existing.weight);
+				break;
+			}
+			existing = map.putIfAbsent(key, node);
+		}
+		weight.addAndGet(node.weight);
+		if (weight.get() > maxSize) {
+			evict();
+		}
+		return null;
+	}
+	
+	public void remove(K key) {
+		Node<V> old = map.remove(key);
+		if (old != null) {
+			weight.addAndGet(-old.weight);
+		}
+	}
+	
+	public void clear() {
+		for (Map.Entry<K, Node<V>> entry : map.entrySet()) {
+			remove(entry.getKey(), entry.getValue());
+		}
+	}
+	
+	public int size() {
+		return map.size();
+	}
+	
+	/** the max count of entries, or the max total weight if the weigher is set */
+	public long getMaxSize() {
+		return maxSize;
+	}
+	
+	/** the total weight of entries, which is the count of entries without the weigher */
+	public long getWeight() {
+		return weight.get();
+	}
+	
+	/** the time-to-live of entries in milliseconds, 0 means never expire */
+	public long getTtlMillis() {
+		return ttlNanos / 1000000L;
+	}
+	
+	/**
+	 * Get the statistics of this cache
+	 *
+	 * @author  ZHANG.XL
+	 */
+	public CacheStats getStats() {
+		return new CacheStats(hitCount.get(), missCount.get(), evictionCount.get(), map.size());
+	}
+	
+	private Node<V> newNode(K key, V value) {
+		int w = (weigher != null) ? weigher.weigh(key, value) : 1;
+		if (w < 0) {
+			throw new IllegalArgumentException("weight cannot be negative: " + w);
+		}
+		return new Node<V>(value, w, ttlNanos);
+	}
+	
+	private boolean remove(K key, Node<V> node) {
+		if (map.remove(key, node)) {
+			weight.addAndGet(-node.weight);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Evict the expired and least recently used entries, only one thread does it at a time
+	 */
+	private void evict() {
+		if (!evictionLock.tryLock()) return;
+		try {
+			if (weight.get() <= maxSize) return;
+			
+			final long now = System.nanoTime();
+			List<Map.Entry<K, Node<V>>> entries = new ArrayList<Map.Entry<K, Node<V>>>(map.size());
+			for (Map.Entry<K, Node<V>> entry : map.entrySet()) {
+				if (isExpired(entry.getValue(), now)) {
+					if (remove(entry.getKey(), entry.getValue())) {
+						evictionCount.incrementAndGet();
+					}
+				} else {
+					entries.add(entry);
+				}
+			}
+			if (weight.get() <= maxSize) return;
+			
+			Collections.sort(entries, ACCESS_ORDER);
+			final long targetSize = maxSize - maxSize / 10;
+			for (int i = 0; i < entries.size() && weight.get() > targetSize; i++) {
+				Map.Entry<K, Node<V>> entry = entries.get(i);
+				if (remove(entry.getKey(), entry.getValue())) {
+					evictionCount.incrementAndGet();
+				}
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+	
+	private static boolean isExpired(Node<?> node, long now) {
+		return node.expireTime != 0 && now - node.expireTime >= 0;
+	}
+	
+	/**
+	 * The weight of one cache entry
+	 *
+	 * @author	ZHANG.XL
+	 */
+	public interface Weigher<K, V> {
+		int weigh(K key, V value);
+	}
+	
+	private static final class Node<V> {
+		final V value;
+		final int weight;
+		/** nanoTime when the entry expires, 0 means never */
+		final long expireTime;
+		volatile long accessTime;
+		
+		Node(V value, int weight, long ttlNanos) {
+			this.value = value;
+			this.weight = weight;
+			this.accessTime = System.nanoTime();
+			this.expireTime = (ttlNanos > 0) ? (accessTime + ttlNanos) | 1L : 0;
+		}
+	}
+}
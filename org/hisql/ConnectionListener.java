@@ -0,0 +1,20 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.sql.Connection;
+
+/**
+ * The listener of the connection events from {@link ObservableConnectionManager}
+ *
+ * @author	ZHANG.XL
+ */
+public interface ConnectionListener {
+	/**
+	 * The connection is discarded (closed or evicted) and will not be handed out again
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	void connectionDiscarded(Connection con);
+}
@@ -3,6 +3,11 @@
  */
 package org.hisql;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
 /**
  * The database adapter
  *
@@ -20,6 +25,15 @@ public interface DbAdapter {
 	
 	Integer[] getQueryArgsForPaging(int startRow, int records);
 	
+	/**
+	 * Get the new query sql returning the first rows only, 
+	 * the max count of rows is binded as the last variable
+	 *
+	 * @param   querySql - original sql for query, which is usually ordered
+	 * @author  ZHANG.XL
+	 */
+	String getQuerySqlForLimit(String querySql);
+	
 	/**
 	 * Convert argument value for PreparedStatement
 	 * 
@@ -27,6 +41,78 @@ public interface DbAdapter {
 	 */
 	Object convertArg(Object arg);
 	
+	/**
+	 * Get the binder of the entity field type for PreparedStatement, 
+	 * which is resolved once per entity column
+	 * 
+	 * @param	type - the type of the entity field
+	 * @author  ZHANG.XL
+	 */
+	ParameterBinder getParameterBinder(Class<?> type);
+	
 	/** 获取SQL语句中的日期赋值字符串  */
 	public String getDateStrForSql(java.util.Date date);
+	
+	/**
+	 * Prepare the forward-only statement for streaming query, which fetches 
+	 * the rows by the cursor mode of the db instead of loading all rows
+	 *
+	 * @param   fetchSize - the count of rows fetched in one round-trip
+	 * @author  ZHANG.XL
+	 */
+	PreparedStatement prepareStreamingStatement(Connection con, String sql, int fetchSize) 
+			throws SQLException;
+	
+	/**
+	 * Get the SQL inserting multiple rows in one statement with binded variables
+	 *
+	 * @param   tblName - table name
+	 * @param	columnsSql - the column list, e.g. "id,name,age"
+	 * @param	columnCnt - the count of columns
+	 * @param	rowCnt - the count of rows
+	 * @author  ZHANG.XL
+	 */
+	String getMultiRowInsertSql(String tblName, String columnsSql, int columnCnt, int rowCnt);
+	
+	/**
+	 * Get the SQL inserting one row, or updating the other columns of the row 
+	 * if the key exists, with binded variables in the order of the columns
+	 *
+	 * @param   tblName - table name
+	 * @param	columnNames - the columns including the key column
+	 * @param	keyName - the key column matching the existing row
+	 * @author  ZHANG.XL
+	 */
+	String getUpsertSql(String tblName, List<String> columnNames, String keyName);
+	
+	/**
+	 * Prepare the insert statement whose getGeneratedKeys() returns the key 
+	 * generated by the db, one row per inserted row
+	 *
+	 * @param	keyName - the key column
+	 * @author  ZHANG.XL
+	 */
+	PreparedStatement prepareInsertStatement(Connection con, String sql, String keyName) 
+			throws SQLException;
+	
+	/**
+	 * Get the SQL selecting the next value of the sequence
+	 *
+	 * @author  ZHANG.XL
+	 */
+	String getSequenceNextValSql(String sequenceName);
+	
+	/** the max count of binded variables in one multi-row insert statement */
+	int getMaxParameterCount();
+	
+	/** the max bytes of one statement sent to the db, including the binded values */
+	int getMaxStatementBytes();
+	
+	/**
+	 * Get the execution plan of the SQL without executing it, one line per plan row
+	 *
+	 * @param	args - the binded variables of the SQL
+	 * @author  ZHANG.XL
+	 */
+	List<String> explain(Connection con, String sql, Object[] args) throws SQLException;
 }
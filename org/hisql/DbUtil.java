@@ -4,12 +4,138 @@
  */
 package org.hisql;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.text.ParsePosition;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
 /**
- * TODO
+ * The utilities for converting the values read from database
  *
  * @author	Zhang.XiaLiang 
  * @since	2014.8
  */
 public class DbUtil {
 
+	/** the format of the date value in SQL, which is thread-safe */
+	private static final DateTimeFormatter DATE_TIME_FORMATTER = 
+			DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+	
+	/**
+	 * 对象值转型（将val转型为targetClz）
+	 * 
+	 * @param	targetClz - 转型的目标类型
+	 * @param	val - 需要转型的对象值
+	 * @author  ZHANG.XL
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T castObject(Class<T> targetClz, Object val) {
+		if (targetClz == String.class) {
+			return (T) ((val != null) ? val.toString() : null); 
+		} else if (val instanceof Number) {
+			T num = castNumber(targetClz, val);
+			return (num != null) ? num : (T) val;
+		} else if (val instanceof Timestamp) {
+			Timestamp ts = (Timestamp) val;
+			if (targetClz == LocalDateTime.class) {
+				return (T) ts.toLocalDateTime();
+			} else if (targetClz == Instant.class) {
+				return (T) ts.toInstant();
+			} else if (targetClz == Timestamp.class) {
+				return (T) ts;
+			}
+			java.util.Date date = new java.util.Date(ts.getTime());
+			return (T) date;
+		} else if (val instanceof java.sql.Date && targetClz == LocalDate.class) {
+			return (T) ((java.sql.Date) val).toLocalDate();
+		} else if (val instanceof java.sql.Time && targetClz == LocalTime.class) {
+			return (T) ((java.sql.Time) val).toLocalTime();
+		} else {
+			return (T) val;
+		}
+	}
+	
+	/**
+	 * <pre>
+	 * Convert the number to the number type without loss when the value fits:
+	 * the integers are converted by longValue() rather than through double,
+	 * so the long values above 2^53 are exact.
+	 * </pre>
+	 * 
+	 * @return	the converted number, or null if val is not a number or numType is not supported
+	 * @author ZHANG.XL
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T castNumber(Class<T> numType, Object val) {
+		if (!(val instanceof Number)) {
+			return null;
+		}
+		Number num = (Number) val;
+		if (numType == Long.class || numType == Long.TYPE) {
+			return (T) ((num instanceof Long) ? num : Long.valueOf(num.longValue()));
+		} else if (numType == Integer.class || numType == Integer.TYPE) {
+			return (T) ((num instanceof Integer) ? num : Integer.valueOf(num.intValue()));
+		} else if (numType == Double.class || numType == Double.TYPE) {
+			return (T) ((num instanceof Double) ? num : Double.valueOf(num.doubleValue()));
+		} else if (numType == Float.class || numType == Float.TYPE) {
+			return (T) ((num instanceof Float) ? num : Float.valueOf(num.floatValue()));
+		} else if (numType == Short.class || numType == Short.TYPE) {
+			return (T) ((num instanceof Short) ? num : Short.valueOf(num.shortValue()));
+		} else if (numType == Byte.class || numType == Byte.TYPE) {
+			return (T) ((num instanceof Byte) ? num : Byte.valueOf(num.byteValue()));
+		} else if (numType == BigDecimal.class) {
+			return (T) toBigDecimal(num);
+		} else if (numType == BigInteger.class) {
+			return (T) ((num instanceof BigInteger) ? num : toBigDecimal(num).toBigInteger());
+		} else if (numType == Number.class || numType == Object.class) {
+			return (T) num;
+		}
+		return null;
+	}
+	
+	private static BigDecimal toBigDecimal(Number num) {
+		if (num instanceof BigDecimal) {
+			return (BigDecimal) num;
+		} else if (num instanceof BigInteger) {
+			return new BigDecimal((BigInteger) num);
+		} else if (num instanceof Long || num instanceof Integer 
+				|| num instanceof Short || num instanceof Byte) {
+			return BigDecimal.valueOf(num.longValue());
+		}
+		return new BigDecimal(num.toString());
+	}
+	
+	/**
+	 * Format the date as "yyyy-MM-dd HH:mm:ss" in the default time zone
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	public static String formatDateTime(java.util.Date date) {
+		return DATE_TIME_FORMATTER.format(
+				LocalDateTime.ofInstant(Instant.ofEpochMilli(date.getTime()), ZoneId.systemDefault()));
+	}
+	
+	/**
+	 * <pre>
+	 * Parse the date of "yyyy-MM-dd HH:mm:ss" in the default time zone, 
+	 * the text after it (e.g. fraction of second) is ignored.
+	 * 
+	 * 例如："2014-08-01 12:30:00.0" => Fri Aug 01 12:30:00 2014
+	 * </pre>
+	 * 
+	 * @throws	DateTimeParseException
+	 * @author  ZHANG.XL
+	 */
+	public static java.util.Date parseDateTime(String str) {
+		LocalDateTime dateTime = LocalDateTime.from(
+				DATE_TIME_FORMATTER.parse(str, new ParsePosition(0)));
+		return java.util.Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+	}
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hisql.annotation.DbTable;
+
+/**
+ * <pre>
+ * The second-level cache of entities by (entity class, key value).
+ *
+ * Every entity class has its own region, configured by @{@link DbTable}
+ * "cacheSize"/"cacheTtl" or by {@link #configure(Class, int, int)}.
+ * The region keeps copies of entities, so the callers can change the 
+ * returned entities freely.
+ *
+ * Every invalidation increases the stamp of the region, and the entity
+ * read before it is not put into the cache, so a slow reader does not 
+ * overwrite a newer write with the old row.
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+final class EntityCache {
+	private static final Region DISABLED = new Region(null, null);
+	
+	private final ConcurrentMap<Class<?>, Region> regions = 
+			new ConcurrentHashMap<Class<?>, Region>();
+	
+	/**
+	 * Get the cache region of the entity class, or null if it is not cached
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	Region getRegion(Class<?> entityClz) {
+		Region region = regions.get(entityClz);
+		if (region == null) {
+			DbTable dbTable = entityClz.getAnnotation(DbTable.class);
+			region = (dbTable != null && dbTable.cacheSize() > 0) 
+					? createRegion(entityClz, dbTable.cacheSize(), dbTable.cacheTtl()) : DISABLED;
+			Region existing = regions.putIfAbsent(entityClz, region);
+			if (existing != null) {
+				region = existing;
+			}
+		}
+		return (region != DISABLED) ? region : null;
+	}
+	
+	/**
+	 * Replace the cache region of the entity class, maxSize 0 disables the cache
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	void configure(Class<?> entityClz, int maxSize, int ttlSeconds) {
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("cache size cannot be negative: " + maxSize);
+		}
+		Region old = regions.put(entityClz, 
+				(maxSize > 0) ? createRegion(entityClz, maxSize, ttlSeconds) : DISABLED);
+		if (old != null && old != DISABLED) {
+			old.clear();
+		}
+	}
+	
+	private static Region createRegion(Class<?> entityClz, int maxSize, int ttlSeconds) {
+		return new Region(EntityMetadata.of(entityClz), 
+				new ConcurrentLruCache<Object, Object>(maxSize, ttlSeconds * 1000L));
+	}
+	
+	/**
+	 * <pre>
+	 * Normalize the key value, so that the same key of different Number types 
+	 * (e.g. Integer 1 and Long 1) hits the same entry.
+	 * 
+	 * 例如：Integer 1 => Long 1, BigDecimal 1.0 => Long 1
+	 * </pre>
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	static Object normalizeKey(Object keyValue) {
+		if (keyValue instanceof Long) {
+			return keyValue;
+		} else if (keyValue instanceof Integer || keyValue instanceof Short 
+				|| keyValue instanceof Byte) {
+			return Long.valueOf(((Number) keyValue).longValue());
+		} else if (keyValue instanceof BigInteger) {
+			BigInteger value = (BigInteger) keyValue;
+			return (value.bitLength() < 64) ? (Object) Long.valueOf(value.longValue()) : value;
+		} else if (keyValue instanceof BigDecimal || keyValue instanceof Double 
+				|| keyValue instanceof Float) {
+			BigDecimal value = new BigDecimal(keyValue.toString()).stripTrailingZeros();
+			if (value.scale() <= 0) {
+				return normalizeKey(value.toBigInteger());
+			}
+			return value;
+		} else if (keyValue instanceof Number) {
+			return normalizeKey(new BigDecimal(keyValue.toString()));
+		}
+		return keyValue;
+	}
+	
+	/**
+	 * The cache of one entity class
+	 */
+	static final class Region {
+		private final EntityMetadata metadata;
+		private final ConcurrentLruCache<Object, Object> cache;
+		private final AtomicLong stamp = new AtomicLong();
+		
+		Region(EntityMetadata metadata, ConcurrentLruCache<Object, Object> cache) {
+			this.metadata = metadata;
+			this.cache = cache;
+		}
+		
+		/**
+		 * @return	the copy of the cached entity with its snapshot if change tracked, 
+		 * 			or null if not found
+		 * @author  ZHANG.XL
+		 */
+		<T> T get(Object keyValue) {
+			Object entity = cache.get(normalizeKey(keyValue));
+			if (entity == null) return null;
+			T copy = this.<T>copy(entity);
+			metadata.takeSnapshot(copy);
+			return copy;
+		}
+		
+		/**
+		 * Get the stamp before reading the entities from db, 
+		 * and pass it to {@link #put(Object, long)}
+		 */
+		long getStamp() {
+			return stamp.get();
+		}
+		
+		/**
+		 * Put the copy of the entity, unless the region is invalidated 
+		 * since the stamp was got
+		 * 
+		 * @author  ZHANG.XL
+		 */
+		void put(Object entity, long readStamp) {
+			Object keyValue = metadata.getKeyAccessor().get(entity);
+			if (keyValue == null || stamp.get() != readStamp) return;
+			
+			final Object key = normalizeKey(keyValue);
+			cache.put(key, copy(entity));
+			if (stamp.get() != readStamp) {
+				cache.remove(key);
+			}
+		}
+		
+		/**
+		 * Remove the entity of the key value
+		 * 
+		 * @author  ZHANG.XL
+		 */
+		void invalidate(Object keyValue) {
+			stamp.incrementAndGet();
+			if (keyValue != null) {
+				cache.remove(normalizeKey(keyValue));
+			}
+		}
+		
+		void clear() {
+			stamp.incrementAndGet();
+			cache.clear();
+		}
+		
+		CacheStats getStats() {
+			return cache.getStats();
+		}
+		
+		/**
+		 * Copy the db fields to a new entity
+		 */
+		private <T> T copy(Object entity) {
+			try {
+				T copy = metadata.newInstance();
+				for (EntityMetadata.Column column : metadata.getColumns()) {
+					column.setValue(copy, column.getValue(entity));
+				}
+				return copy;
+			} catch (InstantiationException e) {
+				throw new RuntimeException(e);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hisql.annotation.DbField;
+import org.hisql.annotation.DbTable;
+import org.hisql.annotation.NotDbField;
+import org.hisql.exception.EmptyTableNameException;
+
+/**
+ * <pre>
+ * The metadata of one entity class, resolved once and shared by all threads.
+ *
+ * It holds the annotations of @{@link DbTable}, @{@link DbField} and
+ * @{@link NotDbField}, so the callers need not do reflection on every operation.
+ * The class without @{@link DbTable} is also allowed (e.g. the return type of
+ * query), but asking its table name or key name throws the exception.
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+public final class EntityMetadata {
+	private static final ConcurrentMap<Class<?>, EntityMetadata> registry =
+			new ConcurrentHashMap<Class<?>, EntityMetadata>();
+
+	private final Class<?> entityClz;
+	private final DbTable tblAnnotation;
+	private final String tableName;
+	private final String keyName;
+	private final Field keyField;
+	private final FieldAccessor keyAccessor;
+	private final Field[] fields;
+	private final FieldAccessor[] accessors;
+	private final List<Column> columns;
+	private final Map<String, FieldAccessor> fieldAccessors;
+	private final Map<String, FieldAccessor> columnAccessors;
+	private final MethodHandle constructor;
+	private final boolean changeTracked;
+	private final int keyColumnIndex;
+
+	private EntityMetadata(Class<?> entityClz) {
+		this.entityClz = entityClz;
+		this.tblAnnotation = entityClz.getAnnotation(DbTable.class);
+		this.tableName = (tblAnnotation != null) ? trimToNull(tblAnnotation.tableName()) : null;
+		this.keyName = (tblAnnotation != null) ? trimToNull(tblAnnotation.keyName()) : null;
+		this.fields = entityClz.getFields();
+		this.accessors = new FieldAccessor[fields.length];
+
+		List<Column> columnList = new ArrayList<Column>(fields.length);
+		FieldAccessor keyFieldAccessor = null;
+		for (int i = 0; i < fields.length; i++) {
+			Field field = fields[i];
+			accessors[i] = FieldAccessor.create(field);
+			if (field.getName().equals(keyName)) {
+				keyFieldAccessor = accessors[i];
+			}
+			if (field.getAnnotation(NotDbField.class) != null) continue;
+			columnList.add(new Column(accessors[i], columnList.size()));
+		}
+		this.columns = Collections.unmodifiableList(columnList);
+		this.fieldAccessors = new HashMap<String, FieldAccessor>(fields.length * 2);
+		this.columnAccessors = new HashMap<String, FieldAccessor>(fields.length * 2);
+		for (FieldAccessor accessor : accessors) {
+			fieldAccessors.put(accessor.getField().getName(), accessor);
+			columnAccessors.put(accessor.getField().getName().toLowerCase(Locale.ENGLISH), accessor);
+		}
+		for (FieldAccessor accessor : accessors) {
+			DbField dbField = accessor.getField().getAnnotation(DbField.class);
+			if (dbField != null && !dbField.name().isEmpty()) {
+				columnAccessors.put(dbField.name().toLowerCase(Locale.ENGLISH), accessor);
+			}
+		}
+		this.keyAccessor = keyFieldAccessor;
+		int keyIndex = -1;
+		for (Column column : columns) {
+			if (keyFieldAccessor != null && column.getAccessor() == keyFieldAccessor) {
+				keyIndex = column.getIndex();
+			}
+		}
+		this.keyColumnIndex = keyIndex;
+		this.keyField = (keyFieldAccessor != null) ? keyFieldAccessor.getField() : null;
+		this.constructor = FieldAccessor.createConstructor(entityClz);
+		this.changeTracked = tblAnnotation != null && tblAnnotation.trackChanges()
+				&& AbstractDbEntity.class.isAssignableFrom(entityClz);
+	}
+
+	/**
+	 * Get the metadata of the specified class, it is created on the first call
+	 *
+	 * @author  ZHANG.XL
+	 */
+	public static EntityMetadata of(Class<?> entityClz) {
+		EntityMetadata metadata = registry.get(entityClz);
+		if (metadata == null) {
+			metadata = new EntityMetadata(entityClz);
+			EntityMetadata existing = registry.putIfAbsent(entityClz, metadata);
+			if (existing != null) {
+				metadata = existing;
+			}
+		}
+		return metadata;
+	}
+
+	public Class<?> getEntityClass() {
+		return entityClz;
+	}
+
+	/**
+	 * @return  table name
+	 * @throws	EmptyTableNameException
+	 * @author  ZHANG.XL
+	 */
+	public String getTableName() throws EmptyTableNameException {
+		checkTableAnnotation();
+		if (tableName == null) {
+			throw new EmptyTableNameException(
+				"Not found table name: the annotation @DbTable needs setting \"tableName\""
+				+ " for " + entityClz.getSimpleName());
+		}
+		return tableName;
+	}
+
+	/**
+	 * @return  false if the class has no @DbTable or its "tableName" is empty
+	 */
+	public boolean hasTableName() {
+		return tableName != null;
+	}
+	
+	/**
+	 * @return  primary key name
+	 * @author  ZHANG.XL
+	 */
+	public String getKeyName() {
+		checkTableAnnotation();
+		if (keyName == null) {
+			throw new RuntimeException("The annotation @DbTable needs setting \"keyName\""
+				+ "for " + entityClz.getSimpleName());
+		}
+		return keyName;
+	}
+
+	/**
+	 * Get the public field of the primary key
+	 *
+	 * @throws  RuntimeException - if the key field is not found
+	 * @author  ZHANG.XL
+	 */
+	public Field getKeyField() {
+		final String name = getKeyName();
+		if (keyField == null) {
+			throw new RuntimeException(new NoSuchFieldException(name));
+		}
+		return keyField;
+	}
+
+	/**
+	 * @return  false if the class has no "keyName" or the key field is not found
+	 */
+	public boolean hasKeyField() {
+		return keyField != null;
+	}
+
+	/**
+	 * Get the accessor of the primary key field
+	 *
+	 * @throws  RuntimeException - if the key field is not found
+	 * @author  ZHANG.XL
+	 */
+	public FieldAccessor getKeyAccessor() {
+		getKeyField();
+		return keyAccessor;
+	}
+
+	/**
+	 * The position of the key column in {@link #getColumns()}, or -1 if the key
+	 * field is not found or not a db column
+	 */
+	public int getKeyColumnIndex() {
+		return keyColumnIndex;
+	}
+
+	/**
+	 * All public fields of the class, including the fields with @{@link NotDbField}
+	 */
+	public Field[] getFields() {
+		return fields;
+	}
+
+	/**
+	 * The accessors of {@link #getFields()}, in the same order
+	 */
+	public FieldAccessor[] getAccessors() {
+		return accessors;
+	}
+
+	/**
+	 * Get the accessor of the public field by the field name. Return null if not found.
+	 *
+	 * @author  ZHANG.XL
+	 */
+	public FieldAccessor getAccessor(String fieldName) {
+		return fieldAccessors.get(fieldName);
+	}
+
+	/**
+	 * Get the accessor of the field matching the column label (ignoring case),
+	 * by @{@link DbField} name first and then field name. Return null if not found.
+	 *
+	 * @author  ZHANG.XL
+	 */
+	public FieldAccessor getAccessorByColumn(String columnLabel) {
+		return columnAccessors.get(columnLabel.toLowerCase(Locale.ENGLISH));
+	}
+
+	/**
+	 * Create a new instance by the no-arg constructor
+	 *
+	 * @author  ZHANG.XL
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T newInstance() throws InstantiationException, IllegalAccessException {
+		if (constructor == null) {
+			return (T) entityClz.newInstance();
+		}
+		try {
+			return (T) constructor.invokeExact();
+		} catch (Throwable e) {
+			throw FieldAccessor.rethrow(e);
+		}
+	}
+
+	/**
+	 * The db columns (fields without @{@link NotDbField}) in the order of
+	 * insert/update SQL
+	 */
+	public List<Column> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return  true if the class has @DbTable(trackChanges=true) and extends AbstractDbEntity
+	 */
+	public boolean isChangeTracked() {
+		return changeTracked;
+	}
+
+	/**
+	 * Keep the current column values of the entity for {@link #getChangedColumns(Object)},
+	 * if the class is change tracked. The mutable values (Date, Timestamp, byte[]) are
+	 * copied, so that the changes in place are detected too.
+	 *
+	 * @author  ZHANG.XL
+	 */
+	void takeSnapshot(Object entity) {
+		if (!changeTracked) return;
+		Object[] values = new Object[columns.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = copyMutable(columns.get(i).getValue(entity));
+		}
+		((AbstractDbEntity) entity).snapshot = values;
+	}
+
+	/**
+	 * Refresh the snapshot values of the written columns only, so that the unsaved 
+	 * changes of the other columns are still found by {@link #getChangedColumns(Object)}
+	 *
+	 * @param	writtenAccessors - the accessors of the written fields
+	 * @author  ZHANG.XL
+	 */
+	void takeSnapshot(Object entity, List<FieldAccessor> writtenAccessors) {
+		if (!changeTracked) return;
+		Object[] values = ((AbstractDbEntity) entity).snapshot;
+		if (values == null) return;
+		for (Column column : columns) {
+			if (writtenAccessors.contains(column.getAccessor())) {
+				values[column.getIndex()] = copyMutable(column.getValue(entity));
+			}
+		}
+	}
+
+	private static Object copyMutable(Object value) {
+		if (value instanceof java.util.Date) {
+			return ((java.util.Date) value).clone();
+		} else if (value instanceof byte[]) {
+			return ((byte[]) value).clone();
+		}
+		return value;
+	}
+
+	/**
+	 * Get the columns changed since the snapshot, except the primary key
+	 *
+	 * @return  the changed columns, or null if the entity has no snapshot
+	 * @author  ZHANG.XL
+	 */
+	List<Column> getChangedColumns(Object entity) {
+		if (!changeTracked) return null;
+		Object[] values = ((AbstractDbEntity) entity).snapshot;
+		if (values == null) return null;
+		List<Column> changed = new ArrayList<Column>();
+		for (int i = 0; i < values.length; i++) {
+			Column column = columns.get(i);
+			if (column.getField() != keyField && !valueEquals(values[i], column.getValue(entity))) {
+				changed.add(column);
+			}
+		}
+		return changed;
+	}
+
+	private static boolean valueEquals(Object oldValue, Object newValue) {
+		if (oldValue == newValue) return true;
+		if (oldValue == null || newValue == null) return false;
+		if (oldValue instanceof byte[] && newValue instanceof byte[]) {
+			return Arrays.equals((byte[]) oldValue, (byte[]) newValue);
+		}
+		return oldValue.equals(newValue);
+	}
+
+	private void checkTableAnnotation() {
+		if (tblAnnotation == null) {
+			throw new RuntimeException(entityClz.getSimpleName()
+					+  " class needs adding annotation @DbTable");
+		}
+	}
+
+	private static String trimToNull(String str) {
+		if (str == null || str.trim().length() == 0) {
+			return null;
+		}
+		return str.trim();
+	}
+
+	/**
+	 * One db column of the entity
+	 *
+	 * @author	ZHANG.XL
+	 */
+	public static final class Column {
+		private final FieldAccessor accessor;
+		private final int index;
+		private final String columnName;
+		private final boolean nullable;
+
+		Column(FieldAccessor accessor, int index) {
+			Field field = accessor.getField();
+			this.accessor = accessor;
+			this.index = index;
+			DbField dbField = field.getAnnotation(DbField.class);
+			if (dbField != null) {
+				this.columnName = dbField.name().isEmpty() ? field.getName() : dbField.name();
+				this.nullable = dbField.nullable();
+			} else {
+				this.columnName = field.getName();
+				this.nullable = true;
+			}
+		}
+
+		public Field getField() {
+			return accessor.getField();
+		}
+
+		public FieldAccessor getAccessor() {
+			return accessor;
+		}
+
+		/** the position in {@link EntityMetadata#getColumns()} */
+		public int getIndex() {
+			return index;
+		}
+
+		public String getColumnName() {
+			return columnName;
+		}
+
+		public boolean isNullable() {
+			return nullable;
+		}
+
+		/**
+		 * Get the value of this column from the entity
+		 *
+		 * @author  ZHANG.XL
+		 */
+		public Object getValue(Object entity) {
+			return accessor.get(entity);
+		}
+
+		/**
+		 * Set the value of this column into the entity
+		 *
+		 * @author  ZHANG.XL
+		 */
+		public void setValue(Object entity, Object value) {
+			accessor.set(entity, value);
+		}
+	}
+}
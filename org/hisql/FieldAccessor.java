@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * <pre>
+ * The getter/setter of one public field of entity.
+ *
+ * The accessor is generated once per field by {@link #create(Field)} with
+ * the method handles bound to the field, so the JIT can inline the access.
+ * If the method handles cannot be created (e.g. the static final field),
+ * the accessor falls back to {@link Field#get(Object)} and {@link Field#set(Object, Object)}.
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+public abstract class FieldAccessor {
+	private static final MethodType GETTER_TYPE =
+			MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER_TYPE =
+			MethodType.methodType(void.class, Object.class, Object.class);
+
+	protected final Field field;
+
+	protected FieldAccessor(Field field) {
+		this.field = field;
+	}
+
+	public Field getField() {
+		return field;
+	}
+
+	/**
+	 * Get the field value of the entity
+	 *
+	 * @throws  RuntimeException
+	 * @author  ZHANG.XL
+	 */
+	public abstract Object get(Object entity);
+
+	/**
+	 * Set the field value of the entity
+	 *
+	 * @throws  RuntimeException
+	 * @author  ZHANG.XL
+	 */
+	public abstract void set(Object entity, Object value);
+
+	/**
+	 * Set the value of the primitive field without boxing, the field type 
+	 * must be the type of the value, e.g. setLong() for the long field
+	 *
+	 * @throws  RuntimeException
+	 * @author  ZHANG.XL
+	 */
+	public void setLong(Object entity, long value) {
+		set(entity, value);
+	}
+
+	public void setInt(Object entity, int value) {
+		set(entity, value);
+	}
+
+	public void setShort(Object entity, short value) {
+		set(entity, value);
+	}
+
+	public void setByte(Object entity, byte value) {
+		set(entity, value);
+	}
+
+	public void setDouble(Object entity, double value) {
+		set(entity, value);
+	}
+
+	public void setFloat(Object entity, float value) {
+		set(entity, value);
+	}
+
+	public void setBoolean(Object entity, boolean value) {
+		set(entity, value);
+	}
+
+	/**
+	 * Create the accessor for the field
+	 *
+	 * @author  ZHANG.XL
+	 */
+	public static FieldAccessor create(Field field) {
+		try {
+			field.setAccessible(true);
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			MethodHandle getter = lookup.unreflectGetter(field);
+			MethodHandle setter = lookup.unreflectSetter(field);
+			if (Modifier.isStatic(field.getModifiers())) {
+				getter = MethodHandles.dropArguments(getter, 0, Object.class);
+				setter = MethodHandles.dropArguments(setter, 0, Object.class);
+			}
+			MethodHandle primitiveSetter = field.getType().isPrimitive()
+					? setter.asType(MethodType.methodType(void.class, Object.class, field.getType()))
+					: null;
+			return new MethodHandleAccessor(field, getter.asType(GETTER_TYPE), 
+					setter.asType(SETTER_TYPE), primitiveSetter);
+		} catch (Exception e) {
+			return new ReflectAccessor(field);
+		}
+	}
+
+	/**
+	 * Create the handle of the no-arg constructor, which returns Object.
+	 * Return null if the class has no accessible no-arg constructor.
+	 *
+	 * @author  ZHANG.XL
+	 */
+	static MethodHandle createConstructor(Class<?> clz) {
+		if (clz.isInterface() || Modifier.isAbstract(clz.getModifiers())) {
+			return null;
+		}
+		try {
+			java.lang.reflect.Constructor<?> constructor = clz.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			return MethodHandles.lookup().unreflectConstructor(constructor)
+					.asType(MethodType.methodType(Object.class));
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	static RuntimeException rethrow(Throwable e) {
+		if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		} else if (e instanceof Error) {
+			throw (Error) e;
+		}
+		throw new RuntimeException(e);
+	}
+
+	/**
+	 * The accessor by method handles
+	 */
+	private static final class MethodHandleAccessor extends FieldAccessor {
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+		/** the setter taking the primitive value, null if the field is not primitive */
+		private final MethodHandle primitiveSetter;
+		private final Class<?> fieldType;
+
+		MethodHandleAccessor(Field field, MethodHandle getter, MethodHandle setter, 
+				MethodHandle primitiveSetter) {
+			super(field);
+			this.getter = getter;
+			this.setter = setter;
+			this.primitiveSetter = primitiveSetter;
+			this.fieldType = field.getType();
+		}
+
+		@Override
+		public Object get(Object entity) {
+			try {
+				return (Object) getter.invokeExact(entity);
+			} catch (Throwable e) {
+				throw rethrow(e);
+			}
+		}
+
+		@Override
+		public void set(Object entity, Object value) {
+			try {
+				setter.invokeExact(entity, value);
+			} catch (Throwable e) {
+				throw rethrow(e);
+			}
+		}
+
+		@Override
+		public void setLong(Object entity, long value) {
+			if (fieldType != long.class) {
+				super.setLong(entity, value);
+				return;
+			}
+			try {
+				primitiveSetter.invokeExact(entity, value);
+			} catch (Throwable e) {
+				throw rethrow(e);
+			}
+		}
+
+		@Override
+		public void setInt(Object entity, int value) {
+			if (fieldType != int.class) {
+				super.setInt(entity, value);
+				return;
+			}
+			try {
+				primitiveSetter.invokeExact(entity, value);
+			} catch (Throwable e) {
+				throw rethrow(e);
+			}
+		}
+
+		@Override
+		public void setShort(Object entity, short value) {
+			if (fieldType != short.class) {
+				super.setShort(entity, value);
+				return;
+			}
+			try {
+				primitiveSetter.invokeExact(entity, value);
+			} catch (Throwable e) {
+				throw rethrow(e);
+			}
+		}
+
+		@Override
+		public void setByte(Object entity, byte value) {
+			if (fieldType != byte.class) {
+				super.setByte(entity, value);
+				return;
+			}
+			try {
+				primitiveSetter.invokeExact(entity, value);
+			} catch (Throwable e) {
+				throw rethrow(e);
+			}
+		}
+
+		@Override
+		public void setDouble(Object entity, double value) {
+			if (fieldType != double.class) {
+				super.setDouble(entity, value);
+				return;
+			}
+			try {
+				primitiveSetter.invokeExact(entity, value);
+			} catch (Throwable e) {
+				throw rethrow(e);
+			}
+		}
+
+		@Override
+		public void setFloat(Object entity, float value) {
+			if (fieldType != float.class) {
+				super.setFloat(entity, value);
+				return;
+			}
+			try {
+				primitiveSetter.invokeExact(entity, value);
+			} catch (Throwable e) {
+				throw rethrow(e);
+			}
+		}
+
+		@Override
+		public void setBoolean(Object entity, boolean value) {
+			if (fieldType != boolean.class) {
+				super.setBoolean(entity, value);
+				return;
+			}
+			try {
+				primitiveSetter.invokeExact(entity, value);
+			} catch (Throwable e) {
+				throw rethrow(e);
+			}
+		}
+	}
+
+	/**
+	 * The accessor by reflection
+	 */
+	private static final class ReflectAccessor extends FieldAccessor {
+		ReflectAccessor(Field field) {
+			super(field);
+		}
+
+		@Override
+		public Object get(Object entity) {
+			try {
+				return field.get(entity);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public void set(Object entity, Object value) {
+			try {
+				field.set(entity, value);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
@@ -3,8 +3,15 @@
  */
 package org.hisql;
 
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * HiSql is a simple and efficient ORM component
@@ -19,6 +26,144 @@ public interface HiSqlClient {
 	 */
 	void setPrintLog(boolean printLog);
 	
+	/**
+	 * the count of rows fetched in one round-trip by the streaming query, default 500
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	void setFetchSize(int fetchSize);
+	
+	/**
+	 * the count of rows sent in one executeBatch() by the batch operations, default 500
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	void setBatchSize(int batchSize);
+	
+	/**
+	 * Cache the entities of the class by key value, overriding @DbTable "cacheSize" 
+	 * and "cacheTtl". maxSize 0 disables the cache.
+	 * 
+	 * @param	entityClz - entity class
+	 * @param	maxSize - the max count of cached entities
+	 * @param	ttlSeconds - the seconds an entity stays in the cache, 0 means until evicted
+	 * @author  ZHANG.XL
+	 */
+	void setEntityCache(Class<? extends DbEntity> entityClz, int maxSize, int ttlSeconds);
+	
+	/**
+	 * <pre>
+	 * Set the key values of the inserted entities without key value from the 
+	 * db sequence, which are allocated "blockSize" values per NEXTVAL in memory.
+	 * The sequence must be created with INCREMENT BY "blockSize". 
+	 * Without the sequence, the key generated by the db is returned to the entity.
+	 * sequenceName null removes the sequence of the class.
+	 * </pre>
+	 * 
+	 * @param	entityClz - entity class
+	 * @param	sequenceName - the db sequence, e.g. "seq_order"
+	 * @param	blockSize - the INCREMENT BY of the sequence
+	 * @author  ZHANG.XL
+	 */
+	void setKeySequence(Class<? extends DbEntity> entityClz, String sequenceName, int blockSize);
+	
+	/**
+	 * Get the hit/miss statistics of the entity cache, or null if the class is not cached
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	CacheStats getEntityCacheStats(Class<? extends DbEntity> entityClz);
+	
+	/**
+	 * Enable the cache of queryCached(), maxRows 0 (default) disables it. 
+	 * The cached results are dropped.
+	 * 
+	 * @param	maxRows - the max total count of rows in the cached results
+	 * @param	ttlSeconds - the seconds a result stays in the cache, 0 means until evicted
+	 * @author  ZHANG.XL
+	 */
+	void setQueryCache(int maxRows, int ttlSeconds);
+	
+	/**
+	 * Get the hit/miss statistics of the query result cache, or null if it is disabled
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	CacheStats getQueryCacheStats();
+	
+	/**
+	 * Add the listener called after every SQL execution of this client and its sessions
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	void addSqlExecutionListener(SqlExecutionListener listener);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	void removeSqlExecutionListener(SqlExecutionListener listener);
+	
+	/**
+	 * Get the execution plan of the SQL without executing it, 
+	 * which is not reported to the listeners
+	 * 
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	List<String> explain(final String sql, final Object[] args);
+	
+	/**
+	 * the executor running the chunks of a long key list of get/delete in parallel,
+	 * null (default) runs them one by one in the calling thread
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	void setInListExecutor(Executor inListExecutor);
+	
+	/**
+	 * the max count of cached SQL templates, default 2048
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	void setSqlCacheSize(int sqlCacheSize);
+	
+	/**
+	 * the max count of cached PreparedStatements per connection, 
+	 * 0 (default) disables the statement cache. Not for the pools which close 
+	 * the statements when the connection is returned.
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	void setStatementCacheSize(int stmtCacheSize);
+	
+	/**
+	 * Get the hit/miss statistics of the SQL template cache
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	CacheStats getSqlCacheStats();
+	
+	/**
+	 * Open a session which runs all operations on one connection in one transaction,
+	 * the caller must close it
+	 * 
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	HiSqlSession openSession();
+	
+	/**
+	 * Run the callback in one transaction: commit if it returns, 
+	 * or roll back if it throws. All operations of the client passed to the 
+	 * callback reuse one connection.
+	 * 
+	 * @param	callback - the operations with the client bound to the transaction
+	 * @return	the return value of the callback
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	<R> R inTransaction(Function<? super HiSqlClient, R> callback);
+	
 	/**
 	 * Do query with SQL
 	 *
@@ -40,7 +185,63 @@ public interface HiSqlClient {
 	<T> T queryForObject(final String sql, final Object[] args, Class<T> clazz);
 	
 	/**
-	 * Execute sql for insert/update/delete operation
+	 * Do query with SQL, the result is cached until the tables are written 
+	 * by this client or the time-to-live expires. Without the query cache
+	 * ({@link #setQueryCache(int, int)}) it is the same as query().
+	 *
+	 * @param	tables - the tables read by the SQL, none means the result is 
+	 *				invalidated by any write of this client
+	 * @return	the unmodifiable list, the entities in it must not be changed 
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	<T> List<T> queryCached(final String sql, final Object[] args, Class<T> returnClz,
+			Integer startRow, Integer records, String... tables);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	<T> List<T> queryCached(final String sql, final Object[] args, Class<T> returnClz, 
+			String... tables);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	<T> T queryForObjectCached(final String sql, final Object[] args, Class<T> clazz,
+			String... tables);
+	
+	/**
+	 * Do streaming query with SQL, and handle the rows one by one without 
+	 * loading all rows into memory
+	 *
+	 * @param	rowHandler - the handler for each row
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	<T> void queryForEach(final String sql, final Object[] args, Class<T> returnClz,
+			Consumer<? super T> rowHandler);
+	
+	/**
+	 * Do streaming query with SQL, the connection is held until the cursor is 
+	 * exhausted or closed
+	 *
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	<T> QueryCursor<T> queryForCursor(final String sql, final Object[] args, Class<T> returnClz);
+	
+	/**
+	 * Do streaming query with SQL, the connection is held until the stream is closed
+	 * (e.g. try-with-resources) or the rows are consumed to the end
+	 *
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	<T> Stream<T> queryForStream(final String sql, final Object[] args, Class<T> returnClz);
+	
+	/**
+	 * Execute sql for insert/update/delete operation, 
+	 * all cached query results are invalidated since the changed tables are unknown
 	 *
 	 * @param   sql - SQL for insert, update or delete
 	 * @return  affected record count
@@ -48,6 +249,17 @@ public interface HiSqlClient {
 	 */
 	int execute(final String sql, final Object[] args);
 	
+	/**
+	 * Execute sql for insert/update/delete operation, 
+	 * and invalidate the cached query results of the tables
+	 *
+	 * @param   sql - SQL for insert, update or delete
+	 * @param	tables - the tables changed by the SQL
+	 * @return  affected record count
+	 * @author  ZHANG.XL
+	 */
+	int execute(final String sql, final Object[] args, String... tables);
+	
 	/**
 	 * 获取连续num个问号（SQL语句中用）
 	 * 
@@ -88,7 +300,40 @@ public interface HiSqlClient {
 			final Map<String, Object> whereArgMap, Integer startRow, Integer records);
 	
 	/**
-	 * insert one db entity with all db fields
+	 * Query one page of db entities after the last key, in the ascending order of the key.
+	 * Unlike the paging by startRow, the cost of deep pages is the same as the first page.
+	 * 
+	 * @param	entityClz - entity class
+	 * @param	whereArgMap - the arguments for where conditions, can be empty
+	 * @param	lastKey - the next key of the previous page, null for the first page
+	 * @param	pageSize - the max count of entities in the page
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	<T extends DbEntity> KeysetPage<T> getPageAfter(Class<T> entityClz, 
+			final Map<String, Object> whereArgMap, Number lastKey, int pageSize);
+	
+	/**
+	 * Query one page of rows after the last value of the ordering column, 
+	 * in the ascending order of the column. The column should be unique and indexed.
+	 * The SQL is queried as a sub-query, so it must not have "ORDER BY" or the paging itself.
+	 * 
+	 * @param	orderColumn - the unique column ordering the rows, which is put into SQL as is
+	 * @param	lastValue - the next key of the previous page, null for the first page
+	 * @param	pageSize - the max count of rows in the page
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	<T> KeysetPage<T> queryPageAfter(final String sql, final Object[] args, 
+			Class<T> returnClz, String orderColumn, Object lastValue, int pageSize);
+	
+	/**
+	 * insert one db entity with all db fields. If the entity has no key value, 
+	 * the key is allocated by {@link #setKeySequence(Class, String, int)}, 
+	 * or else the key column is left out of the insert SQL, and the key generated 
+	 * by the db is set into the entity. Then the key column needs the value by 
+	 * the db: AUTO_INCREMENT (MySql), IDENTITY, DEFAULT seq.NEXTVAL or the trigger 
+	 * (Oracle). The Oracle table keyed by a plain sequence needs setKeySequence.
 	 * 
 	 * @return 	affected record count
 	 * @throws	SqlRuntimeException
@@ -113,6 +358,20 @@ public interface HiSqlClient {
 	 */
 	int update(final DbEntity entity, String[] updateFieldNames);
 	
+	/**
+	 * <pre>
+	 * Update the db fields of the entity changed since it was loaded by get/query 
+	 * or last saved, the entity class needs @DbTable(trackChanges=true).
+	 * Nothing is executed if no field changed, and all db fields are updated 
+	 * if the entity has no snapshot (e.g. created by new).
+	 * </pre>
+	 * 
+	 * @return	affected record count, 0 if no field changed
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	int updateChanged(final DbEntity entity);
+	
 	/**
 	 * Update one db entity with specified field-value map
 	 * 
@@ -136,6 +395,63 @@ public interface HiSqlClient {
 	 */
 	int delete(Class<? extends DbEntity> entityClz, List<? extends Number> keyValueList);
 	
+	/**
+	 * Insert db entities with all db fields by JDBC batch, the keys of the 
+	 * entities without key value are set as {@link #insert(DbEntity)} does
+	 * 
+	 * @return 	affected record count of each entity, in the order of the list
+	 * @throws	SqlRuntimeException
+	 * @author	ZHANG.XL
+	 */
+	int[] insertBatch(final List<? extends DbEntity> entityList);
+	
+	/**
+	 * Insert the db entity, or update all its db fields if the key value exists,
+	 * by one statement of the db (e.g. MERGE, INSERT ... ON DUPLICATE KEY UPDATE)
+	 * 
+	 * @return 	affected record count, which depends on the db
+	 * @throws	SqlRuntimeException
+	 * @author	ZHANG.XL
+	 */
+	int upsert(final DbEntity entity);
+	
+	/**
+	 * Insert or update db entities with all db fields by JDBC batch, see {@link #upsert(DbEntity)}
+	 * 
+	 * @return 	affected record count of each entity, in the order of the list
+	 * @throws	SqlRuntimeException
+	 * @author	ZHANG.XL
+	 */
+	int[] upsertBatch(final List<? extends DbEntity> entityList);
+	
+	/**
+	 * Insert db entities with all db fields by multi-row insert statements,
+	 * which are split by the max parameter count and statement size of the db
+	 * 
+	 * @return 	affected record count
+	 * @throws	SqlRuntimeException
+	 * @author	ZHANG.XL
+	 */
+	int insertMultiRow(final List<? extends DbEntity> entityList);
+	
+	/**
+	 * Update db entities with all db fields by JDBC batch
+	 * 
+	 * @return 	affected record count of each entity, in the order of the list
+	 * @throws	SqlRuntimeException
+	 * @author	ZHANG.XL
+	 */
+	int[] updateBatch(final List<? extends DbEntity> entityList);
+	
+	/**
+	 * Delete db entities one key value per statement by JDBC batch
+	 * 
+	 * @return 	affected record count of each key value, in the order of the list
+	 * @throws	SqlRuntimeException
+	 * @author	ZHANG.XL
+	 */
+	int[] deleteBatch(Class<? extends DbEntity> entityClz, List<? extends Number> keyValueList);
+	
 	/**
 	 * @author  ZHANG.XL
 	 */
@@ -145,4 +461,32 @@ public interface HiSqlClient {
 	 * @author  ZHANG.XL
 	 */
 	String genInsertSqlWithValues(List<? extends DbEntity> entityList, String separator);
+	
+	/**
+	 * Write the insert SQL with values of every entity to the output (e.g. Writer),
+	 * each followed by the separator, in constant memory
+	 * 
+	 * @return	the count of rows written
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	long genInsertSqlWithValues(Iterator<? extends DbEntity> entities, String separator, 
+			Appendable out);
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	long genInsertSqlWithValues(Stream<? extends DbEntity> entities, String separator, 
+			Appendable out);
+	
+	/**
+	 * Write the insert SQL with values of every entity to the channel in the charset,
+	 * each followed by the separator, in constant memory. The channel is not closed.
+	 * 
+	 * @return	the count of rows written
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	long genInsertSqlWithValues(Iterator<? extends DbEntity> entities, String separator, 
+			WritableByteChannel channel, Charset charset);
 }
@@ -4,27 +4,44 @@
  */
 package org.hisql;
 
-import java.lang.reflect.Field;
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Timestamp;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import org.apache.commons.lang.StringEscapeUtils;
-import org.hisql.annotation.DbField;
-import org.hisql.annotation.NotDbField;
 import org.hisql.exception.SqlRuntimeException;
 
 /**
@@ -33,19 +50,316 @@ import org.hisql.exception.SqlRuntimeException;
 public class HiSqlClientImpl implements HiSqlClient {
 	private DbAdapter dbAdapter;
 	private ConnectionManager conMng;
-	private Map<String, String> sqlCache;
+	private volatile ConcurrentLruCache<SqlKey, String> sqlCache;
+	private volatile ConcurrentLruCache<RowMapperKey, RowMapper<?>> rowMapperCache;
+	private volatile StatementCache stmtCache;
+	private EntityCache entityCache;
+	private volatile QueryResultCache queryCache;
+	private CopyOnWriteArrayList<SqlExecutionListener> sqlListeners;
+	/** the binders of the entity columns, see {@link #getColumnBinders(Class)} */
+	private ConcurrentMap<Class<?>, ParameterBinder[]> columnBinders;
+	private ConcurrentMap<Class<?>, SequenceBlockAllocator> keyAllocators;
+	/** the binders of the insert SQL without the key column, see {@link #getGeneratedKeyBinders(Class)} */
+	private ConcurrentMap<Class<?>, ParameterBinder[]> generatedKeyBinders;
 	private boolean printLog = false;
+	private int fetchSize = DEFAULT_FETCH_SIZE;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private Executor inListExecutor;
+	
+	private static final int DEFAULT_FETCH_SIZE = 500;
+	private static final int DEFAULT_BATCH_SIZE = 500;
+	private static final int DEFAULT_SQL_CACHE_SIZE = 2048;
+	/** the max count of "?" in one IN list, under the 1000 limit of Oracle */
+	private static final int MAX_IN_LIST_SIZE = 512;
 	
 	public HiSqlClientImpl(DbVersion dbVersion, ConnectionManager conMng) throws SQLException {
 		createDbAdapter(dbVersion);
 		this.conMng = conMng;
-		this.sqlCache = new HashMap<String, String>();
+		if (conMng instanceof ObservableConnectionManager) {
+			((ObservableConnectionManager) conMng).addConnectionListener(new ConnectionListener() {
+				@Override
+				public void connectionDiscarded(Connection con) {
+					StatementCache cache = stmtCache;
+					if (cache != null) {
+						cache.invalidate(con);
+					}
+				}
+			});
+		}
+		this.sqlCache = new ConcurrentLruCache<SqlKey, String>(DEFAULT_SQL_CACHE_SIZE);
+		this.rowMapperCache = new ConcurrentLruCache<RowMapperKey, RowMapper<?>>(DEFAULT_SQL_CACHE_SIZE);
+		this.entityCache = new EntityCache();
+		this.sqlListeners = new CopyOnWriteArrayList<SqlExecutionListener>();
+		this.columnBinders = new ConcurrentHashMap<Class<?>, ParameterBinder[]>();
+		this.keyAllocators = new ConcurrentHashMap<Class<?>, SequenceBlockAllocator>();
+		this.generatedKeyBinders = new ConcurrentHashMap<Class<?>, ParameterBinder[]>();
+	}
+	
+	/**
+	 * Create the client sharing the adapter, caches and settings of another client,
+	 * but getting the connections from "conMng"
+	 */
+	protected HiSqlClientImpl(HiSqlClientImpl client, ConnectionManager conMng) {
+		this.dbAdapter = client.dbAdapter;
+		this.conMng = conMng;
+		this.sqlCache = client.sqlCache;
+		this.rowMapperCache = client.rowMapperCache;
+		this.stmtCache = client.stmtCache;
+		this.entityCache = client.entityCache;
+		this.queryCache = client.queryCache;
+		this.sqlListeners = client.sqlListeners;
+		this.columnBinders = client.columnBinders;
+		this.keyAllocators = client.keyAllocators;
+		this.generatedKeyBinders = client.generatedKeyBinders;
+		this.printLog = client.printLog;
+		this.fetchSize = client.fetchSize;
+		this.batchSize = client.batchSize;
+		// inListExecutor is not shared: the chunks must run on the connection of the caller
+	}
+	
+	/**
+	 * Open a session which runs all operations on one connection in one transaction
+	 * 
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	public HiSqlSession openSession() {
+		return HiSqlSessionImpl.open(this, conMng);
+	}
+	
+	/**
+	 * Run the callback in one transaction: commit if it returns, 
+	 * or roll back if it throws
+	 * 
+	 * @param	callback - the operations with the client bound to the transaction
+	 * @return	the return value of the callback
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	public <R> R inTransaction(Function<? super HiSqlClient, R> callback) {
+		HiSqlSession session = openSession();
+		try {
+			R result = callback.apply(session);
+			session.commit();
+			return result;
+		} finally {
+			session.close();
+		}
 	}
 	
 	public void setPrintLog(boolean _printLog) {
 		this.printLog = _printLog;
 	}
 	
+	public void setFetchSize(int fetchSize) {
+		if (fetchSize < 1) {
+			throw new IllegalArgumentException("fetch size must be positive: " + fetchSize);
+		}
+		this.fetchSize = fetchSize;
+	}
+	
+	/**
+	 * Set the max count of SQL templates and row mapping plans in the cache, 
+	 * the cached entries are dropped
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	public void setSqlCacheSize(int sqlCacheSize) {
+		this.sqlCache = new ConcurrentLruCache<SqlKey, String>(sqlCacheSize);
+		this.rowMapperCache = new ConcurrentLruCache<RowMapperKey, RowMapper<?>>(sqlCacheSize);
+	}
+	
+	/**
+	 * Set the max count of cached PreparedStatements per connection, 
+	 * 0 (default) disables the statement cache. The statements are cached per 
+	 * physical connection (Connection.unwrap), it should stay disabled with 
+	 * the pools closing the statements on returning the connection (e.g. HikariCP).
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	public void setStatementCacheSize(int stmtCacheSize) {
+		if (stmtCacheSize < 0) {
+			throw new IllegalArgumentException("statement cache size cannot be negative: " 
+					+ stmtCacheSize);
+		}
+		StatementCache oldCache = this.stmtCache;
+		this.stmtCache = (stmtCacheSize > 0) ? new StatementCache(stmtCacheSize) : null;
+		if (oldCache != null) {
+			oldCache.invalidateAll();
+		}
+	}
+	
+	/**
+	 * Close the cached statements of the connection, the connection manager 
+	 * which is not {@link ObservableConnectionManager} should call it 
+	 * before closing a connection physically
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	public void invalidateStatements(Connection con) {
+		StatementCache cache = this.stmtCache;
+		if (cache != null) {
+			cache.invalidate(con);
+		}
+	}
+	
+	/**
+	 * Get the hit/miss statistics of the SQL template cache
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	public CacheStats getSqlCacheStats() {
+		return sqlCache.getStats();
+	}
+	
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batch size must be positive: " + batchSize);
+		}
+		this.batchSize = batchSize;
+	}
+	
+	/**
+	 * Cache the entities of the class by key value, overriding @DbTable "cacheSize" 
+	 * and "cacheTtl". maxSize 0 disables the cache.
+	 * 
+	 * @param	entityClz - entity class
+	 * @param	maxSize - the max count of cached entities
+	 * @param	ttlSeconds - the seconds an entity stays in the cache, 0 means until evicted
+	 * @author  ZHANG.XL
+	 */
+	public void setEntityCache(Class<? extends DbEntity> entityClz, int maxSize, int ttlSeconds) {
+		entityCache.configure(entityClz, maxSize, ttlSeconds);
+	}
+	
+	/**
+	 * Set the key values of the inserted entities without key value from the 
+	 * db sequence in blocks, sequenceName null removes the sequence of the class.
+	 * The setting is shared by the sessions of the client, which select NEXTVAL 
+	 * on their own connection.
+	 * 
+	 * @param	entityClz - entity class
+	 * @param	sequenceName - the db sequence, e.g. "seq_order"
+	 * @param	blockSize - the INCREMENT BY of the sequence
+	 * @author  ZHANG.XL
+	 */
+	public void setKeySequence(Class<? extends DbEntity> entityClz, String sequenceName, 
+			int blockSize) {
+		if (sequenceName == null) {
+			keyAllocators.remove(entityClz);
+			return;
+		}
+		keyAllocators.put(entityClz, new SequenceBlockAllocator(
+				dbAdapter.getSequenceNextValSql(sequenceName), blockSize));
+	}
+	
+	/**
+	 * Get the hit/miss statistics of the entity cache, or null if the class is not cached
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	public CacheStats getEntityCacheStats(Class<? extends DbEntity> entityClz) {
+		EntityCache.Region region = entityCache.getRegion(entityClz);
+		return (region != null) ? region.getStats() : null;
+	}
+	
+	/**
+	 * Enable the cache of queryCached(), maxRows 0 (default) disables it. 
+	 * The cached results are dropped.
+	 * 
+	 * @param	maxRows - the max total count of rows in the cached results
+	 * @param	ttlSeconds - the seconds a result stays in the cache, 0 means until evicted
+	 * @author  ZHANG.XL
+	 */
+	public void setQueryCache(int maxRows, int ttlSeconds) {
+		if (maxRows < 0) {
+			throw new IllegalArgumentException("query cache size cannot be negative: " + maxRows);
+		}
+		this.queryCache = (maxRows > 0) ? new QueryResultCache(maxRows, ttlSeconds) : null;
+	}
+	
+	/**
+	 * Get the hit/miss statistics of the query result cache, or null if it is disabled
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	public CacheStats getQueryCacheStats() {
+		QueryResultCache cache = this.queryCache;
+		return (cache != null) ? cache.getStats() : null;
+	}
+	
+	/**
+	 * Add the listener called after every SQL execution
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	public void addSqlExecutionListener(SqlExecutionListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("listener cannot be null");
+		}
+		sqlListeners.add(listener);
+	}
+	
+	public void removeSqlExecutionListener(SqlExecutionListener listener) {
+		sqlListeners.remove(listener);
+	}
+	
+	/**
+	 * Get the execution plan of the SQL by the db adapter, 
+	 * which is not reported to the listeners
+	 * 
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	public List<String> explain(final String sql, final Object[] args) {
+		Connection con = null;
+		try {
+			con = conMng.getConnection();
+			return dbAdapter.explain(con, sql, args);
+		} catch (Exception e) {
+			System.out.println(String.format("Sql: %s", sql));
+			throw new SqlRuntimeException(e);
+		} finally {
+			conMng.releaseConnection(con);
+		}
+	}
+	
+	/**
+	 * Report the execution to the listeners, the timings are got only if 
+	 * there are listeners, so nothing is allocated without listeners
+	 * 
+	 * @param	endTime - the time the execution ends, or 0 if it is now
+	 */
+	private void fireSqlExecuted(SqlExecutionEvent.Type type, String sql, Object[] args, 
+			long startTime, long acquiredTime, long executedTime, long endTime, 
+			int rowCnt, Throwable error) {
+		if (endTime == 0) {
+			endTime = System.nanoTime();
+		}
+		if (acquiredTime == 0) acquiredTime = endTime;
+		if (executedTime == 0) executedTime = endTime;
+		SqlExecutionEvent event = new SqlExecutionEvent(type, sql, args, 
+				acquiredTime - startTime, executedTime - acquiredTime, endTime - executedTime, 
+				rowCnt, error);
+		for (SqlExecutionListener listener : sqlListeners) {
+			try {
+				listener.sqlExecuted(event);
+			} catch (RuntimeException e) {
+				System.out.println("SqlExecutionListener failed: " + e);
+			}
+		}
+	}
+	
+	/**
+	 * Set the executor running the chunks of a long key list in parallel,
+	 * null (default) runs them one by one in the calling thread
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	public void setInListExecutor(Executor inListExecutor) {
+		this.inListExecutor = inListExecutor;
+	}
+	
 	/** 
 	 * Create a new instance of DbAdapter 
 	 */
@@ -70,60 +384,74 @@ public class HiSqlClientImpl implements HiSqlClient {
 		Connection con = null;
 		PreparedStatement ps = null;
 		ResultSet rs = null;
+		String execSql = sql;
+		Object[] execArgs = args;
+		boolean reusable = false;
+		final boolean timed = !sqlListeners.isEmpty();
+		final long startTime = timed ? System.nanoTime() : 0;
+		long acquiredTime = 0, executedTime = 0;
+		int rowCnt = 0;
+		Throwable error = null;
 		try {
+			if (startRow != null && records != null) {
+				execSql = this.dbAdapter.getQuerySqlForPaging(sql);
+				execArgs = getArgsForPaging(args, startRow, records);
+			}
 			con = conMng.getConnection();
-			ps = getPreparedStatementForQuery(con, sql, args, startRow, records);
+			if (timed) acquiredTime = System.nanoTime();
+			ps = prepareStatement(con, execSql);
+			setArgs(ps, execSql, execArgs);
 			rs = ps.executeQuery();
+			if (timed) executedTime = System.nanoTime();
 			List<T> returnList = new ArrayList<T>();
-			ResultSetMetaData tsmd = rs.getMetaData();
-			int columnCnt = tsmd.getColumnCount();
-			boolean isJavaSystemClass = isJavaSysClass(returnClz);
-			while (rs.next()) {
-				if (isJavaSystemClass) {
-					returnList.add(castObject(returnClz, rs.getObject(1)));
-				} else {
-					Map<String, Object> retmap = new HashMap<String, Object>(columnCnt);
-					for (int i = 1; i <= columnCnt; i++) {
-						retmap.put(tsmd.getColumnName(i).toLowerCase(), rs.getObject(i));
-					}
-					returnList.add(createObjectByMap(returnClz, retmap));
+			if (isJavaSysClass(returnClz)) {
+				while (rs.next()) {
+					returnList.add(DbUtil.castObject(returnClz, rs.getObject(1)));
+				}
+			} else {
+				RowMapper<T> rowMapper = getRowMapper(execSql, returnClz, rs.getMetaData());
+				while (rs.next()) {
+					returnList.add(rowMapper.mapRow(rs));
 				}
 			}
+			reusable = true;
+			rowCnt = returnList.size();
 			return returnList;
 		} catch (Exception e) {
+			error = e;
 			System.out.println(String.format("Sql: ", sql));
 			throw new SqlRuntimeException(e);
 		} finally {
+			final long endTime = timed ? System.nanoTime() : 0;
 			try {
 				if (rs != null) rs.close();
-				if (ps != null) ps.close();
 			} catch (SQLException e) {
 				throw new SqlRuntimeException(e);
+			} finally {
+				releaseStatement(con, execSql, ps, reusable);
+				conMng.releaseConnection(con);
+				if (timed) {
+					fireSqlExecuted(SqlExecutionEvent.Type.QUERY, execSql, execArgs, 
+							startTime, acquiredTime, executedTime, endTime, rowCnt, error);
+				}
 			}
-			conMng.releaseConnection(con);
 		}
 	}
 	
 	/**
+	 * Append the arguments for paging to the query arguments
+	 * 
 	 * @author  ZHANG.XL
 	 */
-	private PreparedStatement getPreparedStatementForQuery(Connection con, final String sql, 
-			final Object[] args, Integer startRow, Integer records) throws Exception {
-		if (startRow == null || records == null) {
-			return this.getPreparedStatement(con, sql, args);
-		} else {
-			String newSql = this.dbAdapter.getQuerySqlForPaging(sql);
-			Object[] newArgs = null;
-			if (args != null) {
-				newArgs = Arrays.copyOf(args, args.length + 2);
-				Object[] pageArgs = this.dbAdapter.getQueryArgsForPaging(startRow, records);
-				newArgs[args.length] = pageArgs[0];
-				newArgs[args.length + 1] = pageArgs[1];
-			} else {
-				newArgs = this.dbAdapter.getQueryArgsForPaging(startRow, records);
-			}
-			return this.getPreparedStatement(con, newSql, newArgs);
+	private Object[] getArgsForPaging(final Object[] args, int startRow, int records) {
+		Object[] pageArgs = this.dbAdapter.getQueryArgsForPaging(startRow, records);
+		if (args == null) {
+			return pageArgs;
 		}
+		Object[] newArgs = Arrays.copyOf(args, args.length + 2);
+		newArgs[args.length] = pageArgs[0];
+		newArgs[args.length + 1] = pageArgs[1];
+		return newArgs;
 	}
 	
 	/**
@@ -146,274 +474,1186 @@ public class HiSqlClientImpl implements HiSqlClient {
 	}
 	
 	/**
+	 * Do query with SQL, the result is cached until the tables are written 
+	 * by this client or the time-to-live expires. Without the query cache
+	 * ({@link #setQueryCache(int, int)}) it is the same as query().
+	 *
+	 * @param	tables - the tables read by the SQL, none means the result is 
+	 *				invalidated by any write of this client
+	 * @return	the unmodifiable list, the entities in it must not be changed 
+	 * @throws	SqlRuntimeException
 	 * @author  ZHANG.XL
 	 */
-	private <T> T createObjectByMap(
-			Class<T> entityClz, Map<String, Object> retmap) throws Exception {
-		if (retmap == null || retmap.isEmpty() || isJavaSysClass(entityClz)) {
-			return null;
+	public <T> List<T> queryCached(final String sql, final Object[] args, Class<T> returnClz,
+			Integer startRow, Integer records, String... tables) {
+		final QueryResultCache cache = getReadableQueryCache();
+		if (cache == null) {
+			return query(sql, args, returnClz, startRow, records);
 		}
-		
-		T entity = entityClz.newInstance();
-		Field[] fields = entityClz.getFields();
-		for (Field field : fields) {
-			if (!retmap.containsKey(field.getName())) continue;
-			Class<?> fieldType = field.getType();
-			if (fieldType.isArray()) continue;
-			
-			Object fieldVal = retmap.get(field.getName());
-			if ((fieldVal instanceof Number) && (fieldType != Boolean.class)) {
-				field.set(entity, this.castNumber(fieldType, fieldVal));
-			} else if (fieldType == java.util.Date.class) {
-				if (fieldVal instanceof Timestamp) {
-					java.util.Date date = new java.util.Date(((Timestamp) fieldVal).getTime());
-					field.set(entity, date);
-				} else if (fieldVal instanceof String) {
-					java.util.Date date = 
-							new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(fieldVal.toString());
-					field.set(entity, date);
-				}
-			} else if (fieldType == Boolean.class) {
-				if (fieldVal instanceof Number) {
-					field.set(entity, ((Number) fieldVal).intValue() == 0 ? false : true);
-				}
-			} else {
-				field.set(entity, fieldVal);
-			}
+		final QueryResultCache.Key key = 
+				new QueryResultCache.Key(sql, args, returnClz, startRow, records);
+		List<T> rows = cache.get(key);
+		if (rows == null) {
+			QueryResultCache.Versions versions = cache.getVersions(tables);
+			rows = cache.put(key, query(sql, args, returnClz, startRow, records), versions);
 		}
-		
-		return entity;
+		return rows;
 	}
-
+	
 	/**
-	 * 对象值转型（将val转型为targetClz）
-	 * 
-	 * @param	targetClz - 转型的目标类型
-	 * @param	val - 需要转型的对象值
 	 * @author  ZHANG.XL
 	 */
-	@SuppressWarnings("unchecked")
-	private <T> T castObject(Class<T> targetClz, Object val) {
-		if (targetClz == String.class) {
-			return (T) ((val != null) ? val.toString() : null); 
-		} else if (val instanceof Number) {
-			return castNumber(targetClz, val);
-		} else if (val instanceof Timestamp) {
-			java.util.Date date = new java.util.Date(((Timestamp) val).getTime());
-			return (T) date;
-		} else {
-			return (T) val;
-		}
+	public <T> List<T> queryCached(final String sql, final Object[] args, Class<T> returnClz, 
+			String... tables) {
+		return queryCached(sql, args, returnClz, null, null, tables);
 	}
 	
 	/**
-	 * @author ZHANG.XL
+	 * @author  ZHANG.XL
 	 */
-	@SuppressWarnings("unchecked")
-	private <T> T castNumber(Class<T> numType, Object val) {
-		double dnum = 0;
-		if (val instanceof Number) {
-			dnum = ((Number) val).doubleValue();
-		} else if (val instanceof BigDecimal) {
-			dnum = ((BigDecimal) val).doubleValue();
+	public <T> T queryForObjectCached(final String sql, final Object[] args, Class<T> clazz,
+			String... tables) {
+		List<T> retList = queryCached(sql, args, clazz, null, null, tables);
+		if (retList != null && retList.size() > 0) {
+			return retList.get(0);
 		} else {
 			return null;
 		}
-		
-		if (numType == Long.class || numType == Long.TYPE) {
-			return (T) new Long((long) dnum);
-		} else if (numType == Integer.class || numType == Integer.TYPE) {
-			return (T) new Integer((int) dnum);
-		} else if (numType == Float.class || numType == Float.TYPE) {
-			return (T) new Float(dnum);
-		} else if (numType == Double.class) {
-			return (T) new Double(dnum);
-		} else if (numType == Short.class || numType == Short.TYPE) {
-			return (T) new Short((short) dnum);
-		} else if (numType == Byte.class) {
-			return (T) new Byte((byte) dnum);
+	}
+	
+	/**
+	 * Do streaming query with SQL, and handle the rows one by one without 
+	 * loading all rows into memory
+	 *
+	 * @param	rowHandler - the handler for each row
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	public <T> void queryForEach(final String sql, final Object[] args, Class<T> returnClz,
+			Consumer<? super T> rowHandler) {
+		QueryCursor<T> cursor = this.queryForCursor(sql, args, returnClz);
+		try {
+			while (cursor.hasNext()) {
+				rowHandler.accept(cursor.next());
+			}
+		} finally {
+			cursor.close();
 		}
-		return null;
 	}
 	
 	/**
-	 * Execute sql for insert/update/delete operation
+	 * Do streaming query with SQL, the connection is held until the cursor is 
+	 * exhausted or closed. The execution is reported to the listeners when the 
+	 * cursor is closed, the mapping time includes the time of the caller between rows.
 	 *
-	 * @param   sql - SQL for insert, update or delete
-	 * @return  affected record count
+	 * @throws	SqlRuntimeException
 	 * @author  ZHANG.XL
 	 */
-	public int execute(final String sql, final Object[] args) {
+	public <T> QueryCursor<T> queryForCursor(final String sql, final Object[] args, 
+			Class<T> returnClz) {
 		Connection con = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		final boolean timed = !sqlListeners.isEmpty();
+		final long startTime = timed ? System.nanoTime() : 0;
+		long acquiredTime = 0;
 		try {
 			con = conMng.getConnection();
-			PreparedStatement ps = getPreparedStatement(con, sql, args);
-			int cnt = ps.executeUpdate();
-			ps.close();
-			return cnt;
+			if (timed) acquiredTime = System.nanoTime();
+			ps = dbAdapter.prepareStreamingStatement(con, sql, fetchSize);
+			setArgs(ps, sql, args);
+			rs = ps.executeQuery();
+			RowMapper<T> rowMapper = isJavaSysClass(returnClz) 
+					? null : getRowMapper(sql, returnClz, rs.getMetaData());
+			QueryCursor.CloseListener closeListener = null;
+			if (timed) {
+				final long cursorAcquiredTime = acquiredTime;
+				final long executedTime = System.nanoTime();
+				closeListener = new QueryCursor.CloseListener() {
+					@Override
+					public void cursorClosed(int rowCnt, Throwable error) {
+						fireSqlExecuted(SqlExecutionEvent.Type.QUERY, sql, args, 
+								startTime, cursorAcquiredTime, executedTime, 0, rowCnt, error);
+					}
+				};
+			}
+			return new QueryCursor<T>(conMng, con, ps, rs, returnClz, rowMapper, closeListener);
 		} catch (Exception e) {
-			System.out.println(sql);
-			throw new SqlRuntimeException(e);
-		} finally {
+			System.out.println(String.format("Sql: %s", sql));
+			try {
+				if (rs != null) rs.close();
+				if (ps != null) ps.close();
+			} catch (SQLException ex) {
+				// ignore it, throw the original exception
+			}
 			conMng.releaseConnection(con);
+			if (timed) {
+				fireSqlExecuted(SqlExecutionEvent.Type.QUERY, sql, args, 
+						startTime, acquiredTime, 0, 0, 0, e);
+			}
+			throw new SqlRuntimeException(e);
 		}
 	}
 	
 	/**
+	 * Do streaming query with SQL, the connection is held until the stream is closed
+	 * (e.g. try-with-resources) or the rows are consumed to the end
+	 *
+	 * @throws	SqlRuntimeException
 	 * @author  ZHANG.XL
 	 */
-	private PreparedStatement getPreparedStatement(Connection con, 
-			final String sql, final Object[] args) throws SQLException {
-		PreparedStatement ps = con.prepareStatement(sql);
-		if (args != null) {
-			for (int i = 1; i <= args.length; i++) {
-				ps.setObject(i, dbAdapter.convertArg(args[i - 1]));
+	public <T> Stream<T> queryForStream(final String sql, final Object[] args, 
+			Class<T> returnClz) {
+		final QueryCursor<T> cursor = this.queryForCursor(sql, args, returnClz);
+		Spliterator<T> spliterator = 
+				Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED);
+		return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+			@Override
+			public void run() {
+				cursor.close();
 			}
-		}
-		if (this.printLog) {
-			printLog(sql, args);
-		}
-		return ps;
+		});
 	}
 	
 	/**
+	 * Get the cached row mapping plan for the executed SQL (the paged SQL if paging)
+	 * and entity class, or resolve a new one by the metadata of the result set
+	 * 
 	 * @author  ZHANG.XL
 	 */
-	private void printLog(String sql, Object[] args) {
-		System.out.println(String.format("SQL Clause: %s", sql));
-		System.out.print("SQL Parameters: [");
-		if (args != null) {
-			StringBuilder paraStr = new StringBuilder();
-			for (Object obj : args) {
-				if (obj != null) {
-					if (obj instanceof Number)
-						paraStr.append(obj.toString());
-					else if (obj instanceof Boolean)
-						paraStr.append(((Boolean) obj).booleanValue() ? 1 : 0);
-					else
-						paraStr.append("'").append(obj.toString()).append("'");
-				} else {
-					paraStr.append("null");
-				}
-				paraStr.append(",");
-			}
-			if (paraStr.length() > 0) {
-				paraStr.setLength(paraStr.length() - 1);
-			}
-			System.out.print(paraStr.toString());
+	@SuppressWarnings("unchecked")
+	private <T> RowMapper<T> getRowMapper(final String sql, Class<T> returnClz,
+			ResultSetMetaData rsmd) throws SQLException {
+		RowMapperKey key = new RowMapperKey(sql, returnClz);
+		RowMapper<T> rowMapper = (RowMapper<T>) rowMapperCache.get(key);
+		if (rowMapper == null || !rowMapper.matches(rsmd)) {
+			rowMapper = RowMapper.create(returnClz, rsmd);
+			rowMapperCache.put(key, rowMapper);
 		}
-		System.out.println("]");
+		return rowMapper;
 	}
 	
 	/**
-	 * 获取连续num个问号（SQL语句中用）
-	 * 
-	 * 例如：getQuestionMarks(3) => "?,?,?"
+	 * Execute sql for insert/update/delete operation, 
+	 * all cached query results are invalidated since the changed tables are unknown
 	 *
-	 * @param   问号的个数
-	 * @throws  none
+	 * @param   sql - SQL for insert, update or delete
+	 * @return  affected record count
 	 * @author  ZHANG.XL
-	 * @date	2014-3-18
 	 */
-	public String getQuestionMarks(int num) {
-		if (num < 1) return null;
-		char[] chs = new char[num * 2];
-		for (int i = 0; i < chs.length; i++) {
-			chs[i] = '?';
-			chs[++i] = ',';
+	public int execute(final String sql, final Object[] args) {
+		try {
+			return executeUpdate(sql, args);
+		} finally {
+			invalidateQueryCache(null);
 		}
-		return new String(chs, 0, num * 2 - 1);
 	}
 	
 	/**
-	 * Query one db entity by key value
-	 * 
-	 * @throws	SqlRuntimeException
+	 * Execute sql for insert/update/delete operation, 
+	 * and invalidate the cached query results of the tables
+	 *
+	 * @param   sql - SQL for insert, update or delete
+	 * @param	tables - the tables changed by the SQL
+	 * @return  affected record count
 	 * @author  ZHANG.XL
 	 */
-	public <T extends DbEntity> T get(Class<T> entityClz, Number keyValue)  {
+	public int execute(final String sql, final Object[] args, String... tables) {
 		try {
-			if (keyValue == null) {
-				throw new Exception("Key value cannot be empty.");
+			return executeUpdate(sql, args);
+		} finally {
+			invalidateQueryCache(tables);
+		}
+	}
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	private int executeUpdate(final String sql, final Object[] args) {
+		return executeUpdate(sql, args, null);
+	}
+	
+	/**
+	 * @param	binders - the binders of the variables, null means binding by setObject
+	 * @author  ZHANG.XL
+	 */
+	private int executeUpdate(final String sql, final Object[] args, 
+			final ParameterBinder[] binders) {
+		return executeUpdate(sql, args, binders, null);
+	}
+	
+	/**
+	 * @param	binders - the binders of the variables, null means binding by setObject
+	 * @param	keyTarget - the entity receiving the key generated by the insert SQL, or null
+	 * @author  ZHANG.XL
+	 */
+	private int executeUpdate(final String sql, final Object[] args, 
+			final ParameterBinder[] binders, final DbEntity keyTarget) {
+		final String keyName = (keyTarget != null) ? keyTarget.getKeyName() : null;
+		Connection con = null;
+		PreparedStatement ps = null;
+		boolean reusable = false;
+		final boolean timed = !sqlListeners.isEmpty();
+		final long startTime = timed ? System.nanoTime() : 0;
+		long acquiredTime = 0;
+		int cnt = 0;
+		Throwable error = null;
+		try {
+			con = conMng.getConnection();
+			if (timed) acquiredTime = System.nanoTime();
+			ps = prepareStatement(con, sql, keyName);
+			setArgs(ps, sql, args, binders);
+			cnt = ps.executeUpdate();
+			if (keyTarget != null) {
+				setGeneratedKeys(ps, new DbEntity[] {keyTarget}, 0, 1);
+			}
+			reusable = true;
+			return cnt;
+		} catch (Exception e) {
+			error = e;
+			System.out.println(sql);
+			throw new SqlRuntimeException(e);
+		} finally {
+			final long endTime = timed ? System.nanoTime() : 0;
+			try {
+				releaseStatement(con, sql, keyName, ps, reusable);
+			} finally {
+				conMng.releaseConnection(con);
+				if (timed) {
+					fireSqlExecuted(SqlExecutionEvent.Type.EXECUTE, sql, args, 
+							startTime, acquiredTime, endTime, endTime, cnt, error);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Execute the statements by JDBC batch, the rows with the same SQL in
+	 * succession share one PreparedStatement, and are flushed every "batchSize" rows.
+	 *
+	 * @param   sqls - SQL of each row
+	 * @param	argsArr - binded variables of each row
+	 * @param	bindersArr - the binders of each row, null means binding by setObject
+	 * @return  affected record count of each row
+	 * @author  ZHANG.XL
+	 */
+	private int[] executeBatch(final String[] sqls, final Object[][] argsArr, 
+			final ParameterBinder[][] bindersArr) {
+		return executeBatch(sqls, argsArr, bindersArr, null);
+	}
+	
+	/**
+	 * The rows are batched by the statement of the same SQL in a row, and each 
+	 * statement is reported to the listeners with its SQL and affected rows.
+	 * 
+	 * @param	keyTargets - the entity receiving the key generated by the insert SQL of 
+	 * 			each row, null for the rows (or the array) without generated key
+	 * @author  ZHANG.XL
+	 */
+	private int[] executeBatch(final String[] sqls, final Object[][] argsArr, 
+			final ParameterBinder[][] bindersArr, final DbEntity[] keyTargets) {
+		int[] counts = new int[sqls.length];
+		Connection con = null;
+		PreparedStatement ps = null;
+		String psSql = null;
+		String psKeyName = null;
+		int flushedCnt = 0;
+		boolean reusable = false;
+		final boolean timed = !sqlListeners.isEmpty();
+		// the timing and first row of the current statement, the first one includes the acquiring
+		long psStartTime = timed ? System.nanoTime() : 0;
+		long psAcquiredTime = 0;
+		int psFirstRow = 0;
+		Throwable error = null;
+		try {
+			con = conMng.getConnection();
+			if (timed) psAcquiredTime = System.nanoTime();
+			for (int i = 0; i < sqls.length; i++) {
+				final String keyName = (keyTargets != null && keyTargets[i] != null) 
+						? keyTargets[i].getKeyName() : null;
+				if (ps != null && (!sqls[i].equals(psSql) || !isSameKey(keyName, psKeyName))) {
+					flushedCnt += flushBatch(ps, counts, flushedCnt, psKeyName, keyTargets);
+					releaseStatement(con, psSql, psKeyName, ps, true);
+					ps = null;
+					if (timed) {
+						final long endTime = System.nanoTime();
+						fireBatchExecuted(psSql, counts, psFirstRow, flushedCnt, 
+								psStartTime, psAcquiredTime, endTime, null);
+						psStartTime = psAcquiredTime = endTime;
+						psFirstRow = flushedCnt;
+					}
+				}
+				if (ps == null) {
+					psSql = sqls[i];
+					psKeyName = keyName;
+					ps = prepareStatement(con, psSql, psKeyName);
+				}
+				setArgs(ps, psSql, argsArr[i], (bindersArr != null) ? bindersArr[i] : null);
+				ps.addBatch();
+				if (i + 1 - flushedCnt >= batchSize) {
+					flushedCnt += flushBatch(ps, counts, flushedCnt, psKeyName, keyTargets);
+				}
+			}
+			if (ps != null) {
+				flushBatch(ps, counts, flushedCnt, psKeyName, keyTargets);
+			}
+			reusable = true;
+			return counts;
+		} catch (Exception e) {
+			error = e;
+			System.out.println(psSql);
+			throw new SqlRuntimeException(e);
+		} finally {
+			final long endTime = timed ? System.nanoTime() : 0;
+			try {
+				releaseStatement(con, psSql, psKeyName, ps, reusable);
+			} finally {
+				conMng.releaseConnection(con);
+				if (timed) {
+					fireBatchExecuted((psSql != null) ? psSql : sqls[0], counts, psFirstRow, 
+							sqls.length, psStartTime, psAcquiredTime, endTime, error);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Report one statement of the batch, with the rows affected from fromRow to toRow
+	 */
+	private void fireBatchExecuted(String sql, int[] counts, int fromRow, int toRow, 
+			long startTime, long acquiredTime, long endTime, Throwable error) {
+		int rowCnt = 0;
+		for (int i = fromRow; i < toRow; i++) {
+			if (counts[i] > 0) rowCnt += counts[i];
+		}
+		fireSqlExecuted(SqlExecutionEvent.Type.BATCH, sql, null, 
+				startTime, acquiredTime, endTime, endTime, rowCnt, error);
+	}
+	
+	/**
+	 * @param	keyName - the key column if the statement returns the generated keys, or null
+	 * @return  the count of flushed rows
+	 * @author  ZHANG.XL
+	 */
+	private int flushBatch(PreparedStatement ps, int[] counts, int offset, String keyName, 
+			DbEntity[] keyTargets) throws SQLException {
+		int[] batchCounts = ps.executeBatch();
+		System.arraycopy(batchCounts, 0, counts, offset, batchCounts.length);
+		if (keyName != null) {
+			setGeneratedKeys(ps, keyTargets, offset, batchCounts.length);
+		}
+		return batchCounts.length;
+	}
+	
+	private static boolean isSameKey(String keyName, String otherKeyName) {
+		return (keyName == null) ? otherKeyName == null : keyName.equals(otherKeyName);
+	}
+	
+	/**
+	 * Set the generated keys of the executed statement into the entities, 
+	 * one key per inserted row in the order of the rows
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	private void setGeneratedKeys(PreparedStatement ps, DbEntity[] keyTargets, int offset, 
+			int rowCnt) throws SQLException {
+		ResultSet rs = ps.getGeneratedKeys();
+		try {
+			for (int i = offset; i < offset + rowCnt && rs.next(); i++) {
+				DbEntity entity = keyTargets[i];
+				Class<?> keyType = EntityMetadata.of(entity.getClass()).getKeyField().getType();
+				Number keyValue = (Number) DbUtil.castNumber(keyType, rs.getObject(1));
+				if (keyValue != null) {
+					AbstractDbEntity.setKeyValue(entity, keyValue);
+				}
+			}
+		} finally {
+			rs.close();
+		}
+	}
+	
+	/**
+	 * Get the statement from the statement cache, or prepare a new one
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	private PreparedStatement prepareStatement(Connection con, final String sql) 
+			throws SQLException {
+		return prepareStatement(con, sql, null);
+	}
+	
+	/**
+	 * @param	keyName - the key column if the statement returns the generated keys, or null
+	 * @author  ZHANG.XL
+	 */
+	private PreparedStatement prepareStatement(Connection con, final String sql, 
+			final String keyName) throws SQLException {
+		StatementCache cache = this.stmtCache;
+		if (cache != null) {
+			PreparedStatement ps = cache.take(con, getStatementKey(sql, keyName));
+			if (ps != null) {
+				return ps;
+			}
+		}
+		return (keyName != null) ? dbAdapter.prepareInsertStatement(con, sql, keyName) 
+				: con.prepareStatement(sql);
+	}
+	
+	/**
+	 * The statement returning the generated keys is cached apart from the plain one
+	 */
+	private static String getStatementKey(final String sql, final String keyName) {
+		return (keyName != null) ? sql + '\0' + keyName : sql;
+	}
+	
+	/**
+	 * Put the statement back to the statement cache, or close it
+	 * 
+	 * @param	reusable - false if the execution failed, then the statement is closed
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	private void releaseStatement(Connection con, final String sql, PreparedStatement ps, 
+			boolean reusable) {
+		releaseStatement(con, sql, null, ps, reusable);
+	}
+	
+	/**
+	 * @param	keyName - the key column if the statement returns the generated keys, or null
+	 * @author  ZHANG.XL
+	 */
+	private void releaseStatement(Connection con, final String sql, final String keyName, 
+			PreparedStatement ps, boolean reusable) {
+		if (ps == null) return;
+		StatementCache cache = this.stmtCache;
+		if (cache != null && reusable) {
+			cache.release(con, getStatementKey(sql, keyName), ps);
+			return;
+		}
+		try {
+			ps.close();
+		} catch (SQLException e) {
+			throw new SqlRuntimeException(e);
+		}
+	}
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	private void setArgs(PreparedStatement ps, final String sql, final Object[] args) 
+			throws SQLException {
+		setArgs(ps, sql, args, null);
+	}
+	
+	/**
+	 * @param	binders - the binders of the variables, null means binding by setObject
+	 * @author  ZHANG.XL
+	 */
+	private void setArgs(PreparedStatement ps, final String sql, final Object[] args, 
+			final ParameterBinder[] binders) throws SQLException {
+		if (args != null && binders != null) {
+			for (int i = 1; i <= args.length; i++) {
+				binders[i - 1].bind(ps, i, args[i - 1]);
+			}
+		} else if (args != null) {
+			for (int i = 1; i <= args.length; i++) {
+				ps.setObject(i, dbAdapter.convertArg(args[i - 1]));
+			}
+		}
+		if (this.printLog) {
+			printLog(sql, args);
+		}
+	}
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	private void printLog(String sql, Object[] args) {
+		System.out.println(String.format("SQL Clause: %s", sql));
+		System.out.print("SQL Parameters: [");
+		if (args != null) {
+			StringBuilder paraStr = new StringBuilder();
+			for (Object obj : args) {
+				if (obj != null) {
+					if (obj instanceof Number)
+						paraStr.append(obj.toString());
+					else if (obj instanceof Boolean)
+						paraStr.append(((Boolean) obj).booleanValue() ? 1 : 0);
+					else
+						paraStr.append("'").append(obj.toString()).append("'");
+				} else {
+					paraStr.append("null");
+				}
+				paraStr.append(",");
+			}
+			if (paraStr.length() > 0) {
+				paraStr.setLength(paraStr.length() - 1);
+			}
+			System.out.print(paraStr.toString());
+		}
+		System.out.println("]");
+	}
+	
+	/**
+	 * 获取连续num个问号（SQL语句中用）
+	 * 
+	 * 例如：getQuestionMarks(3) => "?,?,?"
+	 *
+	 * @param   问号的个数
+	 * @throws  none
+	 * @author  ZHANG.XL
+	 * @date	2014-3-18
+	 */
+	public String getQuestionMarks(int num) {
+		if (num < 1) return null;
+		char[] chs = new char[num * 2];
+		for (int i = 0; i < chs.length; i++) {
+			chs[i] = '?';
+			chs[++i] = ',';
+		}
+		return new String(chs, 0, num * 2 - 1);
+	}
+	
+	/**
+	 * Query one db entity by key value
+	 * 
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	public <T extends DbEntity> T get(Class<T> entityClz, Number keyValue)  {
+		try {
+			if (keyValue == null) {
+				throw new Exception("Key value cannot be empty.");
+			}
+			final EntityCache.Region region = getReadableCacheRegion(entityClz);
+			T entity = (region != null) ? region.<T>get(keyValue) : null;
+			if (entity != null) {
+				return entity;
+			}
+			final long stamp = (region != null) ? region.getStamp() : 0;
+			
+			final SqlKey sqlKey = new SqlKey(entityClz, "get");
+			String sql = sqlCache.get(sqlKey);
+			if (sql == null) {
+				final String tblName = AbstractDbEntity.getTableName(entityClz);
+				final String keyName = AbstractDbEntity.getKeyName(entityClz);
+				sql = String.format("SELECT * FROM %s WHERE %s=?", tblName, keyName);
+				sqlCache.put(sqlKey, sql);
 			}
+			entity = this.queryForObject(sql, new Object[]{keyValue}, entityClz);
+			if (region != null && entity != null) {
+				region.put(entity, stamp);
+			}
+			return entity;
+		} catch (Exception e) {
+			throw new SqlRuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Query multiple db entites by key values
+	 * 
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	public <T extends DbEntity> List<T> get(final Class<T> entityClz, 
+			List<? extends Number> keyValues)  {
+		if (keyValues == null || keyValues.size() == 0) {
+			throw new SqlRuntimeException("Key values cannot be empty.");
+		}
+		final EntityCache.Region region = getReadableCacheRegion(entityClz);
+		if (region == null) {
+			return getByKeys(entityClz, keyValues);
+		}
+		
+		List<T> list = new ArrayList<T>(keyValues.size());
+		List<Number> missKeys = new ArrayList<Number>();
+		for (Number keyValue : new LinkedHashSet<Number>(keyValues)) {
+			T entity = (keyValue != null) ? region.<T>get(keyValue) : null;
+			if (entity != null) {
+				list.add(entity);
+			} else {
+				missKeys.add(keyValue);
+			}
+		}
+		if (missKeys.size() > 0) {
+			final long stamp = region.getStamp();
+			for (T entity : getByKeys(entityClz, missKeys)) {
+				region.put(entity, stamp);
+				list.add(entity);
+			}
+		}
+		return list;
+	}
+	
+	/**
+	 * Query multiple db entites by key values from db
+	 * 
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	private <T extends DbEntity> List<T> getByKeys(final Class<T> entityClz, 
+			List<? extends Number> keyValues)  {
+		final List<Object[]> chunks = getInListChunks(keyValues);
+		if (chunks.size() == 1) {
+			return this.query(getInListSql(entityClz, "get_in", chunks.get(0).length), 
+					chunks.get(0), entityClz);
+		}
+		
+		List<List<T>> results = runInListChunks(chunks, new Function<Object[], List<T>>() {
+			@Override
+			public List<T> apply(Object[] chunk) {
+				return query(getInListSql(entityClz, "get_in", chunk.length), chunk, entityClz);
+			}
+		});
+		List<T> list = new ArrayList<T>(keyValues.size());
+		for (List<T> result : results) {
+			list.addAll(result);
+		}
+		return list;
+	}
+	
+	/**
+	 * <pre>
+	 * Split the distinct key values into the argument arrays of IN lists.
+	 * 
+	 * The length of every array is a power of 2 not greater than MAX_IN_LIST_SIZE, 
+	 * the short array is padded by repeating its last value, so that only 
+	 * a few SQL shapes are sent to the db whatever the count of key values is.
+	 * 
+	 * 例如：[1,2,3] => [[1,2,3,3]]
+	 * </pre>
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	static List<Object[]> getInListChunks(List<? extends Number> keyValues) {
+		final Object[] keys = new LinkedHashSet<Number>(keyValues).toArray();
+		final List<Object[]> chunks = new ArrayList<Object[]>(
+				(keys.length + MAX_IN_LIST_SIZE - 1) / MAX_IN_LIST_SIZE);
+		for (int from = 0; from < keys.length; from += MAX_IN_LIST_SIZE) {
+			final int len = Math.min(MAX_IN_LIST_SIZE, keys.length - from);
+			int bucket = 1;
+			while (bucket < len) {
+				bucket <<= 1;
+			}
+			final Object[] chunk = Arrays.copyOfRange(keys, from, from + bucket);
+			Arrays.fill(chunk, len, bucket, keys[from + len - 1]);
+			chunks.add(chunk);
+		}
+		return chunks;
+	}
+	
+	/**
+	 * Get the SQL "... WHERE key IN (?,...)" of the operation "get_in" or "delete_in"
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	private String getInListSql(Class<? extends DbEntity> entityClz, String operation, int keyCnt) {
+		final SqlKey sqlKey = new SqlKey(entityClz, operation, keyCnt);
+		String sql = sqlCache.get(sqlKey);
+		if (sql == null) {
 			final String tblName = AbstractDbEntity.getTableName(entityClz);
 			final String keyName = AbstractDbEntity.getKeyName(entityClz);
-			String sql = String.format("SELECT * FROM %s WHERE %s=?", 
-				tblName, keyName);
-			return this.queryForObject(sql, new Object[]{keyValue}, entityClz);
+			sql = String.format("%s FROM %s WHERE %s IN (%s)", 
+				"get_in".equals(operation) ? "SELECT *" : "DELETE", 
+				tblName, keyName, getQuestionMarks(keyCnt));
+			sqlCache.put(sqlKey, sql);
+		}
+		return sql;
+	}
+	
+	/**
+	 * Run the operation for every chunk, in parallel if the executor is set.
+	 * The results are in the order of the chunks.
+	 * 
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	private <R> List<R> runInListChunks(List<Object[]> chunks, 
+			final Function<Object[], R> operation) {
+		final List<R> results = new ArrayList<R>(chunks.size());
+		final Executor executor = this.inListExecutor;
+		if (executor == null) {
+			for (Object[] chunk : chunks) {
+				results.add(operation.apply(chunk));
+			}
+			return results;
+		}
+		
+		List<CompletableFuture<R>> futures = new ArrayList<CompletableFuture<R>>(chunks.size());
+		for (final Object[] chunk : chunks) {
+			futures.add(CompletableFuture.supplyAsync(new Supplier<R>() {
+				@Override
+				public R get() {
+					return operation.apply(chunk);
+				}
+			}, executor));
+		}
+		try {
+			for (CompletableFuture<R> future : futures) {
+				results.add(future.join());
+			}
+		} catch (CompletionException e) {
+			Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+			if (cause instanceof SqlRuntimeException) {
+				throw (SqlRuntimeException) cause;
+			}
+			throw new SqlRuntimeException(cause);
+		}
+		return results;
+	}
+	
+	/**
+	 * Query multiple db entites by where conditions
+	 * 
+	 * @param	entityClz - entity class
+	 * @param	whereArgMap - the arguments for where conditions
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	public <T extends DbEntity> List<T> get(Class<T> entityClz, 
+			final Map<String, Object> whereArgMap, Integer startRow, Integer records) {
+		if (whereArgMap == null || whereArgMap.size() == 0) 
+			return Collections.emptyList();
+		
+		try {
+			Object[] args = new Object[whereArgMap.size()];
+			List<String> whereNames = new ArrayList<String>(whereArgMap.size());
+			int i = 0;
+			for (Entry<String, Object> entry : whereArgMap.entrySet()) {
+				whereNames.add(entry.getKey());
+				args[i++] = entry.getValue();
+			}
+			final SqlKey sqlKey = new SqlKey(entityClz, "get_where", whereNames, 0);
+			String sql = sqlCache.get(sqlKey);
+			if (sql == null) {
+				final String tblName = AbstractDbEntity.getTableName(entityClz);
+				StringBuilder whereSql = new StringBuilder();
+				whereSql.append("SELECT * FROM ").append(tblName).append(" WHERE ");
+				final String andOpt = " AND ";
+				for (String whereName : whereNames) {
+					whereSql.append(whereName).append("=?").append(andOpt);
+				}
+				whereSql.setLength(whereSql.length() - andOpt.length());
+				sql = whereSql.toString();
+				sqlCache.put(sqlKey, sql);
+			}
+			return this.query(sql, args, entityClz, startRow, records);
 		} catch (Exception e) {
 			throw new SqlRuntimeException(e);
 		}
 	}
 	
 	/**
-	 * Query multiple db entites by key values
+	 * Query one page of db entities after the last key, in the ascending order of the key.
+	 * Unlike the paging by startRow, the cost of deep pages is the same as the first page.
+	 * 
+	 * @param	entityClz - entity class
+	 * @param	whereArgMap - the arguments for where conditions, can be empty
+	 * @param	lastKey - the next key of the previous page, null for the first page
+	 * @param	pageSize - the max count of entities in the page
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	public <T extends DbEntity> KeysetPage<T> getPageAfter(Class<T> entityClz, 
+			final Map<String, Object> whereArgMap, Number lastKey, int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("page size must be positive: " + pageSize);
+		}
+		
+		final int whereCnt = (whereArgMap != null) ? whereArgMap.size() : 0;
+		List<Object> args = new ArrayList<Object>(whereCnt + 2);
+		List<String> whereNames = new ArrayList<String>(whereCnt);
+		if (whereArgMap != null) {
+			for (Entry<String, Object> entry : whereArgMap.entrySet()) {
+				whereNames.add(entry.getKey());
+				args.add(entry.getValue());
+			}
+		}
+		if (lastKey != null) {
+			args.add(lastKey);
+		}
+		args.add(pageSize + 1);
+		
+		final SqlKey sqlKey = new SqlKey(entityClz, "get_after", whereNames, (lastKey != null) ? 1 : 0);
+		String sql = sqlCache.get(sqlKey);
+		if (sql == null) {
+			EntityMetadata metadata = EntityMetadata.of(entityClz);
+			final String keyName = metadata.getKeyName();
+			StringBuilder pageSql = new StringBuilder();
+			pageSql.append("SELECT * FROM ").append(metadata.getTableName());
+			String opt = " WHERE ";
+			for (String whereName : whereNames) {
+				pageSql.append(opt).append(whereName).append("=?");
+				opt = " AND ";
+			}
+			if (lastKey != null) {
+				pageSql.append(opt).append(keyName).append(">?");
+			}
+			pageSql.append(" ORDER BY ").append(keyName);
+			sql = dbAdapter.getQuerySqlForLimit(pageSql.toString());
+			sqlCache.put(sqlKey, sql);
+		}
+		
+		List<T> rows = this.query(sql, args.toArray(), entityClz);
+		return createKeysetPage(rows, pageSize, lastKey, 
+				EntityMetadata.of(entityClz).getKeyAccessor());
+	}
+	
+	/**
+	 * <pre>
+	 * Query one page of rows after the last value of the ordering column, 
+	 * in the ascending order of the column. The column should be unique and indexed.
+	 * 
+	 * The SQL is queried as a sub-query: "SELECT * FROM (sql) K WHERE K.column>? ORDER BY K.column",
+	 * so it must not have "ORDER BY" or the paging itself. If the return class is 
+	 * the simple type (e.g. Long), the SQL should select the ordering column only.
+	 * </pre>
+	 * 
+	 * @param	sql - the SQL clause that include ? as binded variable
+	 * @param	args - binded variables
+	 * @param	returnClz - the class type for return value
+	 * @param	orderColumn - the unique column ordering the rows, which is put into SQL as is
+	 * @param	lastValue - the next key of the previous page, null for the first page
+	 * @param	pageSize - the max count of rows in the page
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	public <T> KeysetPage<T> queryPageAfter(final String sql, final Object[] args, 
+			Class<T> returnClz, String orderColumn, Object lastValue, int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("page size must be positive: " + pageSize);
+		}
+		FieldAccessor keyAccessor = null;
+		if (!isJavaSysClass(returnClz)) {
+			keyAccessor = EntityMetadata.of(returnClz).getAccessorByColumn(orderColumn);
+			if (keyAccessor == null) {
+				throw new IllegalArgumentException("not found the field of column " + orderColumn 
+						+ " in " + returnClz.getName());
+			}
+		}
+		
+		StringBuilder pageSql = new StringBuilder(sql.length() + 64);
+		pageSql.append("SELECT * FROM (").append(sql).append(") K");
+		if (lastValue != null) {
+			pageSql.append(" WHERE K.").append(orderColumn).append(">?");
+		}
+		pageSql.append(" ORDER BY K.").append(orderColumn);
+		
+		List<Object> pageArgs = new ArrayList<Object>();
+		if (args != null) {
+			pageArgs.addAll(Arrays.asList(args));
+		}
+		if (lastValue != null) {
+			pageArgs.add(lastValue);
+		}
+		pageArgs.add(pageSize + 1);
+		
+		List<T> rows = this.query(dbAdapter.getQuerySqlForLimit(pageSql.toString()), 
+				pageArgs.toArray(), returnClz);
+		return createKeysetPage(rows, pageSize, lastValue, keyAccessor);
+	}
+	
+	/**
+	 * The rows are queried with one more row than the page size, 
+	 * to know whether there are rows after the page
+	 * 
+	 * @param	keyAccessor - the accessor of the ordering key, null if the row is the key itself
+	 */
+	private static <T> KeysetPage<T> createKeysetPage(List<T> rows, int pageSize, 
+			Object lastKey, FieldAccessor keyAccessor) {
+		final boolean hasMore = rows.size() > pageSize;
+		if (hasMore) {
+			rows = rows.subList(0, pageSize);
+		}
+		Object nextKey = lastKey;
+		if (rows.size() > 0) {
+			T lastRow = rows.get(rows.size() - 1);
+			nextKey = (keyAccessor != null) ? keyAccessor.get(lastRow) : lastRow;
+		}
+		return new KeysetPage<T>(rows, nextKey, hasMore);
+	}
+	
+	/**
+	 * insert one db entity with all db fields. If the entity has no key value, 
+	 * the key is allocated from the key sequence, or else the key column is left 
+	 * out of the insert SQL, and the key generated by the db (AUTO_INCREMENT, 
+	 * IDENTITY, DEFAULT seq.NEXTVAL or trigger) is set into the entity.
 	 * 
+	 * @return 	affected record count
 	 * @throws	SqlRuntimeException
+	 * @author	ZHANG.XL
+	 */
+	public int insert(final DbEntity entity) {
+		if (entity != null) {
+			try {
+				final Class<? extends DbEntity> entityClz = entity.getClass();
+				int cnt;
+				if (allocateKey(entity)) {
+					cnt = this.executeUpdate(getGeneratedKeyInsertSql(entityClz), 
+							getGeneratedKeyInsertArgs(entity), getGeneratedKeyBinders(entityClz), entity);
+				} else {
+					cnt = this.executeUpdate(getInsertSql(entityClz), getInsertArgs(entity), 
+							getColumnBinders(entityClz));
+				}
+				EntityMetadata.of(entity.getClass()).takeSnapshot(entity);
+				return cnt;
+			} catch (Exception e) {
+				throw new SqlRuntimeException(e);
+			} finally {
+				entityChanged(entity);
+			}
+		} else {
+			throw new IllegalArgumentException("db entity cannot be null");
+		}
+	}
+	
+	/**
 	 * @author  ZHANG.XL
 	 */
-	public <T extends DbEntity> List<T> get(Class<T> entityClz, 
-			List<? extends Number> keyValues)  {
-		try {
-			if (keyValues == null || keyValues.size() == 0) {
-				throw new Exception("Key values cannot be empty.");
+	private String getInsertSql(Class<? extends DbEntity> entityClz) {
+		final SqlKey sqlKey = new SqlKey(entityClz, "insert");
+		String sql = sqlCache.get(sqlKey);
+		if (sql != null) {
+			return sql;
+		}
+		
+		EntityMetadata metadata = EntityMetadata.of(entityClz);
+		sql = String.format("INSERT INTO %s (%s) VALUES (%s)", 
+				metadata.getTableName(), getInsertColumnsSql(entityClz), 
+				this.getQuestionMarks(metadata.getColumns().size()));
+		sqlCache.put(sqlKey, sql);
+		return sql;
+	}
+	
+	/**
+	 * Get the insert SQL without the key column, whose value is generated by the db
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	private String getGeneratedKeyInsertSql(Class<? extends DbEntity> entityClz) {
+		final SqlKey sqlKey = new SqlKey(entityClz, "insert_generated_key");
+		String sql = sqlCache.get(sqlKey);
+		if (sql != null) {
+			return sql;
+		}
+		
+		EntityMetadata metadata = EntityMetadata.of(entityClz);
+		StringBuilder columnsSql = new StringBuilder();
+		int columnCnt = 0;
+		for (EntityMetadata.Column column : metadata.getColumns()) {
+			if (column.getIndex() != metadata.getKeyColumnIndex()) {
+				columnsSql.append(columnCnt++ == 0 ? "" : ",").append(column.getColumnName());
 			}
-			final String tblName = AbstractDbEntity.getTableName(entityClz);
-			final String keyName = AbstractDbEntity.getKeyName(entityClz);
-			String sql = String.format("SELECT * FROM %s WHERE %s IN (%s)", 
-				tblName, keyName, getQuestionMarks(keyValues.size()));
-			return this.query(sql, keyValues.toArray(), entityClz);
-		} catch (Exception e) {
-			throw new SqlRuntimeException(e);
 		}
+		if (columnCnt == 0) {
+			throw new SqlRuntimeException("not found db field except the key in " + entityClz.getName());
+		}
+		sql = String.format("INSERT INTO %s (%s) VALUES (%s)", 
+				metadata.getTableName(), columnsSql.toString(), this.getQuestionMarks(columnCnt));
+		sqlCache.put(sqlKey, sql);
+		return sql;
 	}
 	
 	/**
-	 * Query multiple db entites by where conditions
+	 * Get the column list of insert SQL, e.g. "id,name,age"
 	 * 
-	 * @param	entityClz - entity class
-	 * @param	whereArgMap - the arguments for where conditions
-	 * @throws	SqlRuntimeException
 	 * @author  ZHANG.XL
 	 */
-	public <T extends DbEntity> List<T> get(Class<T> entityClz, 
-			final Map<String, Object> whereArgMap, Integer startRow, Integer records) {
-		if (whereArgMap == null || whereArgMap.size() == 0) 
-			return Collections.emptyList();
+	private String getInsertColumnsSql(Class<? extends DbEntity> entityClz) {
+		final SqlKey sqlKey = new SqlKey(entityClz, "insert_columns");
+		String columnsSql = sqlCache.get(sqlKey);
+		if (columnsSql != null) {
+			return columnsSql;
+		}
+		
+		StringBuilder fieldNameSql = new StringBuilder();
+		for (EntityMetadata.Column column : EntityMetadata.of(entityClz).getColumns()) {
+			fieldNameSql.append(column.getColumnName()).append(",");
+		}
+		if (fieldNameSql.length() > 0) {
+			fieldNameSql.setLength(fieldNameSql.length() - 1);
+			columnsSql = fieldNameSql.toString();
+			sqlCache.put(sqlKey, columnsSql);
+			return columnsSql;
+		} else {
+			throw new SqlRuntimeException("not found db field in " + entityClz.getName());
+		}
+	}
+	
+	/**
+	 * Set the key value from the key sequence of the class, if the entity has no key value
+	 * 
+	 * @return	true if the entity has no key value still, which should be generated by the db
+	 * @author  ZHANG.XL
+	 */
+	private boolean allocateKey(DbEntity entity) {
+		final EntityMetadata metadata = EntityMetadata.of(entity.getClass());
+		if (!metadata.hasKeyField() || metadata.getKeyAccessor().get(entity) != null) {
+			return false;
+		}
+		final SequenceBlockAllocator allocator = keyAllocators.get(entity.getClass());
+		if (allocator == null) {
+			return true;
+		}
+		Class<?> keyType = metadata.getKeyField().getType();
+		AbstractDbEntity.setKeyValue(entity, (Number) DbUtil.castNumber(keyType, allocator.next(this)));
+		return false;
+	}
+	
+	/**
+	 * Insert db entities with all db fields by multi-row insert statements,
+	 * which are split by the max parameter count and statement size of the db.
+	 * The entities without key value get the keys from the key sequence only.
+	 * 
+	 * @return 	affected record count
+	 * @throws	SqlRuntimeException
+	 * @author	ZHANG.XL
+	 */
+	public int insertMultiRow(final List<? extends DbEntity> entityList) {
+		if (entityList == null || entityList.size() == 0) {
+			return 0;
+		}
 		
+		final int maxParamCnt = dbAdapter.getMaxParameterCount();
+		final int maxBytes = dbAdapter.getMaxStatementBytes();
+		int affectedCnt = 0;
+		int i = 0;
 		try {
-			final String tblName = AbstractDbEntity.getTableName(entityClz);
-			Object[] args = new Object[whereArgMap.size()];
-			StringBuilder sql = new StringBuilder();
-			sql.append("SELECT * FROM ").append(tblName).append(" WHERE ");
-			Iterator<Entry<String, Object>> itr = whereArgMap.entrySet().iterator();
-			int i = 0;
-			final String andOpt = " AND ";
-			while (itr.hasNext()) {
-				Entry<String, Object> entry = itr.next();
-				sql.append(entry.getKey()).append("=?").append(andOpt);
-				args[i++] = entry.getValue();
+			while (i < entityList.size()) {
+				Class<? extends DbEntity> entityClz = getEntityClass(entityList.get(i));
+				final String columnsSql = getInsertColumnsSql(entityClz);
+				final int columnCnt = EntityMetadata.of(entityClz).getColumns().size();
+				final int rowSqlBytes = columnCnt * 2 + 3;
+				long stmtBytes = columnsSql.length() + 64;
+				List<Object[]> rowArgsList = new ArrayList<Object[]>();
+				while (i < entityList.size() 
+						&& getEntityClass(entityList.get(i)) == entityClz
+						&& (rowArgsList.isEmpty() || (rowArgsList.size() + 1) * columnCnt <= maxParamCnt)) {
+					allocateKey(entityList.get(i));
+					Object[] rowArgs = getInsertArgs(entityList.get(i));
+					long rowBytes = rowSqlBytes + estimateArgBytes(rowArgs);
+					if (!rowArgsList.isEmpty() && stmtBytes + rowBytes > maxBytes) break;
+					rowArgsList.add(rowArgs);
+					stmtBytes += rowBytes;
+					i++;
+				}
+				
+				final ParameterBinder[] rowBinders = getColumnBinders(entityClz);
+				Object[] args = new Object[rowArgsList.size() * columnCnt];
+				ParameterBinder[] binders = new ParameterBinder[args.length];
+				for (int row = 0; row < rowArgsList.size(); row++) {
+					System.arraycopy(rowArgsList.get(row), 0, args, row * columnCnt, columnCnt);
+					System.arraycopy(rowBinders, 0, binders, row * columnCnt, columnCnt);
+				}
+				String sql = getMultiRowInsertSql(entityClz, columnsSql, columnCnt, rowArgsList.size());
+				affectedCnt += this.executeUpdate(sql, args, binders);
 			}
-			sql.setLength(sql.length() - andOpt.length());
-			return this.query(sql.toString(), args, entityClz, startRow, records);
+			takeSnapshots(entityList);
+			return affectedCnt;
+		} catch (SqlRuntimeException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new SqlRuntimeException(e);
+		} finally {
+			entitiesChanged(entityList);
+		}
+	}
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	private String getMultiRowInsertSql(Class<? extends DbEntity> entityClz, 
+			final String columnsSql, int columnCnt, int rowCnt) {
+		final SqlKey sqlKey = new SqlKey(entityClz, "insert_rows", rowCnt);
+		String sql = sqlCache.get(sqlKey);
+		if (sql != null) {
+			return sql;
+		}
+		
+		final String tblName = AbstractDbEntity.getTableName(entityClz);
+		sql = dbAdapter.getMultiRowInsertSql(tblName, columnsSql, columnCnt, rowCnt);
+		sqlCache.put(sqlKey, sql);
+		return sql;
+	}
+	
+	/**
+	 * Estimate the bytes of the binded values sent to the db
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	private static long estimateArgBytes(Object[] args) {
+		long bytes = 0;
+		for (Object arg : args) {
+			if (arg == null) {
+				bytes += 4;
+			} else if (arg instanceof CharSequence) {
+				bytes += ((CharSequence) arg).length() * 3 + 4;
+			} else if (arg instanceof byte[]) {
+				bytes += ((byte[]) arg).length + 4;
+			} else {
+				bytes += 24;
+			}
+		}
+		return bytes;
+	}
+	
+	private static Class<? extends DbEntity> getEntityClass(DbEntity entity) {
+		if (entity == null) {
+			throw new IllegalArgumentException("db entity cannot be null");
+		}
+		return entity.getClass();
+	}
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	private Object[] getInsertArgs(DbEntity entity) throws Exception {
+		List<EntityMetadata.Column> columns = EntityMetadata.of(entity.getClass()).getColumns();
+		Object[] args = new Object[columns.size()];
+		for (int i = 0; i < args.length; i++) {
+			args[i] = columns.get(i).getValue(entity);
+		}
+		return args;
+	}
+	
+	/**
+	 * Get the binded variables of {@link #getGeneratedKeyInsertSql(Class)}
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	private Object[] getGeneratedKeyInsertArgs(DbEntity entity) throws Exception {
+		EntityMetadata metadata = EntityMetadata.of(entity.getClass());
+		List<EntityMetadata.Column> columns = metadata.getColumns();
+		final int keyIndex = metadata.getKeyColumnIndex();
+		Object[] args = new Object[(keyIndex >= 0) ? columns.size() - 1 : columns.size()];
+		int i = 0;
+		for (EntityMetadata.Column column : columns) {
+			if (column.getIndex() != keyIndex) {
+				args[i++] = column.getValue(entity);
+			}
 		}
+		return args;
 	}
 	
 	/**
-	 * insert one db entity with all db fields
+	 * Update one db entity with all db fields
 	 * 
 	 * @return 	affected record count
 	 * @throws	SqlRuntimeException
 	 * @author	ZHANG.XL
 	 */
-	public int insert(final DbEntity entity) {
+	public int update(final DbEntity entity) {
 		if (entity != null) {
 			try {
-				return this.execute(getInsertSql(entity.getClass()), getInsertArgs(entity));
+				int cnt = this.executeUpdate(getUpdateSql(entity.getClass()), getUpdateArgs(entity), 
+						getColumnBinders(entity.getClass()));
+				EntityMetadata.of(entity.getClass()).takeSnapshot(entity);
+				return cnt;
 			} catch (Exception e) {
 				throw new SqlRuntimeException(e);
+			} finally {
+				entityChanged(entity);
 			}
 		} else {
 			throw new IllegalArgumentException("db entity cannot be null");
@@ -423,81 +1663,332 @@ public class HiSqlClientImpl implements HiSqlClient {
 	/**
 	 * @author  ZHANG.XL
 	 */
-	private String getInsertSql(Class<? extends DbEntity> entityClz) {
-		final String sqlKey = entityClz.getName() + "_insert";
-		if (this.sqlCache.containsKey(sqlKey)) {
-			return sqlCache.get(sqlKey);
+	private String getUpdateSql(Class<? extends DbEntity> entityClz) {
+		final SqlKey sqlKey = new SqlKey(entityClz, "update");
+		String sql = sqlCache.get(sqlKey);
+		if (sql != null) {
+			return sql;
 		}
 		
-		StringBuilder fieldNameSql = new StringBuilder();
-		String dbFieldName = null;
-		int dbFieldCnt = 0;
-		Field[] fields = entityClz.getFields();
-		for (Field field : fields) {
-			dbFieldName = getDbFieldName(field);
-			if (dbFieldName != null) {
-				fieldNameSql.append(dbFieldName).append(",");
-				dbFieldCnt++;
+		EntityMetadata metadata = EntityMetadata.of(entityClz);
+		StringBuilder updateSql = new StringBuilder();
+		for (EntityMetadata.Column column : metadata.getColumns()) {
+			updateSql.append(column.getColumnName()).append("=?,");
+		}
+		if (updateSql.length() > 0) {
+			final String tblName = metadata.getTableName();
+			final String keyName = metadata.getKeyName();
+			updateSql.setLength(updateSql.length() - 1);
+			sql = String.format("UPDATE %s SET %s WHERE %s=?", 
+					tblName, updateSql.toString(), keyName);
+			sqlCache.put(sqlKey, sql);
+			return sql;
+		} else {
+			throw new SqlRuntimeException("not found db field in " + entityClz.getName());
+		}
+	}
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	private Object[] getUpdateArgs(DbEntity entity) throws Exception {
+		List<EntityMetadata.Column> columns = EntityMetadata.of(entity.getClass()).getColumns();
+		Object[] args = new Object[columns.size() + 1];
+		for (int i = 0; i < columns.size(); i++) {
+			args[i] = columns.get(i).getValue(entity);
+		}
+		args[columns.size()] = entity.getKeyValue();
+		return args;
+	}
+	
+	/**
+	 * Get the binders of the entity columns in the order of insert/update SQL, 
+	 * followed by the binder of the primary key for the WHERE of update SQL.
+	 * They are resolved by the db adapter once per entity class.
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	private ParameterBinder[] getColumnBinders(Class<? extends DbEntity> entityClz) {
+		ParameterBinder[] binders = columnBinders.get(entityClz);
+		if (binders != null) {
+			return binders;
+		}
+		
+		EntityMetadata metadata = EntityMetadata.of(entityClz);
+		List<EntityMetadata.Column> columns = metadata.getColumns();
+		binders = new ParameterBinder[columns.size() + 1];
+		for (int i = 0; i < columns.size(); i++) {
+			binders[i] = dbAdapter.getParameterBinder(columns.get(i).getField().getType());
+		}
+		binders[columns.size()] = metadata.hasKeyField() 
+				? dbAdapter.getParameterBinder(metadata.getKeyField().getType())
+				: ParameterBinder.forObject(dbAdapter);
+		ParameterBinder[] existing = columnBinders.putIfAbsent(entityClz, binders);
+		return (existing != null) ? existing : binders;
+	}
+	
+	/**
+	 * Get the binders of {@link #getGeneratedKeyInsertSql(Class)}
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	private ParameterBinder[] getGeneratedKeyBinders(Class<? extends DbEntity> entityClz) {
+		ParameterBinder[] binders = generatedKeyBinders.get(entityClz);
+		if (binders != null) {
+			return binders;
+		}
+		
+		final int keyIndex = EntityMetadata.of(entityClz).getKeyColumnIndex();
+		final ParameterBinder[] allBinders = getColumnBinders(entityClz);
+		final int columnCnt = allBinders.length - 1;
+		binders = new ParameterBinder[(keyIndex >= 0) ? columnCnt - 1 : columnCnt];
+		int i = 0;
+		for (int index = 0; index < columnCnt; index++) {
+			if (index != keyIndex) {
+				binders[i++] = allBinders[index];
+			}
+		}
+		ParameterBinder[] existing = generatedKeyBinders.putIfAbsent(entityClz, binders);
+		return (existing != null) ? existing : binders;
+	}
+	
+	/**
+	 * Update the db fields of the entity changed since its snapshot, 
+	 * the SQL is cached per set of changed columns
+	 * 
+	 * @return	affected record count, 0 if no field changed
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	public int updateChanged(final DbEntity entity) {
+		if (entity == null) {
+			throw new IllegalArgumentException("db entity cannot be null");
+		}
+		final Class<? extends DbEntity> entityClz = entity.getClass();
+		final EntityMetadata metadata = EntityMetadata.of(entityClz);
+		final List<EntityMetadata.Column> changedColumns = metadata.getChangedColumns(entity);
+		if (changedColumns == null) {
+			return update(entity);
+		}
+		if (changedColumns.isEmpty()) {
+			return 0;
+		}
+		
+		try {
+			final ParameterBinder[] columnBinders = getColumnBinders(entityClz);
+			final int changedCnt = changedColumns.size();
+			Object[] args = new Object[changedCnt + 1];
+			ParameterBinder[] binders = new ParameterBinder[changedCnt + 1];
+			BitSet changedSet = new BitSet(columnBinders.length);
+			for (int i = 0; i < changedCnt; i++) {
+				EntityMetadata.Column column = changedColumns.get(i);
+				args[i] = column.getValue(entity);
+				binders[i] = columnBinders[column.getIndex()];
+				changedSet.set(column.getIndex());
 			}
+			args[changedCnt] = entity.getKeyValue();
+			binders[changedCnt] = columnBinders[columnBinders.length - 1];
+			
+			final SqlKey sqlKey = new SqlKey(entityClz, "update_changed", changedSet, 0);
+			String sql = sqlCache.get(sqlKey);
+			if (sql == null) {
+				StringBuilder updateSql = new StringBuilder();
+				for (EntityMetadata.Column column : changedColumns) {
+					updateSql.append(column.getColumnName()).append("=?,");
+				}
+				updateSql.setLength(updateSql.length() - 1);
+				sql = String.format("UPDATE %s SET %s WHERE %s=?", 
+						metadata.getTableName(), updateSql.toString(), metadata.getKeyName());
+				sqlCache.put(sqlKey, sql);
+			}
+			int cnt = this.executeUpdate(sql, args, binders);
+			metadata.takeSnapshot(entity);
+			return cnt;
+		} catch (SqlRuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new SqlRuntimeException(e);
+		} finally {
+			entityChanged(entity);
+		}
+	}
+	
+	/**
+	 * Update one db entity with specified db fields
+	 * 
+	 * @return	affected record count
+	 * @author  ZHANG.XL
+	 */
+	public int update(final DbEntity entity, String[] updateFieldNames) {
+		if (entity == null) {
+			throw new IllegalArgumentException("db entity cannot be null");
+		}
+		if (updateFieldNames == null || updateFieldNames.length == 0) {
+			throw new IllegalArgumentException("updateFieldNames cannot be empty");
+		}
+		
+		List<Object> argList = new ArrayList<Object>(updateFieldNames.length + 1);
+		List<ParameterBinder> binderList = new ArrayList<ParameterBinder>(updateFieldNames.length + 1);
+		List<FieldAccessor> updateAccessors = new ArrayList<FieldAccessor>(updateFieldNames.length);
+		try {
+			Class<? extends DbEntity> entityClz = entity.getClass();
+			EntityMetadata metadata = EntityMetadata.of(entityClz);
+			final String keyName = metadata.getKeyName();
+			List<String> updateNames = new ArrayList<String>(updateFieldNames.length);
+			for (String fieldName : updateFieldNames) {
+				if (!fieldName.equalsIgnoreCase(keyName)) {
+					FieldAccessor accessor = metadata.getAccessor(fieldName);
+					if (accessor == null) {
+						throw new NoSuchFieldException(fieldName);
+					}
+					updateNames.add(fieldName);
+					updateAccessors.add(accessor);
+					argList.add(accessor.get(entity));
+					binderList.add(dbAdapter.getParameterBinder(accessor.getField().getType()));
+				}
+			}
+			if (updateNames.size() > 0) {
+				argList.add(entity.getKeyValue());
+				binderList.add(dbAdapter.getParameterBinder(metadata.getKeyField().getType()));
+				final SqlKey sqlKey = new SqlKey(entityClz, "update_fields", updateNames, 0);
+				String sql = sqlCache.get(sqlKey);
+				if (sql == null) {
+					StringBuilder updateSql = new StringBuilder();
+					for (String updateName : updateNames) {
+						updateSql.append(updateName).append("=?,");
+					}
+					updateSql.setLength(updateSql.length() - 1);
+					sql = String.format("UPDATE %s SET %s WHERE %s=?", 
+							metadata.getTableName(), updateSql.toString(), keyName);
+					sqlCache.put(sqlKey, sql);
+				}
+				int cnt = this.executeUpdate(sql, argList.toArray(), 
+						binderList.toArray(new ParameterBinder[binderList.size()]));
+				metadata.takeSnapshot(entity, updateAccessors);
+				return cnt;
+			} else {
+				throw new Exception("not found the updated field of this entity " + entityClz);
+			}
+		} catch (Exception e) {
+			throw new SqlRuntimeException(e);
+		} finally {
+			entityChanged(entity);
+		}
+	}
+	
+	/**
+	 * Update one db entity with specified field-value map
+	 * 
+	 * @return	affected record count
+	 * @author  ZHANG.XL
+	 */
+	public int update(Class<? extends DbEntity> entityClz, final Number keyValue, 
+			final Map<String, Object> fieldValueMap) {
+		if (entityClz == null || fieldValueMap == null || fieldValueMap.size() == 0) {
+			return 0;
+		}
+		if (keyValue == null) {
+			throw new IllegalArgumentException("key value cannot be null when updating "
+					+ entityClz.getName());
+		}
+		
+		int i = 0;
+		Object[] args = new Object[fieldValueMap.size() + 1];
+		List<String> updateNames = new ArrayList<String>(fieldValueMap.size());
+		for (Entry<String, Object> entry : fieldValueMap.entrySet()) {
+			updateNames.add(entry.getKey());
+			args[i++] = entry.getValue();
 		}
-		if (fieldNameSql.length() > 0) {
+		args[i] = keyValue;
+		final SqlKey sqlKey = new SqlKey(entityClz, "update_fields", updateNames, 0);
+		String sql = sqlCache.get(sqlKey);
+		if (sql == null) {
 			final String tblName = AbstractDbEntity.getTableName(entityClz);
-			fieldNameSql.setLength(fieldNameSql.length() - 1);
-			String sql = String.format("INSERT INTO %s (%s) VALUES (%s)", 
-					tblName, fieldNameSql.toString(), this.getQuestionMarks(dbFieldCnt));
+			final String keyName = AbstractDbEntity.getKeyName(entityClz);
+			StringBuilder updateSql = new StringBuilder();
+			for (String updateName : updateNames) {
+				updateSql.append(updateName).append("=?,");
+			}
+			updateSql.setLength(updateSql.length() - 1);
+			sql = String.format("UPDATE %s SET %s WHERE %s=?", 
+					tblName, updateSql.toString(), keyName);
 			sqlCache.put(sqlKey, sql);
-			return sql;
-		} else {
-			throw new SqlRuntimeException("not found db field in " + entityClz.getName());
 		}
-	}
-	
-	/**
-	 * @author  ZHANG.XL
-	 */
-	private Object[] getInsertArgs(DbEntity entity) throws Exception {
-		Field[] fields = entity.getClass().getFields();
-		List<Object> argList = new ArrayList<Object>(fields.length);
-		for (Field field : fields) {
-			if (field.getAnnotation(NotDbField.class) == null) {
-				argList.add(field.get(entity));
-			}
+		try {
+			return this.executeUpdate(sql, args);
+		} finally {
+			keyChanged(entityClz, keyValue);
 		}
-		return argList.toArray();
 	}
 	
 	/**
-	 * Get db field name by the specified"field". 
-	 * If the "field" is not db field, then return null. 
+	 * Insert db entities with all db fields by JDBC batch. The entities without 
+	 * key value get the keys from the key sequence, or else generated by the db.
 	 * 
-	 * @author  ZHANG.XL
+	 * @return 	affected record count of each entity, in the order of the list
+	 * @throws	SqlRuntimeException
+	 * @author	ZHANG.XL
 	 */
-	private String getDbFieldName(final Field field) {
-		NotDbField notDbField = field.getAnnotation(NotDbField.class);
-		if (notDbField != null) {
-			return null;
+	public int[] insertBatch(final List<? extends DbEntity> entityList) {
+		if (entityList == null || entityList.size() == 0) {
+			return new int[0];
 		}
-		DbField dbField = field.getAnnotation(DbField.class);
-		if (dbField != null) {
-			return (dbField.name().isEmpty()) ? field.getName() : dbField.name();
-		} else {
-			return field.getName();
+		String[] sqls = new String[entityList.size()];
+		Object[][] argsArr = new Object[entityList.size()][];
+		ParameterBinder[][] bindersArr = new ParameterBinder[entityList.size()][];
+		DbEntity[] keyTargets = null;
+		try {
+			for (int i = 0; i < sqls.length; i++) {
+				DbEntity entity = entityList.get(i);
+				if (entity == null) {
+					throw new IllegalArgumentException("db entity cannot be null");
+				}
+				if (allocateKey(entity)) {
+					if (keyTargets == null) {
+						keyTargets = new DbEntity[sqls.length];
+					}
+					keyTargets[i] = entity;
+					sqls[i] = getGeneratedKeyInsertSql(entity.getClass());
+					argsArr[i] = getGeneratedKeyInsertArgs(entity);
+					bindersArr[i] = getGeneratedKeyBinders(entity.getClass());
+				} else {
+					sqls[i] = getInsertSql(entity.getClass());
+					argsArr[i] = getInsertArgs(entity);
+					bindersArr[i] = getColumnBinders(entity.getClass());
+				}
+			}
+		} catch (Exception e) {
+			throw new SqlRuntimeException(e);
+		}
+		try {
+			int[] counts = this.executeBatch(sqls, argsArr, bindersArr, keyTargets);
+			takeSnapshots(entityList);
+			return counts;
+		} finally {
+			entitiesChanged(entityList);
 		}
 	}
 	
 	/**
-	 * Update one db entity with all db fields
+	 * Insert the db entity, or update all its db fields if the key value exists
 	 * 
-	 * @return 	affected record count
+	 * @return 	affected record count, which depends on the db
 	 * @throws	SqlRuntimeException
 	 * @author	ZHANG.XL
 	 */
-	public int update(final DbEntity entity) {
+	public int upsert(final DbEntity entity) {
 		if (entity != null) {
 			try {
-				return this.execute(getUpdateSql(entity.getClass()), getUpdateArgs(entity));
+				int cnt = this.executeUpdate(getUpsertSql(entity.getClass()), getInsertArgs(entity), 
+						getColumnBinders(entity.getClass()));
+				EntityMetadata.of(entity.getClass()).takeSnapshot(entity);
+				return cnt;
+			} catch (SqlRuntimeException e) {
+				throw e;
 			} catch (Exception e) {
 				throw new SqlRuntimeException(e);
+			} finally {
+				entityChanged(entity);
 			}
 		} else {
 			throw new IllegalArgumentException("db entity cannot be null");
@@ -505,123 +1996,124 @@ public class HiSqlClientImpl implements HiSqlClient {
 	}
 	
 	/**
-	 * @author  ZHANG.XL
+	 * Insert or update db entities with all db fields by JDBC batch
+	 * 
+	 * @return 	affected record count of each entity, in the order of the list
+	 * @throws	SqlRuntimeException
+	 * @author	ZHANG.XL
 	 */
-	private String getUpdateSql(Class<? extends DbEntity> entityClz) {
-		final String sqlKey = entityClz.getName() + "_update";
-		if (this.sqlCache.containsKey(sqlKey)) {
-			return sqlCache.get(sqlKey);
+	public int[] upsertBatch(final List<? extends DbEntity> entityList) {
+		if (entityList == null || entityList.size() == 0) {
+			return new int[0];
 		}
-		
-		StringBuilder updateSql = new StringBuilder();
-		String dbFieldName = null;
-		Field[] fields = entityClz.getFields();
-		for (Field field : fields) {
-			dbFieldName = getDbFieldName(field);
-			if (dbFieldName != null) {
-				updateSql.append(dbFieldName).append("=?,");
+		String[] sqls = new String[entityList.size()];
+		Object[][] argsArr = new Object[entityList.size()][];
+		ParameterBinder[][] bindersArr = new ParameterBinder[entityList.size()][];
+		try {
+			for (int i = 0; i < sqls.length; i++) {
+				DbEntity entity = entityList.get(i);
+				if (entity == null) {
+					throw new IllegalArgumentException("db entity cannot be null");
+				}
+				sqls[i] = getUpsertSql(entity.getClass());
+				argsArr[i] = getInsertArgs(entity);
+				bindersArr[i] = getColumnBinders(entity.getClass());
 			}
+		} catch (Exception e) {
+			throw new SqlRuntimeException(e);
 		}
-		if (updateSql.length() > 0) {
-			final String tblName = AbstractDbEntity.getTableName(entityClz);
-			final String keyName = AbstractDbEntity.getKeyName(entityClz);
-			updateSql.setLength(updateSql.length() - 1);
-			String sql = String.format("UPDATE %s SET %s WHERE %s=?", 
-					tblName, updateSql.toString(), keyName);
-			sqlCache.put(sqlKey, sql);
-			return sql;
-		} else {
-			throw new SqlRuntimeException("not found db field in " + entityClz.getName());
+		try {
+			int[] counts = this.executeBatch(sqls, argsArr, bindersArr);
+			takeSnapshots(entityList);
+			return counts;
+		} finally {
+			entitiesChanged(entityList);
 		}
 	}
 	
 	/**
 	 * @author  ZHANG.XL
 	 */
-	private Object[] getUpdateArgs(DbEntity entity) throws Exception {
-		Field[] fields = entity.getClass().getFields();
-		List<Object> argList = new ArrayList<Object>(fields.length);
-		for (Field field : fields) {
-			if (field.getAnnotation(NotDbField.class) == null) {
-				argList.add(field.get(entity));
-			}
+	private String getUpsertSql(Class<? extends DbEntity> entityClz) {
+		final SqlKey sqlKey = new SqlKey(entityClz, "upsert");
+		String sql = sqlCache.get(sqlKey);
+		if (sql != null) {
+			return sql;
 		}
-		argList.add(entity.getKeyValue());
-		return argList.toArray();
+		
+		EntityMetadata metadata = EntityMetadata.of(entityClz);
+		List<String> columnNames = new ArrayList<String>(metadata.getColumns().size());
+		for (EntityMetadata.Column column : metadata.getColumns()) {
+			columnNames.add(column.getColumnName());
+		}
+		if (columnNames.isEmpty()) {
+			throw new SqlRuntimeException("not found db field in " + entityClz.getName());
+		}
+		sql = dbAdapter.getUpsertSql(metadata.getTableName(), columnNames, metadata.getKeyName());
+		sqlCache.put(sqlKey, sql);
+		return sql;
 	}
 	
 	/**
-	 * Update one db entity with specified db fields
+	 * Update db entities with all db fields by JDBC batch
 	 * 
-	 * @return	affected record count
-	 * @author  ZHANG.XL
+	 * @return 	affected record count of each entity, in the order of the list
+	 * @throws	SqlRuntimeException
+	 * @author	ZHANG.XL
 	 */
-	public int update(final DbEntity entity, String[] updateFieldNames) {
-		if (entity == null) {
-			throw new IllegalArgumentException("db entity cannot be null");
-		}
-		if (updateFieldNames == null || updateFieldNames.length == 0) {
-			throw new IllegalArgumentException("updateFieldNames cannot be empty");
+	public int[] updateBatch(final List<? extends DbEntity> entityList) {
+		if (entityList == null || entityList.size() == 0) {
+			return new int[0];
 		}
-		
-		List<Object> argList = new ArrayList<Object>(updateFieldNames.length + 1);
+		String[] sqls = new String[entityList.size()];
+		Object[][] argsArr = new Object[entityList.size()][];
+		ParameterBinder[][] bindersArr = new ParameterBinder[entityList.size()][];
 		try {
-			Class<? extends DbEntity> entityClz = entity.getClass();
-			final String keyName = entity.getKeyName();
-			StringBuilder updateSql = new StringBuilder();
-			for (String fieldName : updateFieldNames) {
-				if (!fieldName.equalsIgnoreCase(keyName)) {
-					updateSql.append(fieldName).append("=?,");
-					Object arg = entityClz.getField(fieldName).get(entity);
-					argList.add(arg);
+			for (int i = 0; i < sqls.length; i++) {
+				DbEntity entity = entityList.get(i);
+				if (entity == null) {
+					throw new IllegalArgumentException("db entity cannot be null");
 				}
-			}
-			if (updateSql.length() > 0) {
-				argList.add(entity.getKeyValue());
-				updateSql.setLength(updateSql.length() - 1);
-				String sql = String.format("UPDATE %s SET %s WHERE %s=?", 
-						entity.getTableName(), updateSql.toString(), keyName);
-				return this.execute(sql.toString(), argList.toArray());
-			} else {
-				throw new Exception("not found the updated field of this entity " + entityClz);
+				sqls[i] = getUpdateSql(entity.getClass());
+				argsArr[i] = getUpdateArgs(entity);
+				bindersArr[i] = getColumnBinders(entity.getClass());
 			}
 		} catch (Exception e) {
 			throw new SqlRuntimeException(e);
 		}
+		try {
+			int[] counts = this.executeBatch(sqls, argsArr, bindersArr);
+			takeSnapshots(entityList);
+			return counts;
+		} finally {
+			entitiesChanged(entityList);
+		}
 	}
 	
 	/**
-	 * Update one db entity with specified field-value map
+	 * Delete db entities one key value per statement by JDBC batch
 	 * 
-	 * @return	affected record count
-	 * @author  ZHANG.XL
+	 * @return 	affected record count of each key value, in the order of the list
+	 * @throws	SqlRuntimeException
+	 * @author	ZHANG.XL
 	 */
-	public int update(Class<? extends DbEntity> entityClz, final Number keyValue, 
-			final Map<String, Object> fieldValueMap) {
-		if (entityClz == null || fieldValueMap == null || fieldValueMap.size() == 0) {
-			return 0;
+	public int[] deleteBatch(Class<? extends DbEntity> entityClz, 
+			List<? extends Number> keyValueList) {
+		if (keyValueList == null || keyValueList.size() == 0) {
+			return new int[0];
 		}
-		if (keyValue == null) {
-			throw new IllegalArgumentException("key value cannot be null when updating "
-					+ entityClz.getName());
+		final String sql = getDeleteSql(entityClz);
+		String[] sqls = new String[keyValueList.size()];
+		Object[][] argsArr = new Object[keyValueList.size()][];
+		for (int i = 0; i < sqls.length; i++) {
+			sqls[i] = sql;
+			argsArr[i] = new Object[]{keyValueList.get(i)};
 		}
-		
-		StringBuilder updateSql = new StringBuilder();
-		int i = 0;
-		Object[] args = new Object[fieldValueMap.size() + 1];
-		Iterator<Entry<String, Object>> itr = fieldValueMap.entrySet().iterator();
-		while (itr.hasNext()) {
-			Entry<String, Object> entry = itr.next();
-			updateSql.append(entry.getKey()).append("=?,");
-			args[i++] = entry.getValue();
+		try {
+			return this.executeBatch(sqls, argsArr, null);
+		} finally {
+			keysChanged(entityClz, keyValueList);
 		}
-		final String tblName = AbstractDbEntity.getTableName(entityClz);
-		final String keyName = AbstractDbEntity.getKeyName(entityClz);
-		updateSql.setLength(updateSql.length() - 1);
-		args[i] = keyValue;
-		String sql = String.format("UPDATE %s SET %s WHERE %s=?", 
-				tblName, updateSql.toString(), keyName);
-		return this.execute(sql, args);
 	}
 	
 	/**
@@ -630,21 +2122,26 @@ public class HiSqlClientImpl implements HiSqlClient {
 	 * @author  ZHANG.XL
 	 */
 	public int delete(Class<? extends DbEntity> entityClz, Number keyValue) {
-		return this.execute(getDeleteSql(entityClz), new Object[]{keyValue});
+		try {
+			return this.executeUpdate(getDeleteSql(entityClz), new Object[]{keyValue});
+		} finally {
+			keyChanged(entityClz, keyValue);
+		}
 	}
 	
 	/**
 	 * @author  ZHANG.XL
 	 */
 	private String getDeleteSql(Class<? extends DbEntity> entityClz) {
-		final String sqlKey = entityClz.getName() + "_delete";
-		if (this.sqlCache.containsKey(sqlKey)) {
-			return this.sqlCache.get(sqlKey);
+		final SqlKey sqlKey = new SqlKey(entityClz, "delete");
+		String sql = this.sqlCache.get(sqlKey);
+		if (sql != null) {
+			return sql;
 		}
 		
 		final String tblName = AbstractDbEntity.getTableName(entityClz);
 		final String keyName = AbstractDbEntity.getKeyName(entityClz);
-		String sql = String.format("DELETE FROM %s WHERE %s=?", tblName, keyName);
+		sql = String.format("DELETE FROM %s WHERE %s=?", tblName, keyName);
 		this.sqlCache.put(sqlKey, sql);
 		return sql;
 	}
@@ -654,16 +2151,140 @@ public class HiSqlClientImpl implements HiSqlClient {
 	 * 
 	 * @author  ZHANG.XL
 	 */
-	public int delete(Class<? extends DbEntity> entityClz, List<? extends Number> keyValueList) {
+	public int delete(final Class<? extends DbEntity> entityClz, 
+			List<? extends Number> keyValueList) {
 		if (keyValueList == null || keyValueList.size() == 0) {
 			return 0;
 		}
 		
-		final String tblName = AbstractDbEntity.getTableName(entityClz);
-		final String keyName = AbstractDbEntity.getKeyName(entityClz);
-		String sql = String.format("DELETE FROM %s WHERE %s IN (%s)", 
-			tblName, keyName, this.getQuestionMarks(keyValueList.size()));
-		return this.execute(sql, keyValueList.toArray());
+		try {
+			return deleteByKeys(entityClz, keyValueList);
+		} finally {
+			keysChanged(entityClz, keyValueList);
+		}
+	}
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	private int deleteByKeys(final Class<? extends DbEntity> entityClz, 
+			List<? extends Number> keyValueList) {
+		final List<Object[]> chunks = getInListChunks(keyValueList);
+		if (chunks.size() == 1) {
+			return this.executeUpdate(getInListSql(entityClz, "delete_in", chunks.get(0).length), 
+					chunks.get(0));
+		}
+		
+		List<Integer> counts = runInListChunks(chunks, new Function<Object[], Integer>() {
+			@Override
+			public Integer apply(Object[] chunk) {
+				return executeUpdate(getInListSql(entityClz, "delete_in", chunk.length), chunk);
+			}
+		});
+		int total = 0;
+		for (Integer count : counts) {
+			total += count;
+		}
+		return total;
+	}
+	
+	/**
+	 * Get the entity cache region for reading, or null if the class is not cached
+	 */
+	EntityCache.Region getReadableCacheRegion(Class<?> entityClz) {
+		return entityCache.getRegion(entityClz);
+	}
+	
+	/**
+	 * Remove the entity of the key value from the entity cache, after it is changed
+	 * 
+	 * @return	false if the class is not cached
+	 */
+	boolean invalidateCachedKey(Class<?> entityClz, Object keyValue) {
+		EntityCache.Region region = entityCache.getRegion(entityClz);
+		if (region == null) {
+			return false;
+		}
+		region.invalidate(keyValue);
+		return true;
+	}
+	
+	/**
+	 * Get the query result cache for reading, or null if it is disabled
+	 */
+	QueryResultCache getReadableQueryCache() {
+		return queryCache;
+	}
+	
+	/**
+	 * Invalidate the cached query results of the tables after they are written, 
+	 * null means all tables
+	 */
+	void invalidateQueryCache(String[] tables) {
+		QueryResultCache cache = this.queryCache;
+		if (cache != null) {
+			cache.invalidate(tables);
+		}
+	}
+	
+	/**
+	 * Invalidate the cached query results of the table of the entity class
+	 */
+	private void tableChanged(Class<?> entityClz) {
+		if (queryCache == null) return;
+		EntityMetadata metadata = EntityMetadata.of(entityClz);
+		invalidateQueryCache(metadata.hasTableName() ? new String[]{metadata.getTableName()} : null);
+	}
+	
+	private void keyChanged(Class<?> entityClz, Object keyValue) {
+		tableChanged(entityClz);
+		invalidateCachedKey(entityClz, keyValue);
+	}
+	
+	private void keysChanged(Class<?> entityClz, List<?> keyValueList) {
+		tableChanged(entityClz);
+		if (entityCache.getRegion(entityClz) == null) return;
+		for (Object keyValue : keyValueList) {
+			invalidateCachedKey(entityClz, keyValue);
+		}
+	}
+	
+	private void entityChanged(DbEntity entity) {
+		tableChanged(entity.getClass());
+		invalidateCachedEntity(entity);
+	}
+	
+	/**
+	 * Take the change snapshots of the entities written by the batch
+	 */
+	private void takeSnapshots(List<? extends DbEntity> entityList) {
+		Class<?> lastClz = null;
+		EntityMetadata metadata = null;
+		for (DbEntity entity : entityList) {
+			if (entity.getClass() != lastClz) {
+				lastClz = entity.getClass();
+				metadata = EntityMetadata.of(lastClz);
+			}
+			metadata.takeSnapshot(entity);
+		}
+	}
+	
+	private void entitiesChanged(List<? extends DbEntity> entityList) {
+		Class<?> lastClz = null;
+		for (DbEntity entity : entityList) {
+			if (entity == null) continue;
+			if (entity.getClass() != lastClz) {
+				lastClz = entity.getClass();
+				tableChanged(lastClz);
+			}
+			invalidateCachedEntity(entity);
+		}
+	}
+	
+	private void invalidateCachedEntity(DbEntity entity) {
+		if (entityCache.getRegion(entity.getClass()) == null) return;
+		invalidateCachedKey(entity.getClass(), 
+				EntityMetadata.of(entity.getClass()).getKeyAccessor().get(entity));
 	}
 	
 	/**
@@ -678,32 +2299,9 @@ public class HiSqlClientImpl implements HiSqlClient {
 	 */
 	@Override
 	public String genInsertSqlWithValues(DbEntity entity) {
-		StringBuilder fieldNameSql = new StringBuilder();
-		StringBuilder fieldValueSql = new StringBuilder();
-		String dbFieldName = null;
-		Class<? extends DbEntity> entityClz = entity.getClass();
-		Field[] fields = entityClz.getFields();
-		try {
-			for (Field field : fields) {
-				dbFieldName = getDbFieldName(field);
-				if (dbFieldName != null) {
-					fieldNameSql.append(dbFieldName).append(",");
-					fieldValueSql.append(getColumnValueInSql(field.get(entity))).append(",");
-				}
-			}
-		} catch (Exception e) {
-			throw new SqlRuntimeException(e.getMessage());
-		}
-		if (fieldNameSql.length() > 0) {
-			final String tblName = AbstractDbEntity.getTableName(entityClz);
-			fieldNameSql.setLength(fieldNameSql.length() - 1);
-			fieldValueSql.setLength(fieldValueSql.length() - 1);
-			String sql = String.format("INSERT INTO %s (%s) VALUES (%s)", 
-					tblName, fieldNameSql.toString(), fieldValueSql.toString());
-			return sql;
-		} else {
-			throw new SqlRuntimeException("not found db field in " + entityClz.getName());
-		}
+		StringBuilder sql = new StringBuilder(256);
+		appendInsertSqlWithValues(sql, entity);
+		return sql.toString();
 	}
 	
 	/**
@@ -714,70 +2312,188 @@ public class HiSqlClientImpl implements HiSqlClient {
 		if (entityList == null || entityList.size() == 0) 
 			return null;
 		
-		StringBuilder fieldNameSql = new StringBuilder();
-		String dbFieldName = null;
-		Class<? extends DbEntity> entityClz = entityList.get(0).getClass();
-		Field[] fields = entityClz.getFields();
-		List<Integer> dbFieldIdxList = new ArrayList<Integer>(fields.length);
-		int i = 0;
+		StringBuilder sql = new StringBuilder(entityList.size() * 128);
+		genInsertSqlWithValues(entityList.iterator(), separator, sql);
+		return sql.toString();
+	}
+	
+	/**
+	 * <pre>
+	 * Write the insert SQL with values of every entity to the output, each 
+	 * followed by the separator. Only one row is buffered at a time, so the 
+	 * script of any size is generated in constant memory.
+	 * 
+	 * 例如：genInsertSqlWithValues(userList.iterator(), ";\n", writer)
+	 * </pre>
+	 * 
+	 * @return	the count of rows written
+	 * @throws	SqlRuntimeException - if failed to write the output
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public long genInsertSqlWithValues(Iterator<? extends DbEntity> entities, String separator, 
+			Appendable out) {
+		StringBuilder rowSql = new StringBuilder(256);
+		long rowCnt = 0;
 		try {
-			for (Field field : fields) {
-				dbFieldName = getDbFieldName(field);
-				if (dbFieldName != null) {
-					fieldNameSql.append(dbFieldName).append(",");
-					dbFieldIdxList.add(i);
+			while (entities.hasNext()) {
+				rowSql.setLength(0);
+				appendInsertSqlWithValues(rowSql, entities.next());
+				if (separator != null) {
+					rowSql.append(separator);
 				}
-				i++;
+				out.append(rowSql);
+				rowCnt++;
 			}
-			if (fieldNameSql.length() > 0) {
-				StringBuilder fieldValueSql = new StringBuilder();
-				final String tblName = AbstractDbEntity.getTableName(entityClz);
-				fieldNameSql.setLength(fieldNameSql.length() - 1);
-				String baseInsertSql = String.format("INSERT INTO %s (%s) ", 
-						tblName, fieldNameSql.toString());
-				StringBuilder sql = new StringBuilder();
-				for (DbEntity entity : entityList) {
-					fieldValueSql.setLength(0);
-					for (Integer fieldIdx : dbFieldIdxList) {
-						fieldValueSql.append(getColumnValueInSql(fields[fieldIdx].get(entity)));
-						fieldValueSql.append(",");
-					}
-					fieldValueSql.setLength(fieldValueSql.length() - 1);
-					sql.append(baseInsertSql).append(String.format(" VALUES (%s)", fieldValueSql));
-					sql.append(separator);
-				}
-				return sql.toString();
-			} else {
-				throw new SqlRuntimeException("not found db field in " + entityClz.getName());
+		} catch (IOException e) {
+			throw new SqlRuntimeException(e);
+		}
+		return rowCnt;
+	}
+	
+	/**
+	 * @see		#genInsertSqlWithValues(Iterator, String, Appendable)
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public long genInsertSqlWithValues(Stream<? extends DbEntity> entities, String separator, 
+			Appendable out) {
+		return genInsertSqlWithValues(entities.iterator(), separator, out);
+	}
+	
+	/**
+	 * Write the insert SQL with values of every entity to the channel in the charset,
+	 * through a fixed encoding buffer. The channel is not closed.
+	 * 
+	 * @see		#genInsertSqlWithValues(Iterator, String, Appendable)
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public long genInsertSqlWithValues(Iterator<? extends DbEntity> entities, String separator, 
+			WritableByteChannel channel, Charset charset) {
+		Writer writer = Channels.newWriter(channel, charset.newEncoder(), -1);
+		long rowCnt = genInsertSqlWithValues(entities, separator, writer);
+		try {
+			writer.flush();
+		} catch (IOException e) {
+			throw new SqlRuntimeException(e);
+		}
+		return rowCnt;
+	}
+	
+	/**
+	 * Append "INSERT INTO t (c1,c2) VALUES (v1,v2)" of the entity
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	private void appendInsertSqlWithValues(StringBuilder sql, DbEntity entity) {
+		if (entity == null) {
+			throw new IllegalArgumentException("db entity cannot be null");
+		}
+		Class<? extends DbEntity> entityClz = entity.getClass();
+		EntityMetadata metadata = EntityMetadata.of(entityClz);
+		List<EntityMetadata.Column> columns = metadata.getColumns();
+		if (columns.size() == 0) {
+			throw new SqlRuntimeException("not found db field in " + entityClz.getName());
+		}
+		sql.append(getInsertValuesPrefix(entityClz));
+		try {
+			for (int i = 0; i < columns.size(); i++) {
+				if (i > 0) sql.append(',');
+				appendColumnValueInSql(sql, columns.get(i).getValue(entity));
 			}
 		} catch (Exception e) {
 			throw new SqlRuntimeException(e.getMessage());
 		}
+		sql.append(')');
+	}
+	
+	/**
+	 * e.g. "INSERT INTO t (c1,c2) VALUES ("
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	private String getInsertValuesPrefix(Class<? extends DbEntity> entityClz) {
+		final SqlKey sqlKey = new SqlKey(entityClz, "insert_values_prefix");
+		String prefix = sqlCache.get(sqlKey);
+		if (prefix != null) {
+			return prefix;
+		}
+		
+		prefix = "INSERT INTO " + EntityMetadata.of(entityClz).getTableName() 
+				+ " (" + getInsertColumnsSql(entityClz) + ") VALUES (";
+		sqlCache.put(sqlKey, prefix);
+		return prefix;
 	}
 	
 	/**
+	 * Append the literal of the value, the quotes in the strings are doubled.
+	 * The java.time values are converted as by the binders, then formatted 
+	 * by the db adapter as java.util.Date.
+	 * 
 	 * @author  ZHANG.XL
 	 */
-	private String getColumnValueInSql(Object fieldVal) {
+	private void appendColumnValueInSql(StringBuilder sql, Object fieldVal) {
 		if (fieldVal instanceof String || fieldVal instanceof Character) {
-			return String.format("'%s'", escapeSql(fieldVal.toString()));
+			final CharSequence str = (fieldVal instanceof String) 
+					? (String) fieldVal : fieldVal.toString();
+			sql.append('\'');
+			for (int i = 0; i < str.length(); i++) {
+				char ch = str.charAt(i);
+				if (ch == '\'') {
+					sql.append('\'');
+				}
+				sql.append(ch);
+			}
+			sql.append('\'');
+		} else if (fieldVal instanceof Long || fieldVal instanceof Integer 
+				|| fieldVal instanceof Short || fieldVal instanceof Byte) {
+			sql.append(((Number) fieldVal).longValue());
 		} else if (fieldVal instanceof Number) {
-			return fieldVal.toString();
+			sql.append(fieldVal.toString());
 		} else if (fieldVal instanceof Boolean) {
-			boolean boolVal = ((Boolean) fieldVal).booleanValue();
-			return boolVal ? "1" : "0";
+			sql.append(((Boolean) fieldVal).booleanValue() ? '1' : '0');
 		} else if (fieldVal instanceof java.util.Date) {
-			return dbAdapter.getDateStrForSql((java.util.Date) fieldVal);
+			sql.append(dbAdapter.getDateStrForSql((java.util.Date) fieldVal));
+		} else if (fieldVal instanceof LocalDateTime) {
+			sql.append(dbAdapter.getDateStrForSql(Timestamp.valueOf((LocalDateTime) fieldVal)));
+		} else if (fieldVal instanceof LocalDate) {
+			sql.append(dbAdapter.getDateStrForSql(java.sql.Date.valueOf((LocalDate) fieldVal)));
+		} else if (fieldVal instanceof LocalTime) {
+			sql.append(dbAdapter.getDateStrForSql(java.sql.Time.valueOf((LocalTime) fieldVal)));
+		} else if (fieldVal instanceof Instant) {
+			sql.append(dbAdapter.getDateStrForSql(java.util.Date.from((Instant) fieldVal)));
 		} else if (fieldVal == null) {
-			return "null";
+			sql.append("null");
+		} else {
+			sql.append(fieldVal.toString());
 		}
-		return fieldVal.toString();
 	}
 	
 	/**
-	 * @author  ZHANG.XL
+	 * The key of the row mapping plan: SQL + return class
 	 */
-	private static String escapeSql(String str) {
-		return StringEscapeUtils.escapeSql(str);
+	private static final class RowMapperKey {
+		private final String sql;
+		private final Class<?> returnClz;
+		private final int hash;
+		
+		RowMapperKey(String sql, Class<?> returnClz) {
+			this.sql = sql;
+			this.returnClz = returnClz;
+			this.hash = 31 * sql.hashCode() + returnClz.hashCode();
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof RowMapperKey)) return false;
+			RowMapperKey other = (RowMapperKey) obj;
+			return returnClz == other.returnClz && sql.equals(other.sql);
+		}
 	}
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.io.Closeable;
+
+/**
+ * <pre>
+ * The client bound to one connection in manual-commit mode.
+ *
+ * All operations of the session run on the same connection in one transaction,
+ * until {@link #commit()} or {@link #rollback()}. {@link #close()} rolls back 
+ * the uncommitted operations and releases the connection.
+ *
+ * Example:
+ *     HiSqlSession session = client.openSession();
+ *     try {
+ *         session.insert(order);
+ *         session.insertBatch(orderLines);
+ *         session.commit();
+ *     } finally {
+ *         session.close();
+ *     }
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+public interface HiSqlSession extends HiSqlClient, Closeable {
+	/**
+	 * Commit the operations since the last commit/rollback
+	 * 
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	void commit();
+	
+	/**
+	 * Roll back the operations since the last commit/rollback
+	 * 
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	void rollback();
+	
+	/**
+	 * Roll back the uncommitted operations, and release the connection
+	 * 
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.hisql.exception.SqlRuntimeException;
+
+/**
+ * The session sharing the adapter, caches and settings of the client which opens it
+ *
+ * @author	ZHANG.XL
+ */
+class HiSqlSessionImpl extends HiSqlClientImpl implements HiSqlSession {
+	private final ConnectionManager parentConMng;
+	private final Connection con;
+	private boolean closed = false;
+	/** the (entity class, key value) changed in the transaction */
+	private final List<Object[]> changedKeys = new ArrayList<Object[]>();
+	/** the tables changed in the transaction, null element means all tables */
+	private final List<String[]> changedTables = new ArrayList<String[]>();
+	
+	private HiSqlSessionImpl(HiSqlClientImpl client, ConnectionManager parentConMng, 
+			Connection con) {
+		super(client, new PinnedConnectionManager(con));
+		this.parentConMng = parentConMng;
+		this.con = con;
+	}
+	
+	/**
+	 * Borrow a connection and turn off its auto-commit
+	 * 
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	static HiSqlSessionImpl open(HiSqlClientImpl client, ConnectionManager conMng) {
+		Connection con = conMng.getConnection();
+		try {
+			con.setAutoCommit(false);
+		} catch (SQLException e) {
+			conMng.releaseConnection(con);
+			throw new SqlRuntimeException(e);
+		}
+		return new HiSqlSessionImpl(client, conMng, con);
+	}
+	
+	@Override
+	public void commit() {
+		checkOpen();
+		try {
+			con.commit();
+		} catch (SQLException e) {
+			throw new SqlRuntimeException(e);
+		}
+		// the old rows may be cached by other threads before committing
+		for (Object[] changedKey : changedKeys) {
+			super.invalidateCachedKey((Class<?>) changedKey[0], changedKey[1]);
+		}
+		for (String[] tables : changedTables) {
+			super.invalidateQueryCache(tables);
+		}
+		changedKeys.clear();
+		changedTables.clear();
+	}
+	
+	@Override
+	public void rollback() {
+		checkOpen();
+		try {
+			con.rollback();
+		} catch (SQLException e) {
+			throw new SqlRuntimeException(e);
+		} finally {
+			changedKeys.clear();
+			changedTables.clear();
+		}
+	}
+	
+	@Override
+	public void close() {
+		if (closed) return;
+		closed = true;
+		try {
+			con.rollback();
+			con.setAutoCommit(true);
+		} catch (SQLException e) {
+			throw new SqlRuntimeException(e);
+		} finally {
+			parentConMng.releaseConnection(con);
+		}
+	}
+	
+	/**
+	 * The session is already in a transaction, nested sessions are not supported
+	 * 
+	 * @throws	UnsupportedOperationException
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public HiSqlSession openSession() {
+		throw new UnsupportedOperationException("cannot open a session in a session");
+	}
+	
+	/**
+	 * Join the transaction of this session, it is committed by the outermost caller
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public <R> R inTransaction(Function<? super HiSqlClient, R> callback) {
+		checkOpen();
+		return callback.apply(this);
+	}
+	
+	/**
+	 * The entity cache may hold the rows committed by others, 
+	 * but not the rows changed in this transaction
+	 */
+	@Override
+	EntityCache.Region getReadableCacheRegion(Class<?> entityClz) {
+		return null;
+	}
+	
+	@Override
+	QueryResultCache getReadableQueryCache() {
+		return null;
+	}
+	
+	@Override
+	void invalidateQueryCache(String[] tables) {
+		super.invalidateQueryCache(tables);
+		if (super.getReadableQueryCache() != null) {
+			changedTables.add(tables);
+		}
+	}
+	
+	@Override
+	boolean invalidateCachedKey(Class<?> entityClz, Object keyValue) {
+		if (!super.invalidateCachedKey(entityClz, keyValue)) {
+			return false;
+		}
+		changedKeys.add(new Object[]{entityClz, keyValue});
+		return true;
+	}
+	
+	private void checkOpen() {
+		if (closed) {
+			throw new SqlRuntimeException("the session is closed");
+		}
+	}
+	
+	/**
+	 * Hands out the connection of the session, which is released by the session itself
+	 */
+	private static final class PinnedConnectionManager implements ConnectionManager {
+		private final Connection con;
+		
+		PinnedConnectionManager(Connection con) {
+			this.con = con;
+		}
+		
+		@Override
+		public Connection getConnection() {
+			return con;
+		}
+		
+		@Override
+		public void releaseConnection(Connection con) {
+			// released when the session is closed
+		}
+	}
+}
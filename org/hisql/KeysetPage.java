@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <pre>
+ * One page of the keyset pagination.
+ *
+ * The next page is queried by passing {@link #getNextKey()} as the last key,
+ * so every page seeks the index instead of skipping the previous rows.
+ *
+ * Example:
+ *     KeysetPage<AuditLog> page = client.getPageAfter(AuditLog.class, whereMap, null, 100);
+ *     while (page.hasMore()) {
+ *         page = client.getPageAfter(AuditLog.class, whereMap, page.getNextKey(), 100);
+ *     }
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+public final class KeysetPage<T> {
+	private final List<T> items;
+	private final Object nextKey;
+	private final boolean hasMore;
+	
+	KeysetPage(List<T> items, Object nextKey, boolean hasMore) {
+		this.items = Collections.unmodifiableList(items);
+		this.nextKey = nextKey;
+		this.hasMore = hasMore;
+	}
+	
+	/** the rows of this page, in the ascending order of the key */
+	public List<T> getItems() {
+		return items;
+	}
+	
+	/** 
+	 * the key of the last row, which is the last key of the next page,
+	 * or the last key of this page if it has no row 
+	 */
+	@SuppressWarnings("unchecked")
+	public <K> K getNextKey() {
+		return (K) nextKey;
+	}
+	
+	/** whether there are rows after this page */
+	public boolean hasMore() {
+		return hasMore;
+	}
+	
+	@Override
+	public String toString() {
+		return "KeysetPage[size=" + items.size() + ", nextKey=" + nextKey 
+				+ ", hasMore=" + hasMore + "]";
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <pre>
+ * The lock-free histogram of latencies in nanoseconds, recording in O(1) 
+ * without allocation.
+ *
+ * Like HdrHistogram, the values are counted in log-linear buckets: every 
+ * power of 2 is split into 16 sub-buckets, so the percentiles have at most
+ * 6.25% relative error from 1ns to Long.MAX_VALUE with (64 - 4) * 16 = 960 
+ * counters: 16 for the values below 16, and 16 for each exponent from 4 to 62.
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKET_CNT = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKET_CNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_CNT;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_CNT);
+	
+	/**
+	 * @param	nanos - the latency, the negative value is recorded as 0
+	 * @author  ZHANG.XL
+	 */
+	public void record(long nanos) {
+		counts.incrementAndGet(indexOf(Math.max(nanos, 0)));
+	}
+	
+	/**
+	 * Get the latency which the given percent of records are not greater than 
+	 * 
+	 * @param	percentile - from 0 to 100, e.g. 99.9
+	 * @return	the upper bound of the bucket, 0 if no record
+	 * @author  ZHANG.XL
+	 */
+	public long getPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("percentile must be in [0, 100]: " + percentile);
+		}
+		long[] snapshot = new long[BUCKET_CNT];
+		long total = 0;
+		for (int i = 0; i < BUCKET_CNT; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) return 0;
+		
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_CNT; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return upperBoundOf(i);
+			}
+		}
+		return upperBoundOf(BUCKET_CNT - 1);
+	}
+	
+	/** the count of records */
+	public long getCount() {
+		long total = 0;
+		for (int i = 0; i < BUCKET_CNT; i++) {
+			total += counts.get(i);
+		}
+		return total;
+	}
+	
+	public void reset() {
+		for (int i = 0; i < BUCKET_CNT; i++) {
+			counts.set(i, 0);
+		}
+	}
+	
+	/**
+	 * The values less than 16 have their own buckets, and the value with the
+	 * highest bit "e" falls in the sub-bucket by its next 4 bits
+	 */
+	static int indexOf(long value) {
+		if (value < SUB_BUCKET_CNT) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_CNT - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_CNT + subBucket;
+	}
+	
+	/** the max value falling in the bucket */
+	static long upperBoundOf(int index) {
+		if (index < SUB_BUCKET_CNT) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKET_CNT + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKET_CNT;
+		int shift = exponent - SUB_BUCKET_BITS;
+		long lowerBound = (1L << exponent) | (subBucket << shift);
+		return lowerBound + ((1L << shift) - 1);
+	}
+}
@@ -4,8 +4,15 @@
  */
 package org.hisql;
 
-import java.text.SimpleDateFormat;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 /**
  * The db adapter for MySql db
@@ -29,6 +36,14 @@ public class MySqlDbAdapter implements DbAdapter {
 	public Integer[] getQueryArgsForPaging(int startRow, int records) {
 		return new Integer[] {startRow - 1, records};
 	}
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public String getQuerySqlForLimit(String querySql) {
+		return querySql + " LIMIT ?";
+	}
 
 	/**
 	 * @author  ZHANG.XL
@@ -37,13 +52,180 @@ public class MySqlDbAdapter implements DbAdapter {
 	public Object convertArg(Object arg) {
 		return arg;
 	}
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public ParameterBinder getParameterBinder(Class<?> type) {
+		ParameterBinder binder = ParameterBinder.forType(type);
+		return (binder != null) ? binder : ParameterBinder.forObject(this);
+	}
 
 	/**
 	 * @author  ZHANG.XL
 	 */
 	@Override
 	public String getDateStrForSql(Date date) {
-		String datestr = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(date);
-		return String.format("('%s'", datestr);
+		String datestr = DbUtil.formatDateTime(date);
+		return "'" + datestr + "'";
+	}
+	
+	/**
+	 * The MySql driver streams the rows one by one with the fetch size 
+	 * Integer.MIN_VALUE, unless "useCursorFetch=true" is set in the url, then 
+	 * the server cursor fetches "fetchSize" rows each time. Other drivers in 
+	 * MySql mode (e.g. MariaDB, H2) take the fetch size as it is.
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public PreparedStatement prepareStreamingStatement(Connection con, String sql, 
+			int fetchSize) throws SQLException {
+		PreparedStatement ps = con.prepareStatement(sql, 
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		ps.setFetchSize(isRowStreaming(con) ? Integer.MIN_VALUE : fetchSize);
+		return ps;
+	}
+	
+	/**
+	 * INSERT INTO t (c1,c2) VALUES (?,?),(?,?),...
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public String getMultiRowInsertSql(String tblName, String columnsSql, int columnCnt, 
+			int rowCnt) {
+		StringBuilder rowSql = new StringBuilder(columnCnt * 2 + 2);
+		rowSql.append("(");
+		for (int i = 0; i < columnCnt; i++) {
+			rowSql.append(i == 0 ? "?" : ",?");
+		}
+		rowSql.append(")");
+		
+		StringBuilder sql = new StringBuilder(columnsSql.length() + rowCnt * (rowSql.length() + 1) + 32);
+		sql.append("INSERT INTO ").append(tblName).append(" (").append(columnsSql).append(") VALUES ");
+		for (int i = 0; i < rowCnt; i++) {
+			if (i > 0) sql.append(",");
+			sql.append(rowSql);
+		}
+		return sql.toString();
+	}
+	
+	/**
+	 * INSERT INTO t (id,c1,c2) VALUES (?,?,?) ON DUPLICATE KEY UPDATE c1=VALUES(c1),c2=VALUES(c2)
+	 * 
+	 * The affected record count is 1 if inserted, 2 if updated, 0 if the row is unchanged.
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public String getUpsertSql(String tblName, List<String> columnNames, String keyName) {
+		StringBuilder sql = new StringBuilder(columnNames.size() * 32 + 64);
+		StringBuilder updateSql = new StringBuilder(columnNames.size() * 24);
+		sql.append("INSERT INTO ").append(tblName).append(" (");
+		for (int i = 0; i < columnNames.size(); i++) {
+			String columnName = columnNames.get(i);
+			sql.append(i == 0 ? "" : ",").append(columnName);
+			if (!columnName.equalsIgnoreCase(keyName)) {
+				updateSql.append(updateSql.length() == 0 ? "" : ",");
+				updateSql.append(columnName).append("=VALUES(").append(columnName).append(")");
+			}
+		}
+		sql.append(") VALUES (");
+		for (int i = 0; i < columnNames.size(); i++) {
+			sql.append(i == 0 ? "?" : ",?");
+		}
+		sql.append(") ON DUPLICATE KEY UPDATE ");
+		if (updateSql.length() > 0) {
+			sql.append(updateSql);
+		} else {
+			sql.append(keyName).append("=").append(keyName);
+		}
+		return sql.toString();
+	}
+	
+	/**
+	 * The AUTO_INCREMENT key by RETURN_GENERATED_KEYS
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public PreparedStatement prepareInsertStatement(Connection con, String sql, String keyName) 
+			throws SQLException {
+		return con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+	}
+	
+	/**
+	 * MySql has no sequence, this is for MariaDB 10.3+ (and H2 in MySql mode)
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public String getSequenceNextValSql(String sequenceName) {
+		return "SELECT NEXT VALUE FOR " + sequenceName;
+	}
+	
+	/**
+	 * The placeholder count is a 16-bit number in the MySql protocol
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public int getMaxParameterCount() {
+		return 65535;
+	}
+	
+	/**
+	 * The default max_allowed_packet is 4M before MySql 8.0
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public int getMaxStatementBytes() {
+		return 4 * 1024 * 1024;
+	}
+	
+	/**
+	 * EXPLAIN with the binded variables, one line per table: "id=1, select_type=SIMPLE, ..."
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public List<String> explain(Connection con, String sql, Object[] args) throws SQLException {
+		PreparedStatement ps = con.prepareStatement("EXPLAIN " + sql);
+		ResultSet rs = null;
+		try {
+			if (args != null) {
+				for (int i = 1; i <= args.length; i++) {
+					ps.setObject(i, convertArg(args[i - 1]));
+				}
+			}
+			rs = ps.executeQuery();
+			ResultSetMetaData meta = rs.getMetaData();
+			List<String> lines = new ArrayList<String>();
+			while (rs.next()) {
+				StringBuilder line = new StringBuilder();
+				for (int i = 1; i <= meta.getColumnCount(); i++) {
+					if (i > 1) line.append(", ");
+					line.append(meta.getColumnLabel(i)).append('=').append(rs.getObject(i));
+				}
+				lines.add(line.toString());
+			}
+			return lines;
+		} finally {
+			try {
+				if (rs != null) rs.close();
+			} finally {
+				ps.close();
+			}
+		}
+	}
+	
+	private static boolean isRowStreaming(Connection con) throws SQLException {
+		String url = con.getMetaData().getURL();
+		if (url == null) return false;
+		url = url.toLowerCase();
+		return url.startsWith("jdbc:mysql:") && !url.contains("usecursorfetch=true");
 	}
 }
@@ -0,0 +1,16 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+/**
+ * The connection manager which reports the connection events, 
+ * so the client can drop the resources bound to the discarded connections
+ *
+ * @author	ZHANG.XL
+ */
+public interface ObservableConnectionManager extends ConnectionManager {
+	void addConnectionListener(ConnectionListener listener);
+	
+	void removeConnectionListener(ConnectionListener listener);
+}
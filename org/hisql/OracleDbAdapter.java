@@ -4,9 +4,17 @@
  */
 package org.hisql;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
-import java.text.SimpleDateFormat;
+import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The db adapter for Oracle db
@@ -14,6 +22,15 @@ import java.util.Date;
  * @author    ZHANG.XL         
  */
 public class OracleDbAdapter implements DbAdapter {
+	private static final AtomicLong explainSeq = new AtomicLong();
+	private static final ParameterBinder BOOLEAN_BINDER = new ParameterBinder(Types.NUMERIC) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) 
+				throws SQLException {
+			ps.setInt(index, ((Boolean) value).booleanValue() ? 1 : 0);
+		}
+	};
+	
 	/**
 	 * @author  ZHANG.XL
 	 */
@@ -35,6 +52,14 @@ public class OracleDbAdapter implements DbAdapter {
 		return new Integer[] {startRow + records, startRow};
 	}
 	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public String getQuerySqlForLimit(String querySql) {
+		return String.format("SELECT * FROM (%s) WHERE ROWNUM<=?", querySql);
+	}
+	
 	/**
 	 * @author  ZHANG.XL
 	 */
@@ -47,12 +72,203 @@ public class OracleDbAdapter implements DbAdapter {
 		}
 	}
 	
+	/**
+	 * The boolean is bound as NUMBER 1/0, since Oracle has no BOOLEAN column 
+	 * and the old drivers reject setNull with Types.BOOLEAN
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public ParameterBinder getParameterBinder(Class<?> type) {
+		if (type == Boolean.class || type == Boolean.TYPE) {
+			return BOOLEAN_BINDER;
+		}
+		ParameterBinder binder = ParameterBinder.forType(type);
+		return (binder != null) ? binder : ParameterBinder.forObject(this);
+	}
+	
 	/**
 	 * @author  ZHANG.XL
 	 */
 	@Override
 	public String getDateStrForSql(Date date) {
-		String datestr = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(date);
+		String datestr = DbUtil.formatDateTime(date);
 		return String.format("to_date('%s','yyyy-mm-dd hh24:mi:ss')", datestr);
 	}
+	
+	/**
+	 * The fetch size is the row prefetch of the Oracle driver
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public PreparedStatement prepareStreamingStatement(Connection con, String sql, 
+			int fetchSize) throws SQLException {
+		PreparedStatement ps = con.prepareStatement(sql, 
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		ps.setFetchSize(fetchSize);
+		return ps;
+	}
+	
+	/**
+	 * INSERT ALL INTO t (c1,c2) VALUES (?,?) INTO t (c1,c2) VALUES (?,?) ... SELECT 1 FROM DUAL
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public String getMultiRowInsertSql(String tblName, String columnsSql, int columnCnt, 
+			int rowCnt) {
+		StringBuilder rowSql = new StringBuilder(tblName.length() + columnsSql.length() + columnCnt * 2 + 24);
+		rowSql.append(" INTO ").append(tblName).append(" (").append(columnsSql).append(") VALUES (");
+		for (int i = 0; i < columnCnt; i++) {
+			rowSql.append(i == 0 ? "?" : ",?");
+		}
+		rowSql.append(")");
+		
+		StringBuilder sql = new StringBuilder(rowCnt * rowSql.length() + 32);
+		sql.append("INSERT ALL");
+		for (int i = 0; i < rowCnt; i++) {
+			sql.append(rowSql);
+		}
+		sql.append(" SELECT 1 FROM DUAL");
+		return sql.toString();
+	}
+	
+	/**
+	 * MERGE INTO t D USING (SELECT ? id,? c1,? c2 FROM DUAL) S ON (D.id=S.id) 
+	 * WHEN MATCHED THEN UPDATE SET D.c1=S.c1,D.c2=S.c2 
+	 * WHEN NOT MATCHED THEN INSERT (id,c1,c2) VALUES (S.id,S.c1,S.c2)
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public String getUpsertSql(String tblName, List<String> columnNames, String keyName) {
+		StringBuilder selectSql = new StringBuilder(columnNames.size() * 16);
+		StringBuilder updateSql = new StringBuilder(columnNames.size() * 24);
+		StringBuilder insertSql = new StringBuilder(columnNames.size() * 16);
+		StringBuilder valuesSql = new StringBuilder(columnNames.size() * 16);
+		for (int i = 0; i < columnNames.size(); i++) {
+			String columnName = columnNames.get(i);
+			String sep = (i == 0) ? "" : ",";
+			selectSql.append(sep).append("? ").append(columnName);
+			insertSql.append(sep).append(columnName);
+			valuesSql.append(sep).append("S.").append(columnName);
+			if (!columnName.equalsIgnoreCase(keyName)) {
+				updateSql.append(updateSql.length() == 0 ? "" : ",");
+				updateSql.append("D.").append(columnName).append("=S.").append(columnName);
+			}
+		}
+		
+		StringBuilder sql = new StringBuilder(selectSql.length() + updateSql.length() 
+				+ insertSql.length() + valuesSql.length() + 128);
+		sql.append("MERGE INTO ").append(tblName).append(" D USING (SELECT ").append(selectSql);
+		sql.append(" FROM DUAL) S ON (D.").append(keyName).append("=S.").append(keyName).append(")");
+		if (updateSql.length() > 0) {
+			sql.append(" WHEN MATCHED THEN UPDATE SET ").append(updateSql);
+		}
+		sql.append(" WHEN NOT MATCHED THEN INSERT (").append(insertSql);
+		sql.append(") VALUES (").append(valuesSql).append(")");
+		return sql.toString();
+	}
+	
+	/**
+	 * The key column by name, then the driver appends "RETURNING key INTO ?", 
+	 * since RETURN_GENERATED_KEYS returns the ROWID only. The insert SQL leaves 
+	 * out the key column, so the key must be set by the db: the IDENTITY column, 
+	 * DEFAULT seq.NEXTVAL (12c+) or the BEFORE INSERT trigger. The table keyed 
+	 * by a plain sequence needs HiSqlClient.setKeySequence() instead.
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public PreparedStatement prepareInsertStatement(Connection con, String sql, String keyName) 
+			throws SQLException {
+		return con.prepareStatement(sql, new String[] {keyName});
+	}
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public String getSequenceNextValSql(String sequenceName) {
+		return "SELECT " + sequenceName + ".NEXTVAL FROM DUAL";
+	}
+	
+	/**
+	 * Oracle allows at most 999 columns in all INTO clauses of INSERT ALL
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public int getMaxParameterCount() {
+		return 999;
+	}
+	
+	/**
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public int getMaxStatementBytes() {
+		return 4 * 1024 * 1024;
+	}
+	
+	/**
+	 * <pre>
+	 * EXPLAIN PLAN into the PLAN_TABLE, then read it by DBMS_XPLAN.DISPLAY.
+	 * EXPLAIN PLAN does not accept the binded values, so the placeholders are 
+	 * renamed to :1, :2 ... and the plan is the one of the unknown values.
+	 * </pre>
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public List<String> explain(Connection con, String sql, Object[] args) throws SQLException {
+		final String stmtId = "HISQL_" + explainSeq.incrementAndGet();
+		Statement stmt = con.createStatement();
+		try {
+			stmt.execute("EXPLAIN PLAN SET STATEMENT_ID = '" + stmtId + "' FOR " 
+					+ toNamedPlaceholders(sql));
+		} finally {
+			stmt.close();
+		}
+		PreparedStatement ps = con.prepareStatement(
+				"SELECT PLAN_TABLE_OUTPUT FROM TABLE(DBMS_XPLAN.DISPLAY(NULL, ?, 'TYPICAL'))");
+		ResultSet rs = null;
+		try {
+			ps.setString(1, stmtId);
+			rs = ps.executeQuery();
+			List<String> lines = new ArrayList<String>();
+			while (rs.next()) {
+				lines.add(rs.getString(1));
+			}
+			return lines;
+		} finally {
+			try {
+				if (rs != null) rs.close();
+			} finally {
+				ps.close();
+			}
+		}
+	}
+	
+	/**
+	 * 例如："SELECT * FROM t WHERE a=? AND b='?'" => "SELECT * FROM t WHERE a=:1 AND b='?'"
+	 */
+	static String toNamedPlaceholders(String sql) {
+		StringBuilder sb = new StringBuilder(sql.length() + 16);
+		boolean quoted = false;
+		int index = 0;
+		for (int i = 0; i < sql.length(); i++) {
+			char ch = sql.charAt(i);
+			if (ch == '\'') {
+				quoted = !quoted;
+			}
+			if (ch == '?' && !quoted) {
+				sb.append(':').append(++index);
+			} else {
+				sb.append(ch);
+			}
+		}
+		return sb.toString();
+	}
 }
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * <pre>
+ * The binder of one variable of the PreparedStatement, chosen once per entity
+ * column by {@link DbAdapter#getParameterBinder(Class)} from the field type.
+ *
+ * The values are bound by the typed setters (setLong, setInt, setString,
+ * setTimestamp ...) and the nulls by setNull with the SQL type of the field,
+ * so the driver need not inspect the type of every value as in setObject.
+ * The binders are stateless and shared by all threads.
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+public abstract class ParameterBinder {
+	private final int sqlType;
+
+	/**
+	 * @param	sqlType - the type of {@link java.sql.Types} for the null value
+	 */
+	protected ParameterBinder(int sqlType) {
+		this.sqlType = sqlType;
+	}
+
+	/**
+	 * Bind the value, which is null or the value of the field type
+	 *
+	 * @param	index - the index of the variable, from 1
+	 * @author  ZHANG.XL
+	 */
+	public void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+		if (value == null) {
+			ps.setNull(index, sqlType);
+		} else {
+			bindValue(ps, index, value);
+		}
+	}
+
+	/**
+	 * Bind the value not null
+	 *
+	 * @author  ZHANG.XL
+	 */
+	protected abstract void bindValue(PreparedStatement ps, int index, Object value)
+			throws SQLException;
+
+	/** the type of {@link java.sql.Types} for the null value */
+	public int getSqlType() {
+		return sqlType;
+	}
+
+	/**
+	 * Get the standard binder of the field type
+	 *
+	 * @return	the binder, or null if the type has no typed setter (e.g. Object, enum)
+	 * @author  ZHANG.XL
+	 */
+	public static ParameterBinder forType(Class<?> type) {
+		if (type == Long.class || type == Long.TYPE) {
+			return LONG;
+		} else if (type == Integer.class || type == Integer.TYPE) {
+			return INT;
+		} else if (type == String.class) {
+			return STRING;
+		} else if (type == Double.class || type == Double.TYPE) {
+			return DOUBLE;
+		} else if (type == java.util.Date.class) {
+			return DATE;
+		} else if (type == Timestamp.class) {
+			return SQL_TIMESTAMP;
+		} else if (type == BigDecimal.class) {
+			return BIG_DECIMAL;
+		} else if (type == Boolean.class || type == Boolean.TYPE) {
+			return BOOLEAN;
+		} else if (type == Float.class || type == Float.TYPE) {
+			return FLOAT;
+		} else if (type == Short.class || type == Short.TYPE) {
+			return SHORT;
+		} else if (type == Byte.class || type == Byte.TYPE) {
+			return BYTE;
+		} else if (type == BigInteger.class) {
+			return BIG_INTEGER;
+		} else if (type == java.sql.Date.class) {
+			return SQL_DATE;
+		} else if (type == java.sql.Time.class) {
+			return SQL_TIME;
+		} else if (type == LocalDateTime.class) {
+			return LOCAL_DATE_TIME;
+		} else if (type == LocalDate.class) {
+			return LOCAL_DATE;
+		} else if (type == LocalTime.class) {
+			return LOCAL_TIME;
+		} else if (type == Instant.class) {
+			return INSTANT;
+		} else if (type == Character.class || type == Character.TYPE) {
+			return CHARACTER;
+		} else if (type == byte[].class) {
+			return BYTES;
+		}
+		return null;
+	}
+
+	/**
+	 * Get the binder calling setObject with the value converted by
+	 * {@link DbAdapter#convertArg(Object)}, for the types without typed setter
+	 *
+	 * @author  ZHANG.XL
+	 */
+	public static ParameterBinder forObject(final DbAdapter dbAdapter) {
+		return new ParameterBinder(Types.NULL) {
+			@Override
+			public void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+				ps.setObject(index, dbAdapter.convertArg(value));
+			}
+
+			@Override
+			protected void bindValue(PreparedStatement ps, int index, Object value)
+					throws SQLException {
+				ps.setObject(index, dbAdapter.convertArg(value));
+			}
+		};
+	}
+
+	public static final ParameterBinder LONG = new ParameterBinder(Types.BIGINT) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+			ps.setLong(index, ((Number) value).longValue());
+		}
+	};
+
+	public static final ParameterBinder INT = new ParameterBinder(Types.INTEGER) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+			ps.setInt(index, ((Number) value).intValue());
+		}
+	};
+
+	public static final ParameterBinder SHORT = new ParameterBinder(Types.SMALLINT) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+			ps.setShort(index, ((Number) value).shortValue());
+		}
+	};
+
+	public static final ParameterBinder BYTE = new ParameterBinder(Types.TINYINT) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+			ps.setByte(index, ((Number) value).byteValue());
+		}
+	};
+
+	public static final ParameterBinder DOUBLE = new ParameterBinder(Types.DOUBLE) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+			ps.setDouble(index, ((Number) value).doubleValue());
+		}
+	};
+
+	public static final ParameterBinder FLOAT = new ParameterBinder(Types.REAL) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+			ps.setFloat(index, ((Number) value).floatValue());
+		}
+	};
+
+	public static final ParameterBinder BOOLEAN = new ParameterBinder(Types.BOOLEAN) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+			ps.setBoolean(index, ((Boolean) value).booleanValue());
+		}
+	};
+
+	public static final ParameterBinder STRING = new ParameterBinder(Types.VARCHAR) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+			ps.setString(index, (String) value);
+		}
+	};
+
+	public static final ParameterBinder CHARACTER = new ParameterBinder(Types.CHAR) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+			ps.setString(index, value.toString());
+		}
+	};
+
+	public static final ParameterBinder BIG_DECIMAL = new ParameterBinder(Types.DECIMAL) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+			ps.setBigDecimal(index, (BigDecimal) value);
+		}
+	};
+
+	public static final ParameterBinder BIG_INTEGER = new ParameterBinder(Types.DECIMAL) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+			ps.setBigDecimal(index, new BigDecimal((BigInteger) value));
+		}
+	};
+
+	/**
+	 * The java.util.Date field may hold the sub-classes of java.sql, which are bound as they are
+	 */
+	public static final ParameterBinder DATE = new ParameterBinder(Types.TIMESTAMP) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+			if (value instanceof Timestamp) {
+				ps.setTimestamp(index, (Timestamp) value);
+			} else if (value instanceof java.sql.Date) {
+				ps.setDate(index, (java.sql.Date) value);
+			} else if (value instanceof java.sql.Time) {
+				ps.setTime(index, (java.sql.Time) value);
+			} else {
+				ps.setTimestamp(index, new Timestamp(((java.util.Date) value).getTime()));
+			}
+		}
+	};
+
+	public static final ParameterBinder SQL_TIMESTAMP = new ParameterBinder(Types.TIMESTAMP) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+			ps.setTimestamp(index, (Timestamp) value);
+		}
+	};
+
+	public static final ParameterBinder SQL_DATE = new ParameterBinder(Types.DATE) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+			ps.setDate(index, (java.sql.Date) value);
+		}
+	};
+
+	public static final ParameterBinder SQL_TIME = new ParameterBinder(Types.TIME) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+			ps.setTime(index, (java.sql.Time) value);
+		}
+	};
+
+	public static final ParameterBinder LOCAL_DATE_TIME = new ParameterBinder(Types.TIMESTAMP) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+			ps.setTimestamp(index, Timestamp.valueOf((LocalDateTime) value));
+		}
+	};
+
+	public static final ParameterBinder LOCAL_DATE = new ParameterBinder(Types.DATE) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+			ps.setDate(index, java.sql.Date.valueOf((LocalDate) value));
+		}
+	};
+
+	public static final ParameterBinder LOCAL_TIME = new ParameterBinder(Types.TIME) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+			ps.setTime(index, java.sql.Time.valueOf((LocalTime) value));
+		}
+	};
+
+	public static final ParameterBinder INSTANT = new ParameterBinder(Types.TIMESTAMP) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+			ps.setTimestamp(index, Timestamp.from((Instant) value));
+		}
+	};
+
+	public static final ParameterBinder BYTES = new ParameterBinder(Types.VARBINARY) {
+		@Override
+		protected void bindValue(PreparedStatement ps, int index, Object value) throws SQLException {
+			ps.setBytes(index, (byte[]) value);
+		}
+	};
+}
@@ -0,0 +1,511 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.io.Closeable;
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sql.DataSource;
+
+import org.hisql.exception.SqlRuntimeException;
+
+/**
+ * <pre>
+ * The connection pool over a {@link DataSource} or a DriverManager url.
+ *
+ * Borrowing is lock-free: the thread first tries the connections it returned
+ * lately (thread-local affinity), then takes any idle one from the shared list
+ * by CAS, then creates a new one if the pool is below the max size, or else
+ * waits for a connection handed off by the releasing threads until the borrow
+ * timeout.
+ *
+ * A housekeeping thread closes the connections idle longer than the idle
+ * timeout (keeping the min size), fills the pool up to the min size, and
+ * reports the connections borrowed longer than the leak detection threshold.
+ * A connection not used lately is validated by {@link Connection#isValid(int)}
+ * before it is handed out.
+ *
+ * Example:
+ *     PooledConnectionManager conMng = new PooledConnectionManager(url, user, password);
+ *     conMng.setMaxPoolSize(20);
+ *     HiSqlClient client = new HiSqlClientImpl(DbVersion.Mysql, conMng);
+ *     ...
+ *     conMng.close();
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+public class PooledConnectionManager implements ObservableConnectionManager, Closeable {
+	private static final int STATE_NOT_IN_USE = 0;
+	private static final int STATE_IN_USE = 1;
+	private static final int STATE_REMOVED = -1;
+	private static final int STATE_RESERVED = -2;
+
+	/** the connection used within this time is handed out without validation */
+	private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+	private static final int MAX_THREAD_LOCAL_ENTRIES = 16;
+
+	private final DataSource dataSource;
+	private final String url;
+	private final String user;
+	private final String password;
+
+	private int minPoolSize = 2;
+	private int maxPoolSize = 10;
+	private long borrowTimeoutMillis = 30000;
+	private long idleTimeoutMillis = 600000;
+	private int validationTimeoutSeconds = 3;
+	private long leakDetectionThresholdMillis = 0;
+	private long housekeepingPeriodMillis = 30000;
+
+	private final CopyOnWriteArrayList<PoolEntry> sharedList = new CopyOnWriteArrayList<PoolEntry>();
+	private final ConcurrentHashMap<Connection, PoolEntry> borrowedMap =
+			new ConcurrentHashMap<Connection, PoolEntry>();
+	private final ThreadLocal<List<WeakReference<PoolEntry>>> threadList =
+			new ThreadLocal<List<WeakReference<PoolEntry>>>() {
+		@Override
+		protected List<WeakReference<PoolEntry>> initialValue() {
+			return new ArrayList<WeakReference<PoolEntry>>(MAX_THREAD_LOCAL_ENTRIES);
+		}
+	};
+	private final SynchronousQueue<PoolEntry> handoffQueue = new SynchronousQueue<PoolEntry>(true);
+	private final AtomicInteger waiters = new AtomicInteger();
+	private final AtomicInteger totalCount = new AtomicInteger();
+	private final CopyOnWriteArrayList<ConnectionListener> listeners =
+			new CopyOnWriteArrayList<ConnectionListener>();
+
+	private volatile ScheduledExecutorService housekeeper;
+	private volatile boolean closed = false;
+
+	public PooledConnectionManager(DataSource dataSource) {
+		if (dataSource == null) {
+			throw new IllegalArgumentException("data source cannot be null");
+		}
+		this.dataSource = dataSource;
+		this.url = null;
+		this.user = null;
+		this.password = null;
+	}
+
+	public PooledConnectionManager(String url, String user, String password) {
+		if (url == null) {
+			throw new IllegalArgumentException("url cannot be null");
+		}
+		this.dataSource = null;
+		this.url = url;
+		this.user = user;
+		this.password = password;
+	}
+
+	/**
+	 * Borrow a connection from the pool
+	 *
+	 * @throws	SqlRuntimeException - if the pool is closed, or no connection is
+	 * 			available within the borrow timeout
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public Connection getConnection() {
+		if (closed) {
+			throw new SqlRuntimeException("the connection pool is closed");
+		}
+		startHousekeeping();
+
+		final long startNanos = System.nanoTime();
+		final long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+		try {
+			while (true) {
+				long remainingNanos = timeoutNanos - (System.nanoTime() - startNanos);
+				PoolEntry entry = borrow(remainingNanos);
+				if (entry == null) {
+					throw new SqlRuntimeException(String.format(
+						"no connection available in %d ms (total=%d, max=%d)",
+						borrowTimeoutMillis, totalCount.get(), maxPoolSize));
+				}
+				if (System.nanoTime() - entry.lastAccessNanos < VALIDATION_BYPASS_NANOS
+						|| isValid(entry.con)) {
+					entry.borrowedNanos = System.nanoTime();
+					entry.leakReported = false;
+					entry.borrowTrace = (leakDetectionThresholdMillis > 0)
+							? new Exception("The connection was borrowed here") : null;
+					borrowedMap.put(entry.con, entry);
+					return entry.con;
+				}
+				discard(entry);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SqlRuntimeException(e);
+		} catch (SQLException e) {
+			throw new SqlRuntimeException(e);
+		}
+	}
+
+	/**
+	 * Return the connection to the pool, the uncommitted transaction is rolled back
+	 *
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public void releaseConnection(Connection con) {
+		if (con == null) return;
+		PoolEntry entry = borrowedMap.remove(con);
+		if (entry == null) {
+			return;
+		}
+		entry.borrowTrace = null;
+		try {
+			if (closed || con.isClosed()) {
+				discard(entry);
+				return;
+			}
+			if (!con.getAutoCommit()) {
+				con.rollback();
+				con.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			discard(entry);
+			return;
+		}
+		entry.lastAccessNanos = System.nanoTime();
+		requite(entry);
+	}
+
+	/**
+	 * Close all connections and stop the housekeeping thread
+	 *
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public void close() {
+		if (closed) return;
+		closed = true;
+		ScheduledExecutorService executor = this.housekeeper;
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		for (PoolEntry entry : sharedList) {
+			if (entry.state.compareAndSet(STATE_NOT_IN_USE, STATE_RESERVED)) {
+				discard(entry);
+			}
+		}
+	}
+
+	@Override
+	public void addConnectionListener(ConnectionListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void removeConnectionListener(ConnectionListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Get an entry in state IN_USE, or null if timeout
+	 */
+	private PoolEntry borrow(long timeoutNanos) throws InterruptedException, SQLException {
+		List<WeakReference<PoolEntry>> localList = threadList.get();
+		for (int i = localList.size() - 1; i >= 0; i--) {
+			PoolEntry entry = localList.remove(i).get();
+			if (entry != null && entry.state.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
+				return entry;
+			}
+		}
+
+		for (PoolEntry entry : sharedList) {
+			if (entry.state.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
+				return entry;
+			}
+		}
+
+		PoolEntry newEntry = tryCreateEntry(STATE_IN_USE);
+		if (newEntry != null) {
+			return newEntry;
+		}
+
+		final long startNanos = System.nanoTime();
+		long remainingNanos = timeoutNanos;
+		while (remainingNanos > 0) {
+			PoolEntry entry = awaitEntry(remainingNanos);
+			if (entry == null) {
+				newEntry = tryCreateEntry(STATE_IN_USE);
+				if (newEntry != null) return newEntry;
+			} else if (entry.state.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
+				return entry;
+			}
+			remainingNanos = timeoutNanos - (System.nanoTime() - startNanos);
+		}
+		return null;
+	}
+
+	/**
+	 * Wait for an entry handed off by {@link #requite(PoolEntry)}, or null if timeout.
+	 * The thread is counted in waiters only here, so the releasing threads never
+	 * spin for the threads creating a connection. The entry released before the
+	 * count is increased is found in the shared list, the later ones are handed off.
+	 */
+	private PoolEntry awaitEntry(long timeoutNanos) throws InterruptedException {
+		waiters.incrementAndGet();
+		try {
+			for (PoolEntry entry : sharedList) {
+				if (entry.state.get() == STATE_NOT_IN_USE) {
+					return entry;
+				}
+			}
+			return handoffQueue.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+		} finally {
+			waiters.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Make the entry available again, handing it off to a waiting thread if any
+	 */
+	private void requite(PoolEntry entry) {
+		entry.state.set(STATE_NOT_IN_USE);
+		for (int i = 0; waiters.get() > 0; i++) {
+			if (entry.state.get() != STATE_NOT_IN_USE || handoffQueue.offer(entry)) {
+				return;
+			} else if ((i & 0xff) == 0xff) {
+				LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+			} else {
+				Thread.yield();
+			}
+		}
+		List<WeakReference<PoolEntry>> localList = threadList.get();
+		if (localList.size() < MAX_THREAD_LOCAL_ENTRIES) {
+			localList.add(new WeakReference<PoolEntry>(entry));
+		}
+	}
+
+	/**
+	 * Create a new entry in the state if the pool is below the max size,
+	 * otherwise return null
+	 */
+	private PoolEntry tryCreateEntry(int state) throws SQLException {
+		while (true) {
+			int total = totalCount.get();
+			if (total >= maxPoolSize || closed) return null;
+			if (totalCount.compareAndSet(total, total + 1)) break;
+		}
+		try {
+			PoolEntry entry = new PoolEntry(createConnection(), state);
+			sharedList.add(entry);
+			return entry;
+		} catch (SQLException e) {
+			totalCount.decrementAndGet();
+			throw e;
+		} catch (RuntimeException e) {
+			totalCount.decrementAndGet();
+			throw e;
+		}
+	}
+
+	private Connection createConnection() throws SQLException {
+		if (dataSource != null) {
+			return dataSource.getConnection();
+		} else if (user == null) {
+			return DriverManager.getConnection(url);
+		} else {
+			return DriverManager.getConnection(url, user, password);
+		}
+	}
+
+	private boolean isValid(Connection con) {
+		try {
+			return con.isValid(validationTimeoutSeconds);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Remove the entry from the pool and close its connection
+	 */
+	private void discard(PoolEntry entry) {
+		entry.state.set(STATE_REMOVED);
+		if (sharedList.remove(entry)) {
+			totalCount.decrementAndGet();
+		}
+		borrowedMap.remove(entry.con);
+		for (ConnectionListener listener : listeners) {
+			listener.connectionDiscarded(entry.con);
+		}
+		try {
+			entry.con.close();
+		} catch (SQLException e) {
+			// the connection is discarded
+		}
+	}
+
+	private void startHousekeeping() {
+		if (housekeeper != null) return;
+		synchronized (this) {
+			if (housekeeper != null || closed) return;
+			ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+					new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "hisql-pool-housekeeper");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					houseKeep();
+				}
+			}, housekeepingPeriodMillis, housekeepingPeriodMillis, TimeUnit.MILLISECONDS);
+			this.housekeeper = executor;
+		}
+	}
+
+	/**
+	 * Evict the idle connections, fill the pool to the min size, and detect the leaks
+	 */
+	void houseKeep() {
+		final long nowNanos = System.nanoTime();
+		final long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+		for (PoolEntry entry : sharedList) {
+			if (totalCount.get() <= minPoolSize) break;
+			if (nowNanos - entry.lastAccessNanos > idleTimeoutNanos
+					&& entry.state.compareAndSet(STATE_NOT_IN_USE, STATE_RESERVED)) {
+				discard(entry);
+			}
+		}
+
+		try {
+			while (totalCount.get() < minPoolSize && !closed) {
+				PoolEntry entry = tryCreateEntry(STATE_NOT_IN_USE);
+				if (entry == null) break;
+			}
+		} catch (SQLException e) {
+			System.out.println("Failed to fill the connection pool: " + e.getMessage());
+		}
+
+		if (leakDetectionThresholdMillis > 0) {
+			final long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(leakDetectionThresholdMillis);
+			for (PoolEntry entry : borrowedMap.values()) {
+				Exception trace = entry.borrowTrace;
+				if (!entry.leakReported && trace != null
+						&& nowNanos - entry.borrowedNanos > thresholdNanos) {
+					entry.leakReported = true;
+					System.out.println(String.format(
+						"Connection leak detection: %s is not released in %d ms",
+						entry.con, leakDetectionThresholdMillis));
+					trace.printStackTrace(System.out);
+				}
+			}
+		}
+	}
+
+	/** the count of all connections in the pool */
+	public int getTotalConnections() {
+		return totalCount.get();
+	}
+
+	/** the count of borrowed connections */
+	public int getActiveConnections() {
+		return borrowedMap.size();
+	}
+
+	/** the count of idle connections */
+	public int getIdleConnections() {
+		int idleCnt = 0;
+		for (PoolEntry entry : sharedList) {
+			if (entry.state.get() == STATE_NOT_IN_USE) idleCnt++;
+		}
+		return idleCnt;
+	}
+
+	public int getMinPoolSize() {
+		return minPoolSize;
+	}
+
+	/** the count of connections kept in the pool even if idle, default 2 */
+	public void setMinPoolSize(int minPoolSize) {
+		if (minPoolSize < 0) {
+			throw new IllegalArgumentException("min pool size cannot be negative: " + minPoolSize);
+		}
+		this.minPoolSize = minPoolSize;
+	}
+
+	public int getMaxPoolSize() {
+		return maxPoolSize;
+	}
+
+	/** the max count of connections in the pool, default 10 */
+	public void setMaxPoolSize(int maxPoolSize) {
+		if (maxPoolSize < 1) {
+			throw new IllegalArgumentException("max pool size must be positive: " + maxPoolSize);
+		}
+		this.maxPoolSize = maxPoolSize;
+	}
+
+	/** the max time waiting for a connection, default 30 seconds */
+	public void setBorrowTimeout(long borrowTimeoutMillis) {
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+	}
+
+	/** the idle time after which the connection above the min size is closed, default 10 minutes */
+	public void setIdleTimeout(long idleTimeoutMillis) {
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	/** the timeout of {@link Connection#isValid(int)}, default 3 seconds */
+	public void setValidationTimeout(int validationTimeoutSeconds) {
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+	}
+
+	/**
+	 * the borrowed time after which the connection is reported as leaked
+	 * with the stack of the borrower, default 0 (disabled)
+	 */
+	public void setLeakDetectionThreshold(long leakDetectionThresholdMillis) {
+		this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+	}
+
+	/** the period of housekeeping, default 30 seconds, it must be set before the first borrow */
+	public void setHousekeepingPeriod(long housekeepingPeriodMillis) {
+		if (housekeepingPeriodMillis < 1) {
+			throw new IllegalArgumentException("housekeeping period must be positive: "
+					+ housekeepingPeriodMillis);
+		}
+		this.housekeepingPeriodMillis = housekeepingPeriodMillis;
+	}
+
+	/**
+	 * One pooled connection
+	 */
+	private static final class PoolEntry {
+		final Connection con;
+		final AtomicInteger state;
+		volatile long lastAccessNanos;
+		volatile long borrowedNanos;
+		volatile Exception borrowTrace;
+		volatile boolean leakReported;
+
+		PoolEntry(Connection con, int state) {
+			this.con = con;
+			this.state = new AtomicInteger(state);
+			this.lastAccessNanos = System.nanoTime();
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.hisql.exception.SqlRuntimeException;
+
+/**
+ * <pre>
+ * The forward-only cursor over a streaming query, which maps one row per {@link #next()}.
+ *
+ * The connection is held from {@link ConnectionManager} until the cursor is 
+ * exhausted or closed, so the caller must close it (e.g. try-with-resources)
+ * if the rows are not iterated to the end. The execution is reported to the
+ * {@link SqlExecutionListener} when the cursor is closed, with the time of
+ * iterating the rows as the mapping time.
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+public class QueryCursor<T> implements Iterator<T>, Closeable {
+	private final ConnectionManager conMng;
+	private final Class<T> returnClz;
+	private final RowMapper<T> rowMapper;
+	private final CloseListener closeListener;
+	private Connection con;
+	private PreparedStatement ps;
+	private ResultSet rs;
+	private boolean fetched = false;
+	private boolean hasNext = false;
+	private boolean closed = false;
+	private int rowCnt = 0;
+	private Throwable error = null;
+	
+	/**
+	 * @param	closeListener - notified when the cursor is closed, or null
+	 */
+	QueryCursor(ConnectionManager conMng, Connection con, PreparedStatement ps, 
+			ResultSet rs, Class<T> returnClz, RowMapper<T> rowMapper, CloseListener closeListener) {
+		this.conMng = conMng;
+		this.con = con;
+		this.ps = ps;
+		this.rs = rs;
+		this.returnClz = returnClz;
+		this.rowMapper = rowMapper;
+		this.closeListener = closeListener;
+	}
+	
+	/**
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public boolean hasNext() {
+		if (closed) return false;
+		if (!fetched) {
+			try {
+				hasNext = rs.next();
+				fetched = true;
+			} catch (SQLException e) {
+				error = e;
+				close();
+				throw new SqlRuntimeException(e);
+			}
+			if (!hasNext) {
+				close();
+			}
+		}
+		return hasNext;
+	}
+	
+	/**
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		fetched = false;
+		try {
+			T row = (rowMapper == null) 
+					? DbUtil.castObject(returnClz, rs.getObject(1)) : rowMapper.mapRow(rs);
+			rowCnt++;
+			return row;
+		} catch (Exception e) {
+			error = e;
+			close();
+			throw new SqlRuntimeException(e);
+		}
+	}
+	
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("remove");
+	}
+	
+	/**
+	 * Close the result set and statement, and release the connection
+	 *
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	@Override
+	public void close() {
+		if (closed) return;
+		closed = true;
+		try {
+			if (rs != null) rs.close();
+			if (ps != null) ps.close();
+		} catch (SQLException e) {
+			throw new SqlRuntimeException(e);
+		} finally {
+			rs = null;
+			ps = null;
+			conMng.releaseConnection(con);
+			con = null;
+			if (closeListener != null) {
+				closeListener.cursorClosed(rowCnt, error);
+			}
+		}
+	}
+	
+	/**
+	 * The callback on closing the cursor
+	 */
+	interface CloseListener {
+		/**
+		 * @param	rowCnt - the count of rows iterated
+		 * @param	error - the exception closing the cursor, or null
+		 */
+		void cursorClosed(int rowCnt, Throwable error);
+	}
+}
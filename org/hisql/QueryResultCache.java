@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <pre>
+ * The cache of query results, keyed by normalized SQL + arguments +
+ * result type + paging, and bounded by the total count of cached rows.
+ *
+ * Every table has a version, which is increased when the table is written.
+ * The entry records the versions of its tables before querying, and it is
+ * stale once any of them changes, so the writes invalidate the entries
+ * without scanning the cache. The write to unknown tables increases the
+ * global version, which invalidates all entries. The entry without tables
+ * records the write version, which is increased by every write, so it is
+ * stale after any write.
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+final class QueryResultCache {
+	private static final ConcurrentLruCache.Weigher<Object, Entry> ROW_WEIGHER =
+			new ConcurrentLruCache.Weigher<Object, Entry>() {
+		@Override
+		public int weigh(Object key, Entry entry) {
+			return entry.rows.size() + 1;
+		}
+	};
+	
+	private final ConcurrentLruCache<Key, Entry> cache;
+	private final ConcurrentMap<String, AtomicLong> tableVersions =
+			new ConcurrentHashMap<String, AtomicLong>();
+	private final AtomicLong globalVersion = new AtomicLong();
+	/** increased by all writes, for the entries without tables */
+	private final AtomicLong writeVersion = new AtomicLong();
+	/** the stale entries are misses, so they are counted here rather than by the LRU cache */
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	
+	/**
+	 * @param	maxRows - the max total count of cached rows
+	 * @param	ttlSeconds - the seconds a result stays in the cache, 0 means until evicted
+	 */
+	QueryResultCache(long maxRows, int ttlSeconds) {
+		this.cache = new ConcurrentLruCache<Key, Entry>(maxRows, ttlSeconds * 1000L, ROW_WEIGHER);
+	}
+	
+	/**
+	 * @return	the cached rows, or null if not found or stale
+	 * @author  ZHANG.XL
+	 */
+	@SuppressWarnings("unchecked")
+	<T> List<T> get(Key key) {
+		Entry entry = cache.get(key);
+		if (entry == null) {
+			missCount.incrementAndGet();
+			return null;
+		}
+		if (!entry.isFresh()) {
+			cache.remove(key);
+			missCount.incrementAndGet();
+			return null;
+		}
+		hitCount.incrementAndGet();
+		return (List<T>) entry.rows;
+	}
+	
+	/**
+	 * Get the versions of the tables before querying, and pass them to
+	 * {@link #put(Key, List, Versions)}. Without the tables, the result 
+	 * depends on the write version, so any write makes it stale.
+	 */
+	Versions getVersions(String[] tables) {
+		if (tables == null || tables.length == 0) {
+			return new Versions(globalVersion.get(), new AtomicLong[]{writeVersion}, 
+					new long[]{writeVersion.get()});
+		}
+		AtomicLong[] counters = new AtomicLong[tables.length];
+		long[] versions = new long[tables.length];
+		for (int i = 0; i < tables.length; i++) {
+			counters[i] = getVersion(tables[i]);
+			versions[i] = counters[i].get();
+		}
+		return new Versions(globalVersion.get(), counters, versions);
+	}
+	
+	/**
+	 * Cache the unmodifiable view of the rows
+	 *
+	 * @return	the rows to return to the caller
+	 * @author  ZHANG.XL
+	 */
+	<T> List<T> put(Key key, List<T> rows, Versions versions) {
+		List<T> result = Collections.unmodifiableList(rows);
+		if (rows.size() < cache.getMaxSize()) {
+			cache.put(key, new Entry(result, versions));
+		}
+		return result;
+	}
+	
+	/**
+	 * Invalidate the results of the tables, null invalidates all results
+	 *
+	 * @author  ZHANG.XL
+	 */
+	void invalidate(String[] tables) {
+		writeVersion.incrementAndGet();
+		if (tables == null || tables.length == 0) {
+			globalVersion.incrementAndGet();
+			return;
+		}
+		for (String table : tables) {
+			getVersion(table).incrementAndGet();
+		}
+	}
+	
+	CacheStats getStats() {
+		CacheStats stats = cache.getStats();
+		return new CacheStats(hitCount.get(), missCount.get(), 
+				stats.getEvictionCount(), stats.getSize());
+	}
+	
+	private AtomicLong getVersion(String table) {
+		final String name = table.trim().toLowerCase(Locale.ENGLISH);
+		AtomicLong version = tableVersions.get(name);
+		if (version == null) {
+			version = new AtomicLong();
+			AtomicLong existing = tableVersions.putIfAbsent(name, version);
+			if (existing != null) {
+				version = existing;
+			}
+		}
+		return version;
+	}
+	
+	/**
+	 * <pre>
+	 * Collapse the whitespaces out of the quoted literals, so that the same
+	 * SQL formatted differently hits the same entry.
+	 *
+	 * 例如："SELECT *\n  FROM t" => "SELECT * FROM t"
+	 * </pre>
+	 *
+	 * @author  ZHANG.XL
+	 */
+	static String normalizeSql(String sql) {
+		StringBuilder sb = new StringBuilder(sql.length());
+		boolean quoted = false;
+		boolean space = false;
+		for (int i = 0; i < sql.length(); i++) {
+			char ch = sql.charAt(i);
+			if (!quoted && Character.isWhitespace(ch)) {
+				space = true;
+				continue;
+			}
+			if (space && sb.length() > 0) {
+				sb.append(' ');
+			}
+			space = false;
+			if (ch == '\'') {
+				quoted = !quoted;
+			}
+			sb.append(ch);
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * The table versions read before querying
+	 */
+	final class Versions {
+		private final long global;
+		private final AtomicLong[] counters;
+		private final long[] versions;
+		
+		Versions(long global, AtomicLong[] counters, long[] versions) {
+			this.global = global;
+			this.counters = counters;
+			this.versions = versions;
+		}
+		
+		boolean isFresh() {
+			if (global != globalVersion.get()) {
+				return false;
+			}
+			for (int i = 0; i < counters.length; i++) {
+				if (counters[i].get() != versions[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+	
+	private static final class Entry {
+		final List<?> rows;
+		final Versions versions;
+		
+		Entry(List<?> rows, Versions versions) {
+			this.rows = rows;
+			this.versions = versions;
+		}
+		
+		boolean isFresh() {
+			return versions.isFresh();
+		}
+	}
+	
+	/**
+	 * The key of one query: the arguments are compared by value,
+	 * so they must not be changed after querying
+	 */
+	static final class Key {
+		private final String sql;
+		private final Object[] args;
+		private final Class<?> returnClz;
+		private final Integer startRow;
+		private final Integer records;
+		private final int hash;
+		
+		Key(String sql, Object[] args, Class<?> returnClz, Integer startRow, Integer records) {
+			this.sql = normalizeSql(sql);
+			this.args = (args != null) ? args.clone() : new Object[0];
+			this.returnClz = returnClz;
+			this.startRow = startRow;
+			this.records = records;
+			int h = this.sql.hashCode();
+			h = 31 * h + Arrays.deepHashCode(this.args);
+			h = 31 * h + returnClz.hashCode();
+			h = 31 * h + (startRow != null ? startRow.hashCode() : 0);
+			h = 31 * h + (records != null ? records.hashCode() : 0);
+			this.hash = h;
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Key)) return false;
+			Key other = (Key) obj;
+			return hash == other.hash && returnClz == other.returnClz
+					&& sql.equals(other.sql) && Arrays.deepEquals(args, other.args)
+					&& (startRow == null ? other.startRow == null : startRow.equals(other.startRow))
+					&& (records == null ? other.records == null : records.equals(other.records));
+		}
+	}
+}
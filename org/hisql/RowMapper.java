@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <pre>
+ * The mapping plan from the columns of one result set to the fields of the entity.
+ *
+ * The plan is resolved once by the column labels of {@link ResultSetMetaData}:
+ * a column matches the field whose @{@link org.hisql.annotation.DbField} name
+ * or field name equals the column label ignoring case, and is read by the
+ * {@link ColumnReader} of the field type. Then every row is populated straight
+ * from the {@link ResultSet} by the column index. The plan is reused only for
+ * the result set of the same column labels and types in the same order.
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+final class RowMapper<T> {
+	private final EntityMetadata metadata;
+	private final String[] columnLabels;
+	private final int[] columnTypes;
+	private final int[] columnIndexes;
+	private final ColumnReader[] readers;
+	private final boolean changeTracked;
+
+	private RowMapper(EntityMetadata metadata, String[] columnLabels, int[] columnTypes, 
+			List<Integer> indexList, List<ColumnReader> readerList) {
+		this.metadata = metadata;
+		this.columnLabels = columnLabels;
+		this.columnTypes = columnTypes;
+		int size = indexList.size();
+		this.columnIndexes = new int[size];
+		this.readers = readerList.toArray(new ColumnReader[size]);
+		this.changeTracked = metadata.isChangeTracked();
+		for (int i = 0; i < size; i++) {
+			columnIndexes[i] = indexList.get(i);
+		}
+	}
+
+	/**
+	 * Resolve the mapping plan for the result set
+	 *
+	 * @author  ZHANG.XL
+	 */
+	static <T> RowMapper<T> create(Class<T> entityClz, ResultSetMetaData rsmd) 
+			throws SQLException {
+		EntityMetadata metadata = EntityMetadata.of(entityClz);
+		int columnCnt = rsmd.getColumnCount();
+		List<Integer> indexList = new ArrayList<Integer>(columnCnt);
+		List<ColumnReader> readerList = new ArrayList<ColumnReader>(columnCnt);
+		String[] columnLabels = new String[columnCnt];
+		int[] columnTypes = new int[columnCnt];
+		for (int i = 1; i <= columnCnt; i++) {
+			columnLabels[i - 1] = rsmd.getColumnLabel(i);
+			columnTypes[i - 1] = rsmd.getColumnType(i);
+			FieldAccessor accessor = metadata.getAccessorByColumn(columnLabels[i - 1]);
+			if (accessor == null || accessor.getField().getType().isArray()) continue;
+			indexList.add(i);
+			readerList.add(ColumnReader.create(accessor, columnTypes[i - 1]));
+		}
+		return new RowMapper<T>(metadata, columnLabels, columnTypes, indexList, readerList);
+	}
+
+	/**
+	 * Whether this plan can be reused for the result set, 
+	 * which has the same column labels and types in the same order
+	 */
+	boolean matches(ResultSetMetaData rsmd) throws SQLException {
+		if (rsmd.getColumnCount() != columnLabels.length) {
+			return false;
+		}
+		for (int i = 0; i < columnLabels.length; i++) {
+			if (rsmd.getColumnType(i + 1) != columnTypes[i]
+					|| !columnLabels[i].equals(rsmd.getColumnLabel(i + 1))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Create the entity by the current row of the result set, 
+	 * and keep its snapshot if the class is change tracked
+	 *
+	 * @author  ZHANG.XL
+	 */
+	T mapRow(ResultSet rs) throws Exception {
+		T entity = metadata.newInstance();
+		for (int i = 0; i < columnIndexes.length; i++) {
+			readers[i].read(rs, columnIndexes[i], entity);
+		}
+		if (changeTracked) {
+			metadata.takeSnapshot(entity);
+		}
+		return entity;
+	}
+}
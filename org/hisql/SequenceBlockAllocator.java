@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.hisql.exception.SqlRuntimeException;
+
+/**
+ * <pre>
+ * The allocator of key values from a db sequence in blocks: one NEXTVAL of
+ * the sequence reserves "blockSize" values, which are handed out from memory,
+ * so the inserts need not one round-trip per key.
+ *
+ * The sequence must be created with INCREMENT BY "blockSize", e.g.
+ *     CREATE SEQUENCE seq_order START WITH 1 INCREMENT BY 100
+ * then NEXTVAL 1 reserves 1~100, NEXTVAL 101 reserves 101~200, and so on.
+ * The values not handed out before the client is discarded are skipped.
+ *
+ * The allocator holds no connection and no lock: NEXTVAL is selected by the
+ * client of the inserting thread (so on its transaction connection if any),
+ * and the fetched block replaces the used-up one by compare-and-set. When
+ * two threads fetch at once, the block that loses keeps its first value for
+ * the fetching thread, and the rest of it is skipped.
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+final class SequenceBlockAllocator {
+	private final String nextValSql;
+	private final int blockSize;
+	private final AtomicReference<Block> current = new AtomicReference<Block>();
+
+	/**
+	 * @param	nextValSql - the SQL selecting NEXTVAL of the sequence
+	 * @param	blockSize - the INCREMENT BY of the sequence
+	 * @author  ZHANG.XL
+	 */
+	SequenceBlockAllocator(String nextValSql, int blockSize) {
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("blockSize must be positive: " + blockSize);
+		}
+		this.nextValSql = nextValSql;
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Get the next key value, fetching the next block by the client when this 
+	 * one is used up
+	 *
+	 * @param	client - the client of the caller, whose connection selects NEXTVAL
+	 * @throws	SqlRuntimeException
+	 * @author  ZHANG.XL
+	 */
+	long next(HiSqlClient client) {
+		final Block block = current.get();
+		if (block != null) {
+			long value = block.nextValue.getAndIncrement();
+			if (value < block.end) {
+				return value;
+			}
+		}
+		
+		Long blockStart = client.queryForObject(nextValSql, null, Long.class);
+		if (blockStart == null) {
+			throw new SqlRuntimeException("no value of the sequence: " + nextValSql);
+		}
+		Block fetched = new Block(blockStart.longValue() + 1, blockStart.longValue() + blockSize);
+		current.compareAndSet(block, fetched);
+		return blockStart.longValue();
+	}
+
+	private static final class Block {
+		final AtomicLong nextValue;
+		final long end;
+
+		Block(long nextValue, long end) {
+			this.nextValue = new AtomicLong(nextValue);
+			this.end = end;
+		}
+	}
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <pre>
+ * The listener recording the SQL executions slower than the threshold into
+ * a bounded ring buffer, which keeps the latest slow queries only.
+ *
+ * The fast executions return after one comparison. The slow ones are written
+ * to the buffer without locks: the writer claims the next sequence and stores
+ * the entry into its slot, the readers skip the slots overwritten meanwhile.
+ *
+ * Optionally the execution plan of the slow statement is captured by
+ * {@link HiSqlClient#explain(String, Object[])}, once per fingerprint within
+ * the plan time-to-live, in the executor if set, or else in the thread of
+ * the slow execution.
+ *
+ * Example:
+ *     SlowQueryLog slowLog = new SlowQueryLog(200, 1024);
+ *     slowLog.setArgsRedacted(true);
+ *     slowLog.setExplainClient(client, executor);
+ *     client.addSqlExecutionListener(slowLog);
+ *     ...
+ *     for (SlowQueryLog.SlowQuery q : slowLog.getSlowQueries()) {
+ *         System.out.println(q);
+ *     }
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+public class SlowQueryLog implements SqlExecutionListener {
+	private static final int MAX_STACK_DEPTH = 12;
+	private static final long PLAN_TTL_MILLIS = 10 * 60 * 1000L;
+	private static final List<String> PLAN_PENDING = Collections.emptyList();
+	
+	private final AtomicReferenceArray<SlowQuery> slots;
+	private final int mask;
+	private final AtomicLong sequence = new AtomicLong();
+	private volatile long thresholdNanos;
+	private volatile boolean argsRedacted = false;
+	private volatile HiSqlClient explainClient;
+	private volatile Executor explainExecutor;
+	/** the plans by fingerprint, so the same statement is explained once */
+	private final ConcurrentLruCache<String, List<String>> planCache =
+			new ConcurrentLruCache<String, List<String>>(256, PLAN_TTL_MILLIS);
+	
+	/**
+	 * @param	thresholdMillis - the executions taking at least this time are recorded
+	 * @param	capacity - the count of latest slow queries kept, rounded up to the power of 2
+	 * @author  ZHANG.XL
+	 */
+	public SlowQueryLog(long thresholdMillis, int capacity) {
+		if (capacity < 1 || capacity > (1 << 20)) {
+			throw new IllegalArgumentException("capacity must be in [1, 1048576]: " + capacity);
+		}
+		setThresholdMillis(thresholdMillis);
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.slots = new AtomicReferenceArray<SlowQuery>(size);
+		this.mask = size - 1;
+	}
+	
+	public long getThresholdMillis() {
+		return thresholdNanos / 1000000L;
+	}
+	
+	public void setThresholdMillis(long thresholdMillis) {
+		if (thresholdMillis < 0) {
+			throw new IllegalArgumentException("threshold cannot be negative: " + thresholdMillis);
+		}
+		this.thresholdNanos = thresholdMillis * 1000000L;
+	}
+	
+	/**
+	 * Record the types of the binded variables instead of their values,
+	 * e.g. for the passwords or the personal data
+	 *
+	 * @author  ZHANG.XL
+	 */
+	public void setArgsRedacted(boolean argsRedacted) {
+		this.argsRedacted = argsRedacted;
+	}
+	
+	/**
+	 * Capture the execution plans of slow queries by the client, null disables it
+	 *
+	 * @param	executor - the executor running EXPLAIN, null means in the thread of the slow query
+	 * @author  ZHANG.XL
+	 */
+	public void setExplainClient(HiSqlClient client, Executor executor) {
+		this.explainClient = client;
+		this.explainExecutor = executor;
+	}
+	
+	@Override
+	public void sqlExecuted(SqlExecutionEvent event) {
+		if (event.getElapsedNanos() < thresholdNanos) {
+			return;
+		}
+		final long seq = sequence.getAndIncrement();
+		final SlowQuery slowQuery = new SlowQuery(seq, event,
+				argsRedacted ? redact(event.getArgs()) : copy(event.getArgs()), getCallerStack());
+		slots.set((int) (seq & mask), slowQuery);
+		
+		final HiSqlClient client = explainClient;
+		if (client != null && event.isSuccess() && event.getType() != SqlExecutionEvent.Type.BATCH) {
+			capturePlan(client, slowQuery, copy(event.getArgs()));
+		}
+	}
+	
+	/**
+	 * Get the latest slow queries, the newest first
+	 *
+	 * @author  ZHANG.XL
+	 */
+	public List<SlowQuery> getSlowQueries() {
+		final long last = sequence.get();
+		final long first = Math.max(0, last - slots.length());
+		List<SlowQuery> list = new ArrayList<SlowQuery>((int) (last - first));
+		for (long seq = last - 1; seq >= first; seq--) {
+			SlowQuery slowQuery = slots.get((int) (seq & mask));
+			if (slowQuery != null && slowQuery.seq == seq) {
+				list.add(slowQuery);
+			}
+		}
+		return list;
+	}
+	
+	/** the count of slow queries recorded since created, including the overwritten and cleared */
+	public long getSlowQueryCount() {
+		return sequence.get();
+	}
+	
+	public void clear() {
+		for (int i = 0; i < slots.length(); i++) {
+			slots.set(i, null);
+		}
+		planCache.clear();
+	}
+	
+	private void capturePlan(final HiSqlClient client, final SlowQuery slowQuery,
+			final Object[] args) {
+		final String fingerprint = slowQuery.getFingerprint();
+		List<String> plan = planCache.putIfAbsent(fingerprint, PLAN_PENDING);
+		if (plan != null) {
+			if (plan != PLAN_PENDING) {
+				slowQuery.plan = plan;
+			}
+			return;
+		}
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				List<String> plan;
+				try {
+					plan = Collections.unmodifiableList(client.explain(slowQuery.sql, args));
+				} catch (RuntimeException e) {
+					Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+					plan = Collections.singletonList("EXPLAIN failed: " + cause);
+				}
+				planCache.put(fingerprint, plan);
+				slowQuery.plan = plan;
+			}
+		};
+		final Executor executor = explainExecutor;
+		if (executor == null) {
+			task.run();
+			return;
+		}
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			planCache.remove(fingerprint);
+		}
+	}
+	
+	private static Object[] copy(Object[] args) {
+		return (args != null) ? args.clone() : null;
+	}
+	
+	/**
+	 * 例如：[1, "abc", null] => ["<Integer>", "<String>", null]
+	 */
+	private static Object[] redact(Object[] args) {
+		if (args == null) {
+			return null;
+		}
+		Object[] redacted = new Object[args.length];
+		for (int i = 0; i < args.length; i++) {
+			if (args[i] != null) {
+				redacted[i] = "<" + args[i].getClass().getSimpleName() + ">";
+			}
+		}
+		return redacted;
+	}
+	
+	/**
+	 * The stack of the caller, from the first frame out of this library
+	 */
+	private static StackTraceElement[] getCallerStack() {
+		StackTraceElement[] stack = new Throwable().getStackTrace();
+		int start = 0;
+		while (start < stack.length && isLibraryFrame(stack[start])) {
+			start++;
+		}
+		if (start == stack.length) {
+			start = 0;
+		}
+		return Arrays.copyOfRange(stack, start, Math.min(stack.length, start + MAX_STACK_DEPTH));
+	}
+	
+	private static boolean isLibraryFrame(StackTraceElement frame) {
+		String className = frame.getClassName();
+		return className.startsWith("org.hisql.") || className.startsWith("java.")
+				|| className.startsWith("jdk.") || className.startsWith("sun.");
+	}
+	
+	/**
+	 * One slow execution
+	 *
+	 * @author	ZHANG.XL
+	 */
+	public static final class SlowQuery {
+		private final long seq;
+		private final long time;
+		private final SqlExecutionEvent.Type type;
+		private final String sql;
+		private final String fingerprint;
+		private final Object[] args;
+		private final long acquireNanos;
+		private final long executeNanos;
+		private final long mappingNanos;
+		private final int rowCount;
+		private final Throwable exception;
+		private final StackTraceElement[] callerStack;
+		private volatile List<String> plan;
+		
+		SlowQuery(long seq, SqlExecutionEvent event, Object[] args, StackTraceElement[] callerStack) {
+			this.seq = seq;
+			this.time = System.currentTimeMillis();
+			this.type = event.getType();
+			this.sql = event.getSql();
+			this.fingerprint = event.getFingerprint();
+			this.args = args;
+			this.acquireNanos = event.getAcquireNanos();
+			this.executeNanos = event.getExecuteNanos();
+			this.mappingNanos = event.getMappingNanos();
+			this.rowCount = event.getRowCount();
+			this.exception = event.getException();
+			this.callerStack = callerStack;
+		}
+		
+		/** the time in milliseconds when the execution finished */
+		public long getTime() {
+			return time;
+		}
+		
+		public SqlExecutionEvent.Type getType() {
+			return type;
+		}
+		
+		public String getSql() {
+			return sql;
+		}
+		
+		public String getFingerprint() {
+			return fingerprint;
+		}
+		
+		/** the binded variables, or their types if redacted, null for the batch */
+		public Object[] getArgs() {
+			return (args != null) ? args.clone() : null;
+		}
+		
+		public long getAcquireNanos() {
+			return acquireNanos;
+		}
+		
+		public long getExecuteNanos() {
+			return executeNanos;
+		}
+		
+		public long getMappingNanos() {
+			return mappingNanos;
+		}
+		
+		public long getElapsedNanos() {
+			return acquireNanos + executeNanos + mappingNanos;
+		}
+		
+		public int getRowCount() {
+			return rowCount;
+		}
+		
+		/** the exception of the failed execution, or null */
+		public Throwable getException() {
+			return exception;
+		}
+		
+		public StackTraceElement[] getCallerStack() {
+			return callerStack.clone();
+		}
+		
+		/** the execution plan, or null if not captured (yet) */
+		public List<String> getPlan() {
+			return plan;
+		}
+		
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder(256);
+			sb.append(String.format("%tF %<tT.%<tL %s %dms (acquire/execute/mapping=%d/%d/%dus) rows=%d",
+					new Date(time), type, getElapsedNanos() / 1000000L, acquireNanos / 1000L,
+					executeNanos / 1000L, mappingNanos / 1000L, rowCount));
+			if (exception != null) {
+				sb.append(" error=").append(exception);
+			}
+			sb.append("\n  SQL: ").append(sql);
+			if (args != null) {
+				sb.append("\n  Parameters: ").append(Arrays.toString(args));
+			}
+			for (StackTraceElement frame : callerStack) {
+				sb.append("\n    at ").append(frame);
+			}
+			List<String> plan = this.plan;
+			if (plan != null) {
+				sb.append("\n  Plan:");
+				for (String line : plan) {
+					sb.append("\n    ").append(line);
+				}
+			}
+			return sb.toString();
+		}
+	}
+}
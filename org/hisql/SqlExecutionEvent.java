@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.util.regex.Pattern;
+
+/**
+ * <pre>
+ * One execution of SQL reported to {@link SqlExecutionListener}.
+ *
+ * The elapsed time is split into 3 phases:
+ *     acquire - getting the connection from the connection manager
+ *     execute - preparing the statement, binding the arguments and executing it
+ *     mapping - reading the rows and mapping them to the return type (query only)
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+public final class SqlExecutionEvent {
+	/**
+	 * The kind of execution
+	 */
+	public enum Type {
+		/** query() and the operations based on it */
+		QUERY,
+		/** execute() and the single-statement insert/update/delete */
+		EXECUTE,
+		/** one statement of the JDBC batch of insertBatch/updateBatch/deleteBatch */
+		BATCH
+	}
+	
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+	private static final Pattern PARAM_LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+	private static final Pattern ROW_LIST = Pattern.compile("\\(\\?\\)(?:\\s*,\\s*\\(\\?\\))+");
+	private static final ConcurrentLruCache<String, String> fingerprintCache = 
+			new ConcurrentLruCache<String, String>(2048);
+	
+	private final Type type;
+	private final String sql;
+	private final Object[] args;
+	private final long acquireNanos;
+	private final long executeNanos;
+	private final long mappingNanos;
+	private final int rowCount;
+	private final Throwable exception;
+	
+	SqlExecutionEvent(Type type, String sql, Object[] args, long acquireNanos, 
+			long executeNanos, long mappingNanos, int rowCount, Throwable exception) {
+		this.type = type;
+		this.sql = sql;
+		this.args = args;
+		this.acquireNanos = acquireNanos;
+		this.executeNanos = executeNanos;
+		this.mappingNanos = mappingNanos;
+		this.rowCount = rowCount;
+		this.exception = exception;
+	}
+	
+	public Type getType() {
+		return type;
+	}
+	
+	/** the SQL sent to the db (the SQL of the statement for the batch) */
+	public String getSql() {
+		return sql;
+	}
+	
+	/**
+	 * the SQL without literals and the lengths of IN lists and multi-row VALUES,
+	 * which groups the executions of the same statement
+	 */
+	public String getFingerprint() {
+		return fingerprint(sql);
+	}
+	
+	/** the binded variables, null for the batch */
+	public Object[] getArgs() {
+		return args;
+	}
+	
+	public long getAcquireNanos() {
+		return acquireNanos;
+	}
+	
+	public long getExecuteNanos() {
+		return executeNanos;
+	}
+	
+	public long getMappingNanos() {
+		return mappingNanos;
+	}
+	
+	/** the sum of the 3 phases */
+	public long getElapsedNanos() {
+		return acquireNanos + executeNanos + mappingNanos;
+	}
+	
+	/** the count of rows returned by query, or affected by execute/batch */
+	public int getRowCount() {
+		return rowCount;
+	}
+	
+	/** the exception of the execution, or null if it succeeds */
+	public Throwable getException() {
+		return exception;
+	}
+	
+	public boolean isSuccess() {
+		return exception == null;
+	}
+	
+	/**
+	 * <pre>
+	 * Get the fingerprint of the SQL
+	 * 
+	 * 例如："SELECT * FROM t WHERE id IN (?,?,?) AND type=1" 
+	 *       => "SELECT * FROM t WHERE id IN (?) AND type=?"
+	 * </pre>
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	public static String fingerprint(String sql) {
+		if (sql == null) return null;
+		String fingerprint = fingerprintCache.get(sql);
+		if (fingerprint == null) {
+			fingerprint = STRING_LITERAL.matcher(sql).replaceAll("?");
+			fingerprint = NUMBER_LITERAL.matcher(fingerprint).replaceAll("?");
+			fingerprint = WHITESPACE.matcher(fingerprint).replaceAll(" ").trim();
+			fingerprint = PARAM_LIST.matcher(fingerprint).replaceAll("?");
+			fingerprint = ROW_LIST.matcher(fingerprint).replaceAll("(?)");
+			fingerprintCache.put(sql, fingerprint);
+		}
+		return fingerprint;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s[%s] rows=%d acquire=%dus execute=%dus mapping=%dus%s", 
+				type, sql, rowCount, acquireNanos / 1000, executeNanos / 1000, 
+				mappingNanos / 1000, (exception != null) ? " error=" + exception : "");
+	}
+}
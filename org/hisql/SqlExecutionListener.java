@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+/**
+ * <pre>
+ * The listener called after every SQL executed by {@link HiSqlClient}, 
+ * whether it succeeds or fails.
+ *
+ * It is called in the thread executing the SQL after the connection is released,
+ * so it should be fast. The exception thrown by the listener is printed and ignored.
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+public interface SqlExecutionListener {
+	/**
+	 * @param	event - the SQL, timings, row count and exception of the execution,
+	 * 			which should not be kept after returning if the arguments are large
+	 * @author  ZHANG.XL
+	 */
+	void sqlExecuted(SqlExecutionEvent event);
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+/**
+ * <pre>
+ * The key of the SQL template cache: 
+ * entity class + operation + column-set signature + IN-arity.
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+final class SqlKey {
+	private final Class<?> entityClz;
+	private final String operation;
+	private final Object signature;
+	private final int arity;
+	private final int hash;
+	
+	SqlKey(Class<?> entityClz, String operation) {
+		this(entityClz, operation, null, 0);
+	}
+	
+	SqlKey(Class<?> entityClz, String operation, int arity) {
+		this(entityClz, operation, null, arity);
+	}
+	
+	/**
+	 * @param	signature - the column set, it must not be modified after the key is created
+	 */
+	SqlKey(Class<?> entityClz, String operation, Object signature, int arity) {
+		this.entityClz = entityClz;
+		this.operation = operation;
+		this.signature = signature;
+		this.arity = arity;
+		int h = entityClz.hashCode();
+		h = 31 * h + operation.hashCode();
+		h = 31 * h + ((signature != null) ? signature.hashCode() : 0);
+		this.hash = 31 * h + arity;
+	}
+	
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof SqlKey)) return false;
+		SqlKey other = (SqlKey) obj;
+		return hash == other.hash && entityClz == other.entityClz && arity == other.arity
+				&& operation.equals(other.operation)
+				&& (signature == null ? other.signature == null : signature.equals(other.signature));
+	}
+	
+	@Override
+	public String toString() {
+		return entityClz.getName() + "_" + operation 
+				+ ((signature != null) ? "_" + signature : "") + ((arity > 0) ? "_" + arity : "");
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <pre>
+ * The built-in listener collecting the metrics per SQL fingerprint: 
+ * the counts of executions, errors and rows, the total time of each phase,
+ * and the histogram of elapsed time for percentiles.
+ *
+ * The fingerprints beyond the max count are merged into {@link #OTHER_FINGERPRINT},
+ * so the memory is bounded even if the SQL is built with literals.
+ *
+ * Example:
+ *     SqlMetricsCollector metrics = new SqlMetricsCollector();
+ *     client.addSqlExecutionListener(metrics);
+ *     ...
+ *     for (SqlMetricsCollector.SqlMetrics m : metrics.getMetrics().values()) {
+ *         System.out.println(m);
+ *     }
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+public class SqlMetricsCollector implements SqlExecutionListener {
+	public static final String OTHER_FINGERPRINT = "(other)";
+	private static final int DEFAULT_MAX_FINGERPRINTS = 1000;
+	
+	private final ConcurrentMap<String, SqlMetrics> metricsMap = 
+			new ConcurrentHashMap<String, SqlMetrics>();
+	private final int maxFingerprints;
+	
+	public SqlMetricsCollector() {
+		this(DEFAULT_MAX_FINGERPRINTS);
+	}
+	
+	/**
+	 * @param	maxFingerprints - the max count of fingerprints collected separately
+	 * @author  ZHANG.XL
+	 */
+	public SqlMetricsCollector(int maxFingerprints) {
+		if (maxFingerprints < 1) {
+			throw new IllegalArgumentException("max fingerprints must be positive: " 
+					+ maxFingerprints);
+		}
+		this.maxFingerprints = maxFingerprints;
+	}
+	
+	@Override
+	public void sqlExecuted(SqlExecutionEvent event) {
+		getOrCreate(event.getFingerprint()).record(event);
+	}
+	
+	private SqlMetrics getOrCreate(String fingerprint) {
+		SqlMetrics metrics = metricsMap.get(fingerprint);
+		if (metrics == null) {
+			if (metricsMap.size() >= maxFingerprints) {
+				fingerprint = OTHER_FINGERPRINT;
+				metrics = metricsMap.get(fingerprint);
+				if (metrics != null) {
+					return metrics;
+				}
+			}
+			metrics = new SqlMetrics(fingerprint);
+			SqlMetrics existing = metricsMap.putIfAbsent(fingerprint, metrics);
+			if (existing != null) {
+				metrics = existing;
+			}
+		}
+		return metrics;
+	}
+	
+	/**
+	 * Get the metrics of all fingerprints, which keep updating after returned
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	public Map<String, SqlMetrics> getMetrics() {
+		return Collections.unmodifiableMap(new HashMap<String, SqlMetrics>(metricsMap));
+	}
+	
+	/**
+	 * @return	the metrics of the fingerprint, or null if not executed
+	 * @author  ZHANG.XL
+	 */
+	public SqlMetrics getMetrics(String fingerprint) {
+		return metricsMap.get(fingerprint);
+	}
+	
+	public void reset() {
+		metricsMap.clear();
+	}
+	
+	/**
+	 * The metrics of one SQL fingerprint
+	 *
+	 * @author	ZHANG.XL
+	 */
+	public static final class SqlMetrics {
+		private final String fingerprint;
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong errorCount = new AtomicLong();
+		private final AtomicLong rowCount = new AtomicLong();
+		private final AtomicLong acquireNanos = new AtomicLong();
+		private final AtomicLong executeNanos = new AtomicLong();
+		private final AtomicLong mappingNanos = new AtomicLong();
+		private final LatencyHistogram histogram = new LatencyHistogram();
+		
+		SqlMetrics(String fingerprint) {
+			this.fingerprint = fingerprint;
+		}
+		
+		void record(SqlExecutionEvent event) {
+			count.incrementAndGet();
+			if (!event.isSuccess()) {
+				errorCount.incrementAndGet();
+			}
+			if (event.getRowCount() > 0) {
+				rowCount.addAndGet(event.getRowCount());
+			}
+			acquireNanos.addAndGet(event.getAcquireNanos());
+			executeNanos.addAndGet(event.getExecuteNanos());
+			mappingNanos.addAndGet(event.getMappingNanos());
+			histogram.record(event.getElapsedNanos());
+		}
+		
+		public String getFingerprint() {
+			return fingerprint;
+		}
+		
+		public long getCount() {
+			return count.get();
+		}
+		
+		public long getErrorCount() {
+			return errorCount.get();
+		}
+		
+		/** the total count of rows returned or affected */
+		public long getRowCount() {
+			return rowCount.get();
+		}
+		
+		public long getTotalAcquireNanos() {
+			return acquireNanos.get();
+		}
+		
+		public long getTotalExecuteNanos() {
+			return executeNanos.get();
+		}
+		
+		public long getTotalMappingNanos() {
+			return mappingNanos.get();
+		}
+		
+		/**
+		 * @param	percentile - from 0 to 100, e.g. 99.9
+		 * @return	the elapsed nanos of the percentile
+		 */
+		public long getPercentileNanos(double percentile) {
+			return histogram.getPercentile(percentile);
+		}
+		
+		public LatencyHistogram getHistogram() {
+			return histogram;
+		}
+		
+		@Override
+		public String toString() {
+			long cnt = Math.max(count.get(), 1);
+			return String.format("[%s] count=%d errors=%d rows=%d avg(acquire/execute/mapping)=%d/%d/%dus"
+					+ " p50=%dus p99=%dus p999=%dus", fingerprint, count.get(), errorCount.get(), 
+					rowCount.get(), acquireNanos.get() / cnt / 1000, executeNanos.get() / cnt / 1000, 
+					mappingNanos.get() / cnt / 1000, getPercentileNanos(50) / 1000, 
+					getPercentileNanos(99) / 1000, getPercentileNanos(99.9) / 1000);
+		}
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <pre>
+ * The cache of PreparedStatement keyed by connection + SQL.
+ *
+ * The connection is the physical one unwrapped by {@link Connection#unwrap(Class)},
+ * since the pools may hand out a new proxy of the same connection per borrowing.
+ * The pools closing the statements when the connection is returned (e.g. HikariCP)
+ * gain nothing from this cache, their own statement cache should be used instead.
+ *
+ * The statement is taken out of the cache while it is in use, so one statement
+ * is never shared by two executions, and it is put back after the execution.
+ * Each connection keeps at most "maxSize" statements, the least recently used
+ * one is closed when the limit is exceeded. The statements of a connection are
+ * closed when the connection is discarded, or dropped when the connection is 
+ * found closed.
+ * </pre>
+ *
+ * @author	ZHANG.XL
+ */
+final class StatementCache {
+	private final int maxSize;
+	private final ConcurrentHashMap<Connection, Statements> cacheMap = 
+			new ConcurrentHashMap<Connection, Statements>();
+	
+	StatementCache(int maxSize) {
+		this.maxSize = maxSize;
+	}
+	
+	/**
+	 * Take the cached statement out of the cache
+	 * 
+	 * @return	the statement, or null if not cached
+	 * @author  ZHANG.XL
+	 */
+	PreparedStatement take(Connection con, String sql) throws SQLException {
+		con = unwrap(con);
+		Statements stmts = cacheMap.get(con);
+		if (stmts == null) return null;
+		PreparedStatement ps = stmts.take(sql);
+		if (ps != null && ps.isClosed()) {
+			invalidate(con);
+			return null;
+		}
+		return ps;
+	}
+	
+	/**
+	 * Put the statement back to the cache after the execution
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	void release(Connection con, String sql, PreparedStatement ps) {
+		try {
+			ps.clearParameters();
+		} catch (SQLException e) {
+			closeQuietly(ps);
+			return;
+		}
+		con = unwrap(con);
+		Statements stmts = cacheMap.get(con);
+		if (stmts == null) {
+			removeClosedConnections();
+			stmts = new Statements(maxSize);
+			Statements existing = cacheMap.putIfAbsent(con, stmts);
+			if (existing != null) {
+				stmts = existing;
+			}
+		}
+		stmts.put(sql, ps);
+	}
+	
+	/**
+	 * Close the cached statements of the connection
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	void invalidate(Connection con) {
+		if (con == null) return;
+		Statements stmts = cacheMap.remove(unwrap(con));
+		if (stmts != null) {
+			stmts.closeAll();
+		}
+	}
+	
+	/**
+	 * Close all cached statements
+	 * 
+	 * @author  ZHANG.XL
+	 */
+	void invalidateAll() {
+		Iterator<Connection> itr = cacheMap.keySet().iterator();
+		while (itr.hasNext()) {
+			invalidate(itr.next());
+		}
+	}
+	
+	/**
+	 * Drop the statements of the connections closed without notice
+	 */
+	private void removeClosedConnections() {
+		Iterator<Connection> itr = cacheMap.keySet().iterator();
+		while (itr.hasNext()) {
+			Connection con = itr.next();
+			try {
+				if (!con.isClosed()) continue;
+			} catch (SQLException e) {
+				// take it as closed
+			}
+			invalidate(con);
+		}
+	}
+	
+	/**
+	 * Get the physical connection under the proxy of the pool, 
+	 * or the connection itself if it is not a proxy
+	 */
+	private static Connection unwrap(Connection con) {
+		try {
+			Connection physicalCon = con.unwrap(Connection.class);
+			return (physicalCon != null) ? physicalCon : con;
+		} catch (SQLException e) {
+			return con;
+		}
+	}
+	
+	static void closeQuietly(PreparedStatement ps) {
+		try {
+			ps.close();
+		} catch (SQLException e) {
+			// the statement is discarded
+		}
+	}
+	
+	/**
+	 * The statements of one connection in LRU order
+	 */
+	private static final class Statements {
+		private final int maxSize;
+		private final LinkedHashMap<String, PreparedStatement> stmtMap;
+		
+		Statements(int maxSize) {
+			this.maxSize = maxSize;
+			this.stmtMap = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+		}
+		
+		synchronized PreparedStatement take(String sql) {
+			return stmtMap.remove(sql);
+		}
+		
+		synchronized void put(String sql, PreparedStatement ps) {
+			PreparedStatement existing = stmtMap.put(sql, ps);
+			if (existing != null && existing != ps) {
+				closeQuietly(existing);
+			}
+			if (stmtMap.size() > maxSize) {
+				Iterator<Map.Entry<String, PreparedStatement>> itr = stmtMap.entrySet().iterator();
+				closeQuietly(itr.next().getValue());
+				itr.remove();
+			}
+		}
+		
+		synchronized void closeAll() {
+			for (PreparedStatement ps : stmtMap.values()) {
+				closeQuietly(ps);
+			}
+			stmtMap.clear();
+		}
+	}
+}
@@ -23,4 +23,21 @@ public @interface DbTable {
 	
 	/** primary key of this table */
 	String keyName();
+	
+	/** 
+	 * the max count of entities cached by key value, 0 (default) disables the cache. 
+	 * Only get/insert/update/delete of HiSqlClient keep the cache fresh, 
+	 * the table changed by other SQL needs setting "cacheTtl".
+	 */
+	int cacheSize() default 0;
+	
+	/** the seconds an entity stays in the cache, 0 (default) means until evicted */
+	int cacheTtl() default 0;
+	
+	/** 
+	 * keep the column values of the entities loaded by get/query, so that 
+	 * HiSqlClient.updateChanged() updates the changed columns only. 
+	 * The entity class needs extending AbstractDbEntity.
+	 */
+	boolean trackChanges() default false;
 }
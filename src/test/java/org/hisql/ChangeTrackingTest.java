@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hisql.annotation.DbTable;
+import org.hisql.exception.SqlRuntimeException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The tests of the change snapshot refreshed by the write paths,
+ * over the H2 in-memory db in MySql mode
+ *
+ * @author	ZHANG.XL
+ */
+public class ChangeTrackingTest {
+	private static final AtomicInteger DB_SEQ = new AtomicInteger();
+
+	@DbTable(tableName = "item", keyName = "id", trackChanges = true)
+	public static class Item extends AbstractDbEntity {
+		public Long id;
+		public Integer x;
+		public String name;
+	}
+
+	private Connection keepAlive;
+	private HiSqlClientImpl client;
+
+	@Before
+	public void setUp() throws SQLException {
+		final String url = "jdbc:h2:mem:tracking" + DB_SEQ.incrementAndGet() + ";MODE=MySQL";
+		keepAlive = DriverManager.getConnection(url);
+		keepAlive.createStatement().execute(
+				"CREATE TABLE item (id BIGINT PRIMARY KEY, x INT, name VARCHAR(32))");
+		keepAlive.createStatement().execute("INSERT INTO item VALUES (1, 1, 'a'), (2, 1, 'b')");
+		client = new HiSqlClientImpl(DbVersion.Mysql, new ConnectionManager() {
+			@Override
+			public Connection getConnection() {
+				try {
+					return DriverManager.getConnection(url);
+				} catch (SQLException e) {
+					throw new SqlRuntimeException(e);
+				}
+			}
+
+			@Override
+			public void releaseConnection(Connection con) {
+				try {
+					if (con != null) con.close();
+				} catch (SQLException e) {
+					// the connection is discarded
+				}
+			}
+		});
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		keepAlive.close();
+	}
+
+	@Test
+	public void testUpdateBatchRefreshesSnapshot() {
+		Item item = client.get(Item.class, 1L);
+		item.x = 2;
+		client.updateBatch(Arrays.asList(item));
+
+		item.x = 1;
+		assertEquals(1, client.updateChanged(item));
+		assertEquals(Integer.valueOf(1), queryX(1L));
+	}
+
+	@Test
+	public void testUpsertBatchRefreshesSnapshot() {
+		Item item = client.get(Item.class, 1L);
+		item.x = 2;
+		client.upsertBatch(Arrays.asList(item));
+		assertEquals(Integer.valueOf(2), queryX(1L));
+
+		item.x = 1;
+		assertEquals(1, client.updateChanged(item));
+		assertEquals(Integer.valueOf(1), queryX(1L));
+	}
+
+	@Test
+	public void testInsertBatchRefreshesSnapshot() {
+		Item item = client.get(Item.class, 2L);
+		item.id = 3L;
+		item.x = 2;
+		client.insertBatch(Arrays.asList(item));
+
+		item.x = 1;
+		assertEquals(1, client.updateChanged(item));
+		assertEquals(Integer.valueOf(1), queryX(3L));
+	}
+
+	@Test
+	public void testPartialUpdateRefreshesWrittenColumns() {
+		Item item = client.get(Item.class, 1L);
+		item.x = 2;
+		item.name = "unsaved";
+		client.update(item, new String[]{"x"});
+		assertEquals("a", client.queryForObject("SELECT name FROM item WHERE id=1", null, String.class));
+
+		// x is saved, name is still changed since the load
+		item.x = 1;
+		assertEquals(1, client.updateChanged(item));
+		assertEquals(Integer.valueOf(1), queryX(1L));
+		assertEquals("unsaved", client.queryForObject("SELECT name FROM item WHERE id=1", null, String.class));
+	}
+
+	private Integer queryX(Long id) {
+		return client.queryForObject("SELECT x FROM item WHERE id=?", new Object[]{id}, Integer.class);
+	}
+}
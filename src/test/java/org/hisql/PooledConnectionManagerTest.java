@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2014~2099, Zhang.XiaLiang (ZHANG.XL) All rights reserved.
+ */
+package org.hisql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.hisql.exception.SqlRuntimeException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The tests of {@link PooledConnectionManager} over the H2 in-memory db
+ *
+ * @author	ZHANG.XL
+ */
+public class PooledConnectionManagerTest {
+	private static final AtomicInteger DB_SEQ = new AtomicInteger();
+
+	private PooledConnectionManager pool;
+
+	@Before
+	public void setUp() {
+		pool = new PooledConnectionManager("jdbc:h2:mem:pool" + DB_SEQ.incrementAndGet()
+				+ ";DB_CLOSE_DELAY=-1", "sa", "");
+		pool.setMinPoolSize(0);
+		pool.setMaxPoolSize(2);
+		pool.setHousekeepingPeriod(TimeUnit.HOURS.toMillis(1));
+	}
+
+	@After
+	public void tearDown() {
+		pool.close();
+	}
+
+	@Test
+	public void testBorrowTimeout() {
+		pool.setMaxPoolSize(1);
+		pool.setBorrowTimeout(100);
+		Connection con = pool.getConnection();
+		long startNanos = System.nanoTime();
+		try {
+			pool.getConnection();
+			fail("the pool is exhausted");
+		} catch (SqlRuntimeException e) {
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+			assertTrue("waited " + elapsedMillis + " ms", elapsedMillis >= 100);
+			assertTrue(e.getMessage(), e.getMessage().contains("no connection available"));
+		}
+		pool.releaseConnection(con);
+		assertSame(con, pool.getConnection());
+	}
+
+	@Test
+	public void testHandoffToWaiter() throws Exception {
+		pool.setMaxPoolSize(1);
+		pool.setBorrowTimeout(5000);
+		final Connection con = pool.getConnection();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Connection> waiting = executor.submit(new Callable<Connection>() {
+				@Override
+				public Connection call() {
+					return pool.getConnection();
+				}
+			});
+			Thread.sleep(50);
+			assertFalse(waiting.isDone());
+			pool.releaseConnection(con);
+			assertSame(con, waiting.get(1, TimeUnit.SECONDS));
+			assertEquals(1, pool.getTotalConnections());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testIdleEviction() throws Exception {
+		pool.setMinPoolSize(1);
+		pool.setIdleTimeout(10);
+		Connection con1 = pool.getConnection();
+		Connection con2 = pool.getConnection();
+		pool.releaseConnection(con1);
+		pool.releaseConnection(con2);
+		assertEquals(2, pool.getIdleConnections());
+
+		Thread.sleep(50);
+		pool.houseKeep();
+		assertEquals(1, pool.getTotalConnections());
+		assertEquals(1, pool.getIdleConnections());
+		assertTrue(con1.isClosed() != con2.isClosed());
+	}
+
+	@Test
+	public void testFillToMinSize() {
+		pool.setMinPoolSize(2);
+		pool.houseKeep();
+		assertEquals(2, pool.getTotalConnections());
+		assertEquals(2, pool.getIdleConnections());
+	}
+
+	@Test
+	public void testValidation() throws Exception {
+		final AtomicBoolean valid = new AtomicBoolean(true);
+		final JdbcDataSource h2 = new JdbcDataSource();
+		h2.setURL("jdbc:h2:mem:pool" + DB_SEQ.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+		pool.close();
+		pool = new PooledConnectionManager(validatedDataSource(h2, valid));
+		pool.setMinPoolSize(0);
+		pool.setHousekeepingPeriod(TimeUnit.HOURS.toMillis(1));
+
+		Connection con = pool.getConnection();
+		pool.releaseConnection(con);
+		// the connection used lately is handed out without validation
+		valid.set(false);
+		assertSame(con, pool.getConnection());
+		pool.releaseConnection(con);
+
+		Thread.sleep(600);
+		Connection newCon = pool.getConnection();
+		assertNotSame(con, newCon);
+		assertTrue(con.isClosed());
+		assertEquals(1, pool.getTotalConnections());
+		pool.releaseConnection(newCon);
+	}
+
+	@Test
+	public void testLeakDetection() throws Exception {
+		pool.setLeakDetectionThreshold(10);
+		Connection con = pool.getConnection();
+		Thread.sleep(50);
+
+		String output = houseKeepOutput();
+		assertTrue(output, output.contains("Connection leak detection"));
+		assertTrue(output, output.contains("testLeakDetection"));
+		// reported only once per borrowing
+		assertFalse(houseKeepOutput().contains("Connection leak detection"));
+
+		pool.releaseConnection(con);
+		assertFalse(houseKeepOutput().contains("Connection leak detection"));
+	}
+
+	@Test
+	public void testReleaseRollsBack() throws SQLException {
+		Connection con = pool.getConnection();
+		con.createStatement().execute("CREATE TABLE t (id INT)");
+		con.setAutoCommit(false);
+		con.createStatement().execute("INSERT INTO t VALUES (1)");
+		pool.releaseConnection(con);
+
+		Connection again = pool.getConnection();
+		assertTrue(again.getAutoCommit());
+		java.sql.ResultSet rs = again.createStatement().executeQuery("SELECT COUNT(*) FROM t");
+		rs.next();
+		assertEquals(0, rs.getInt(1));
+		pool.releaseConnection(again);
+	}
+
+	private String houseKeepOutput() {
+		PrintStream stdout = System.out;
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(buffer, true));
+		try {
+			pool.houseKeep();
+		} finally {
+			System.setOut(stdout);
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * The data source whose connections answer isValid() by the flag
+	 */
+	private static DataSource validatedDataSource(final DataSource target, final AtomicBoolean valid) {
+		return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+				new Class<?>[]{DataSource.class}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				Object result = invokeTarget(target, method, args);
+				if (!"getConnection".equals(method.getName())) {
+					return result;
+				}
+				final Connection con = (Connection) result;
+				return Proxy.newProxyInstance(Connection.class.getClassLoader(),
+						new Class<?>[]{Connection.class}, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if ("isValid".equals(method.getName())) {
+							return valid.get() && con.isValid(1);
+						}
+						return invokeTarget(con, method, args);
+					}
+				});
+			}
+		});
+	}
+
+	private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+}